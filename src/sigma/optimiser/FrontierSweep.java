@@ -0,0 +1,313 @@
+package sigma.optimiser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import sigma.quant.Option;
+
+/**
+ * Efficient frontier over greek limits.
+ *
+ * The optimisation is solved on every point of a grid of delta, gamma and
+ * theta limits, eg. the best theta for each gamma limit. Every grid point
+ * gets its own Optimiser and model and the points are solved concurrently
+ * on a fork-join pool. The options and greeks are shared read only, so
+ * the greeks must be evaluated before the sweep.
+ *
+ * Concurrency pays off with a backend that solves in parallel such as
+ * JavaBackend, GLPK solves are serialised by GlpkBackend.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class FrontierSweep {
+
+	/**
+	 * Evenly spaced limits, both ends included
+	 */
+	public static class Range {
+		private final double from;
+		private final double to;
+		private final int steps;
+
+		/**
+		 * @param from first limit
+		 * @param to last limit
+		 * @param steps number of limits, at least one
+		 */
+		public Range(double from, double to, int steps) {
+			if (steps < 1)
+				throw new IllegalArgumentException("Range needs at least one step");
+			this.from = from;
+			this.to = to;
+			this.steps = steps;
+		}
+
+		/**
+		 * Single limit
+		 *
+		 * @param value limit
+		 */
+		public Range(double value) {
+			this(value, value, 1);
+		}
+
+		public double get(int i) {
+			return steps == 1 ? from : from + (to - from) * i / (steps - 1);
+		}
+
+		public int size() {
+			return steps;
+		}
+	}
+
+	/**
+	 * One row of the frontier table
+	 */
+	public static class Point {
+		private final Double delta;
+		private final Double gamma;
+		private final Double theta;
+		private Solution solution;
+
+		Point(Double delta, Double gamma, Double theta) {
+			this.delta = delta;
+			this.gamma = gamma;
+			this.theta = theta;
+		}
+
+		/**
+		 * @return delta limit, null if not constrained
+		 */
+		public Double getDelta() {
+			return delta;
+		}
+
+		/**
+		 * @return gamma limit, null if not constrained
+		 */
+		public Double getGamma() {
+			return gamma;
+		}
+
+		/**
+		 * @return theta limit, null if not constrained
+		 */
+		public Double getTheta() {
+			return theta;
+		}
+
+		/**
+		 * @return solution with the selected positions
+		 */
+		public Solution getSolution() {
+			return solution;
+		}
+
+		@Override
+		public String toString() {
+			double open = 0.0;
+
+			for (double x : solution.getPositions())
+				open += Math.abs(x);
+			return String.format("%8s %8s %8s %-10s %12.6f %6.0f", limit(delta), limit(gamma), limit(theta),
+								 solution.getStatus(), solution.getValue(), open);
+		}
+
+		private static String limit(Double v) {
+			return v == null ? "-" : String.format("%.4f", v);
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final SolverBackend backend;
+
+	private Objective objective = Objective.MAX_THETA;
+	private int maxPos = 5;
+	private int maxOpen = 20;
+	private boolean mip = true;
+	private long timeLimit;
+	private double mipGap;
+
+	/**
+	 * Sweep on the common fork-join pool
+	 *
+	 * @param backend solver backend
+	 */
+	public FrontierSweep(SolverBackend backend) {
+		this(backend, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Sweep on given pool
+	 *
+	 * @param backend solver backend
+	 * @param pool fork-join pool
+	 */
+	public FrontierSweep(SolverBackend backend, ForkJoinPool pool) {
+		this.backend = backend;
+		this.pool = pool;
+	}
+
+	/**
+	 * Solves every combination of limits. Theta limits follow the scaling
+	 * of Optimiser.constrTheta().
+	 *
+	 * @param options options
+	 * @param delta delta per option
+	 * @param gamma gamma per option
+	 * @param theta theta per option
+	 * @param deltas delta limits, null for no delta constraint
+	 * @param gammas gamma limits, null for no gamma constraint
+	 * @param thetas theta limits, null for no theta constraint
+	 * @return table in grid order, delta slowest and theta fastest
+	 */
+	public List<Point> sweep(ArrayList<Option> options, double[] delta, double[] gamma, double[] theta,
+							 Range deltas, Range gammas, Range thetas) {
+		List<Point> points = new ArrayList<>();
+		List<Solve> tasks = new ArrayList<>();
+
+		for (int i = 0; i < size(deltas); i++)
+			for (int j = 0; j < size(gammas); j++)
+				for (int k = 0; k < size(thetas); k++)
+					points.add(new Point(deltas == null ? null : deltas.get(i),
+										 gammas == null ? null : gammas.get(j),
+										 thetas == null ? null : thetas.get(k)));
+
+		for (Point p : points)
+			tasks.add(new Solve(p, options, delta, gamma, theta));
+
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		return points;
+	}
+
+	private static int size(Range r) {
+		return r == null ? 1 : r.size();
+	}
+
+	/**
+	 * Formats the frontier as a table, one line per point
+	 *
+	 * @param points frontier
+	 * @return lines, header first
+	 */
+	public static List<String> format(List<Point> points) {
+		List<String> out = new ArrayList<>();
+
+		out.add(String.format("%8s %8s %8s %-10s %12s %6s", "delta", "gamma", "theta", "status", "objective", "open"));
+		for (Point p : points)
+			out.add(p.toString());
+		return out;
+	}
+
+	/**
+	 * Solve of one grid point with its own optimiser
+	 */
+	private class Solve extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Point point;
+		private final ArrayList<Option> options;
+		private final double[] delta;
+		private final double[] gamma;
+		private final double[] theta;
+
+		Solve(Point point, ArrayList<Option> options, double[] delta, double[] gamma, double[] theta) {
+			this.point = point;
+			this.options = options;
+			this.delta = delta;
+			this.gamma = gamma;
+			this.theta = theta;
+		}
+
+		@Override
+		protected void compute() {
+			Optimiser opt = new Optimiser(backend);
+
+			opt.loadData(options, delta, gamma, theta);
+			if (objective == Objective.MAX_THETA)
+				opt.objMaximiseTheta(maxPos);
+			else
+				opt.objMinimiseGamma(maxPos);
+
+			if (point.delta != null)
+				opt.constrDelta(point.delta);
+			if (point.gamma != null)
+				opt.constrGamma(point.gamma);
+			if (point.theta != null)
+				opt.constrTheta(point.theta);
+			opt.constrMaxPortfolio(maxOpen);
+
+			opt.solve(mip, timeLimit, mipGap, null);
+			point.solution = opt.getSolution();
+		}
+	}
+
+	public Objective getObjective() {
+		return objective;
+	}
+
+	public void setObjective(Objective objective) {
+		this.objective = objective;
+	}
+
+	public int getMaxPos() {
+		return maxPos;
+	}
+
+	public void setMaxPos(int maxPos) {
+		this.maxPos = maxPos;
+	}
+
+	public int getMaxOpen() {
+		return maxOpen;
+	}
+
+	public void setMaxOpen(int maxOpen) {
+		this.maxOpen = maxOpen;
+	}
+
+	public boolean isMip() {
+		return mip;
+	}
+
+	public void setMip(boolean mip) {
+		this.mip = mip;
+	}
+
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	/**
+	 * Time budget of every point
+	 *
+	 * @param timeLimit milliseconds, 0 for none
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+
+	public double getMipGap() {
+		return mipGap;
+	}
+
+	/**
+	 * Relative MIP gap every point is solved to
+	 *
+	 * @param mipGap relative gap, 0 to prove optimality
+	 */
+	public void setMipGap(double mipGap) {
+		this.mipGap = mipGap;
+	}
+}
@@ -0,0 +1,87 @@
+package sigma.optimiser;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import sigma.quant.OptSide;
+import sigma.quant.Option;
+
+public class FrontierSweepTest {
+
+	private final ArrayList<Option> options = new ArrayList<>();
+	private final double[] delta;
+	private final double[] gamma;
+	private final double[] theta;
+
+	public FrontierSweepTest() {
+		for (double k = 45.0; k <= 65.0; k += 2.5)
+			for (OptSide side : OptSide.values()) {
+				Option o = new Option(55.0, k, 0.2, 0.35, 0.01, 0.0, side);
+				o.setPrice(1.0);
+				options.add(o);
+			}
+
+		delta = new double[options.size()];
+		gamma = new double[options.size()];
+		theta = new double[options.size()];
+		for (int i = 0; i < options.size(); i++) {
+			delta[i] = options.get(i).delta();
+			gamma[i] = options.get(i).gamma();
+			theta[i] = options.get(i).theta();
+		}
+	}
+
+	@Test
+	public void testMatchesSerialSolves() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		FrontierSweep sweep = new FrontierSweep(new JavaBackend(), pool);
+		FrontierSweep.Range gammas = new FrontierSweep.Range(0.05, 0.4, 8);
+		FrontierSweep.Range deltas = new FrontierSweep.Range(0.2, 0.8, 2);
+		List<FrontierSweep.Point> points;
+
+		try {
+			points = sweep.sweep(options, delta, gamma, theta, deltas, gammas, null);
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(16, points.size());
+		assertEquals(17, FrontierSweep.format(points).size());
+
+		for (FrontierSweep.Point p : points) {
+			Optimiser opt = new Optimiser(new JavaBackend());
+
+			opt.loadData(options, delta, gamma, theta);
+			opt.objMaximiseTheta(sweep.getMaxPos());
+			opt.constrDelta(p.getDelta());
+			opt.constrGamma(p.getGamma());
+			opt.constrMaxPortfolio(sweep.getMaxOpen());
+			opt.solve(true);
+
+			assertNull(p.getTheta());
+			assertEquals(opt.getSolution().getStatus(), p.getSolution().getStatus());
+			assertEquals(opt.getSolution().getValue(), p.getSolution().getValue(), 1e-9);
+		}
+	}
+
+	@Test
+	public void testThetaForGamma() {
+		FrontierSweep sweep = new FrontierSweep(new JavaBackend());
+		List<FrontierSweep.Point> points;
+
+		sweep.setMip(false);
+		points = sweep.sweep(options, delta, gamma, theta, new FrontierSweep.Range(0.5),
+							 new FrontierSweep.Range(0.0, 0.5, 11), null);
+
+		// Looser gamma limit never gives less theta
+		for (int i = 1; i < points.size(); i++) {
+			assertTrue(points.get(i).getSolution().isOptimal());
+			assertTrue(points.get(i).getSolution().getValue() >= points.get(i - 1).getSolution().getValue() - 1e-9);
+		}
+		assertTrue(points.get(10).getSolution().getValue() > points.get(0).getSolution().getValue());
+	}
+}
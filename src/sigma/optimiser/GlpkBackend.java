@@ -0,0 +1,267 @@
+package sigma.optimiser;
+
+import org.gnu.glpk.GLPK;
+import org.gnu.glpk.GLPKConstants;
+import org.gnu.glpk.GlpkCallback;
+import org.gnu.glpk.GlpkCallbackListener;
+import org.gnu.glpk.SWIGTYPE_p_double;
+import org.gnu.glpk.SWIGTYPE_p_int;
+import org.gnu.glpk.glp_iocp;
+import org.gnu.glpk.glp_prob;
+import org.gnu.glpk.glp_smcp;
+import org.gnu.glpk.glp_tree;
+
+/**
+ * GLPK backend. The problem is created per solve, the constraint matrix
+ * is loaded with a single glp_load_matrix() call.
+ *
+ * MIPs are solved by simplex on the relaxation followed by branch and
+ * bound without presolve, with GLPK's own time limit and MIP gap. New
+ * incumbents are read in the branch and bound callback.
+ *
+ * GLPK is not thread safe, solves from different threads are serialised
+ * on one lock per JVM. Use JavaBackend to solve in parallel.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class GlpkBackend implements SolverBackend {
+
+	public static final String NAME = "glpk";
+
+	// Held by every GLPK call in the JVM, see also PortfolioModel
+	static final Object LOCK = new Object();
+
+	private final int msgLevel;
+
+	/**
+	 * Backend reporting errors only
+	 */
+	public GlpkBackend() {
+		this(GLPKConstants.GLP_MSG_ERR);
+	}
+
+	/**
+	 * Backend with given GLPK message level
+	 *
+	 * @param msgLevel GLP_MSG_* level
+	 */
+	public GlpkBackend(int msgLevel) {
+		this.msgLevel = msgLevel;
+	}
+
+	@Override
+	public Solution solve(ModelBuilder model, long timeLimit, double mipGap, IncumbentListener listener) {
+		final long start = System.nanoTime();
+		final long deadline = start + timeLimit * 1000000L;
+		double[] x = null;
+		double value = Double.NaN;
+		double gap = Double.NaN;
+		Solution.Status status;
+
+		synchronized (LOCK) {
+			glp_prob lp = load(model, false);
+
+			try {
+				// Relaxation first, the MIP then runs without presolve so
+				// that callbacks see the columns of the model
+				glp_smcp smcp = new glp_smcp();
+				GLPK.glp_init_smcp(smcp);
+				smcp.setMsg_lev(msgLevel);
+				smcp.setPresolve(GLPKConstants.GLP_ON);
+				if (timeLimit > 0)
+					smcp.setTm_lim((int) Math.min(timeLimit, Integer.MAX_VALUE));
+				status = status(GLPK.glp_simplex(lp, smcp), GLPK.glp_get_status(lp));
+
+				if (!model.integer || status != Solution.Status.OPTIMAL) {
+					if (status == Solution.Status.OPTIMAL) {
+						x = new double[model.size];
+						for (int j = 1; j <= model.size; j++)
+							x[j - 1] = GLPK.glp_get_col_prim(lp, j);
+						value = GLPK.glp_get_obj_val(lp);
+						gap = 0.0;
+					} else if (status == Solution.Status.FEASIBLE) {
+						// Time limit hit in the relaxation, not a solution
+						status = Solution.Status.FAILED;
+					}
+				} else {
+					Tracker tracker = new Tracker(model, start, deadline, timeLimit > 0, listener);
+					glp_iocp iocp = new glp_iocp();
+					GLPK.glp_init_iocp(iocp);
+					iocp.setMsg_lev(msgLevel);
+					iocp.setPresolve(GLPKConstants.GLP_OFF);
+					iocp.setMip_gap(mipGap);
+					if (timeLimit > 0)
+						iocp.setTm_lim((int) Math.max(1, (deadline - System.nanoTime()) / 1000000L));
+
+					GlpkCallback.addListener(tracker);
+					try {
+						status = status(GLPK.glp_intopt(lp, iocp), GLPK.glp_mip_status(lp));
+					} finally {
+						GlpkCallback.removeListener(tracker);
+					}
+
+					if (status == Solution.Status.OPTIMAL || status == Solution.Status.FEASIBLE) {
+						x = columns(lp, model);
+						value = GLPK.glp_mip_obj_val(lp);
+						gap = status == Solution.Status.OPTIMAL ? 0.0 : tracker.gap;
+					}
+				}
+			} finally {
+				GLPK.glp_delete_prob(lp);
+			}
+		}
+		return new Solution(model, status, value, gap, x, NAME, System.nanoTime() - start);
+	}
+
+	/**
+	 * Integer solution of the problem
+	 */
+	private static double[] columns(glp_prob lp, ModelBuilder model) {
+		double[] x = new double[model.size];
+
+		for (int j = 1; j <= model.size; j++)
+			x[j - 1] = GLPK.glp_mip_col_val(lp, j);
+		return x;
+	}
+
+	/**
+	 * Branch and bound callback: passes new incumbents to the listener,
+	 * keeps the last known gap and stops the search at the deadline
+	 */
+	private static class Tracker implements GlpkCallbackListener {
+		private final ModelBuilder model;
+		private final long start;
+		private final long deadline;
+		private final boolean limited;
+		private final IncumbentListener listener;
+
+		double gap = Double.NaN;
+
+		Tracker(ModelBuilder model, long start, long deadline, boolean limited, IncumbentListener listener) {
+			this.model = model;
+			this.start = start;
+			this.deadline = deadline;
+			this.limited = limited;
+			this.listener = listener;
+		}
+
+		@Override
+		public void callback(glp_tree tree) {
+			double g = GLPK.glp_ios_mip_gap(tree);
+
+			if (g < Double.MAX_VALUE)
+				gap = g;
+
+			if (GLPK.glp_ios_reason(tree) == GLPKConstants.GLP_IBINGO && listener != null) {
+				glp_prob lp = GLPK.glp_ios_get_prob(tree);
+				listener.incumbent(new Solution(model, Solution.Status.FEASIBLE, GLPK.glp_mip_obj_val(lp), gap,
+												columns(lp, model), NAME, System.nanoTime() - start));
+			}
+
+			if (limited && System.nanoTime() > deadline)
+				GLPK.glp_ios_terminate(tree);
+		}
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Maps GLPK return code and solution status
+	 *
+	 * @param ret return code of the solver call
+	 * @param glpStatus glp_get_status() or glp_mip_status()
+	 * @return status
+	 */
+	static Solution.Status status(int ret, int glpStatus) {
+		if (ret == GLPKConstants.GLP_ENOPFS)
+			return Solution.Status.INFEASIBLE;
+		if (ret == GLPKConstants.GLP_ENODFS)
+			return Solution.Status.UNBOUNDED;
+		if (glpStatus == GLPKConstants.GLP_OPT)
+			return ret == 0 ? Solution.Status.OPTIMAL : Solution.Status.FEASIBLE;
+		if (glpStatus == GLPKConstants.GLP_FEAS)
+			return Solution.Status.FEASIBLE;
+		if (glpStatus == GLPKConstants.GLP_NOFEAS)
+			return Solution.Status.INFEASIBLE;
+		if (glpStatus == GLPKConstants.GLP_UNBND)
+			return Solution.Status.UNBOUNDED;
+		return Solution.Status.FAILED;
+	}
+
+	/**
+	 * Creates GLPK problem from the model, caller must hold the lock and
+	 * delete the problem
+	 *
+	 * @param model model
+	 * @param names name columns and rows, only needed for writing the model out
+	 * @return problem
+	 */
+	static glp_prob load(ModelBuilder model, boolean names) {
+		glp_prob lp = GLPK.glp_create_prob();
+		SWIGTYPE_p_int ind;
+		SWIGTYPE_p_int jnd;
+		SWIGTYPE_p_double val;
+
+		GLPK.glp_set_prob_name(lp, model.name);
+		GLPK.glp_set_obj_name(lp, "z");
+		GLPK.glp_set_obj_dir(lp, model.maximise ? GLPKConstants.GLP_MAX : GLPKConstants.GLP_MIN);
+
+		if (model.size > 0) {
+			GLPK.glp_add_cols(lp, model.size);
+			for (int j = 1; j <= model.size; j++) {
+				if (names)
+					GLPK.glp_set_col_name(lp, j, "x" + model.cols[j - 1]);
+				GLPK.glp_set_col_kind(lp, j, model.integer ? GLPKConstants.GLP_IV : GLPKConstants.GLP_CV);
+				GLPK.glp_set_col_bnds(lp, j, bounds(model.lb, model.ub), model.lb, model.ub);
+				if (model.obj[j - 1] != 0.0)
+					GLPK.glp_set_obj_coef(lp, j, model.obj[j - 1]);
+			}
+		}
+
+		if (model.rows > 0) {
+			GLPK.glp_add_rows(lp, model.rows);
+			for (int r = 1; r <= model.rows; r++) {
+				double lo = model.rowLo[r - 1];
+				double hi = model.rowHi[r - 1];
+
+				if (names)
+					GLPK.glp_set_row_name(lp, r, model.rowName[r - 1]);
+				GLPK.glp_set_row_bnds(lp, r, bounds(lo, hi), Double.isInfinite(lo) ? 0.0 : lo, Double.isInfinite(hi) ? 0.0 : hi);
+			}
+		}
+
+		if (model.nnz > 0) {
+			ind = GLPK.new_intArray(model.nnz + 1);
+			jnd = GLPK.new_intArray(model.nnz + 1);
+			val = GLPK.new_doubleArray(model.nnz + 1);
+			for (int k = 1; k <= model.nnz; k++) {
+				GLPK.intArray_setitem(ind, k, model.ia[k]);
+				GLPK.intArray_setitem(jnd, k, model.ja[k]);
+				GLPK.doubleArray_setitem(val, k, model.ar[k]);
+			}
+			GLPK.glp_load_matrix(lp, model.nnz, ind, jnd, val);
+			GLPK.delete_intArray(ind);
+			GLPK.delete_intArray(jnd);
+			GLPK.delete_doubleArray(val);
+		}
+		return lp;
+	}
+
+	/**
+	 * GLPK bound type of an interval
+	 */
+	private static int bounds(double lo, double hi) {
+		if (Double.isInfinite(lo) && Double.isInfinite(hi))
+			return GLPKConstants.GLP_FR;
+		if (Double.isInfinite(lo))
+			return GLPKConstants.GLP_UP;
+		if (Double.isInfinite(hi))
+			return GLPKConstants.GLP_LO;
+		return lo == hi ? GLPKConstants.GLP_FX : GLPKConstants.GLP_DB;
+	}
+}
@@ -0,0 +1,461 @@
+package sigma.optimiser;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Pure Java backend: bounded dual simplex for the LP and depth first
+ * branch and bound for integer columns.
+ *
+ * Every row r gets a slack s_r = sum a_rj x_j carrying the row bounds, the
+ * slacks form the starting basis. With all columns boxed, putting every
+ * column at the bound its cost points to is dual feasible, so the dual
+ * simplex needs no first phase. Branching only tightens bounds of basic
+ * columns, so each node starts from the optimal basis of its parent and
+ * takes a few dual pivots.
+ *
+ * Nodes whose bound is within the MIP gap of the incumbent are dropped
+ * and the search stops at the deadline. The gap reported is against the
+ * lowest bound of the open and dropped nodes. Every new incumbent is
+ * passed to the listener as it is found.
+ *
+ * The basis is refactored every iteration, which is cheap for the handful
+ * of rows of a portfolio model. The backend keeps no state between solves
+ * and can be used from several threads at once.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class JavaBackend implements SolverBackend {
+
+	public static final String NAME = "java";
+
+	public static final int DEFAULT_MAX_NODES = 100000;
+
+	// Primal feasibility, pivot and integrality tolerances
+	static final double FEAS_TOL = 1e-9;
+	static final double PIVOT_TOL = 1e-9;
+	static final double INT_TOL = 1e-6;
+
+	private final int maxNodes;
+
+	/**
+	 * Backend with default node limit
+	 */
+	public JavaBackend() {
+		this(DEFAULT_MAX_NODES);
+	}
+
+	/**
+	 * Backend with given node limit
+	 *
+	 * @param maxNodes maximum number of branch and bound nodes
+	 */
+	public JavaBackend(int maxNodes) {
+		this.maxNodes = maxNodes;
+	}
+
+	@Override
+	public Solution solve(ModelBuilder model, long timeLimit, double mipGap, IncumbentListener listener) {
+		final long start = System.nanoTime();
+		final long deadline = start + timeLimit * 1000000L;
+		Lp root = new Lp(model);
+		Solution.Status status = root.solve();
+
+		if (status != Solution.Status.OPTIMAL || !model.integer)
+			return solution(model, status, status == Solution.Status.OPTIMAL ? root : null, 0.0, start);
+
+		// Depth first, nodes on the stack are solved and not yet branched
+		Deque<Lp> stack = new ArrayDeque<>();
+		Lp best = null;
+		int nodes = 1;
+
+		// Lowest bound of the nodes dropped for being within the gap
+		double cut = Double.POSITIVE_INFINITY;
+
+		stack.push(root);
+		while (!stack.isEmpty() && nodes < maxNodes) {
+			if (timeLimit > 0 && System.nanoTime() > deadline)
+				break;
+
+			Lp node = stack.pop();
+
+			if (best != null && !open(node.value, best.value, mipGap)) {
+				if (improves(node.value, best.value))
+					cut = Math.min(cut, node.value);
+				continue;
+			}
+
+			int j = node.fractional();
+			if (j < 0) {
+				best = node;
+				if (listener != null)
+					listener.incumbent(solution(model, Solution.Status.FEASIBLE, best,
+												gap(best.value, Math.min(cut, bound(stack))), start));
+				continue;
+			}
+
+			double v = node.x[j];
+			Lp down = new Lp(node);
+			Lp up = new Lp(node);
+			down.up[j] = Math.floor(v);
+			up.lo[j] = Math.ceil(v);
+
+			// Child on the rounding side is explored first
+			Lp near = v - Math.floor(v) < 0.5 ? down : up;
+			Lp far = near == down ? up : down;
+
+			for (Lp child : new Lp[] {far, near}) {
+				nodes++;
+				if (child.solve() != Solution.Status.OPTIMAL)
+					continue;
+				if (best == null || open(child.value, best.value, mipGap))
+					stack.push(child);
+				else if (improves(child.value, best.value))
+					cut = Math.min(cut, child.value);
+			}
+		}
+
+		if (best == null)
+			return solution(model, stack.isEmpty() ? Solution.Status.INFEASIBLE : Solution.Status.FAILED, null, Double.NaN, start);
+
+		// Optimal unless an open or dropped node could still improve
+		double gap = gap(best.value, Math.min(cut, bound(stack)));
+		return solution(model, gap > 0 ? Solution.Status.FEASIBLE : Solution.Status.OPTIMAL, best, gap, start);
+	}
+
+	/**
+	 * True if a node is worth exploring: its bound improves on the
+	 * incumbent by more than the gap
+	 */
+	private static boolean open(double bound, double incumbent, double mipGap) {
+		return improves(bound, incumbent) && Solution.gap(incumbent, bound) > mipGap;
+	}
+
+	/**
+	 * Gap of the incumbent to a bound, zero if the bound can not improve
+	 * on it
+	 */
+	private static double gap(double incumbent, double bound) {
+		return improves(bound, incumbent) ? Solution.gap(incumbent, bound) : 0.0;
+	}
+
+	/**
+	 * Best bound of the open nodes, minimisation sense
+	 */
+	private static double bound(Deque<Lp> stack) {
+		double b = Double.POSITIVE_INFINITY;
+
+		for (Lp node : stack)
+			b = Math.min(b, node.value);
+		return b;
+	}
+
+	/**
+	 * True if a bound is better than the incumbent, minimisation sense
+	 */
+	private static boolean improves(double bound, double incumbent) {
+		return bound < incumbent - 1e-9 * (1 + Math.abs(incumbent));
+	}
+
+	private Solution solution(ModelBuilder model, Solution.Status status, Lp lp, double gap, long start) {
+		if (lp == null)
+			return new Solution(model, status, Double.NaN, Double.NaN, null, NAME, System.nanoTime() - start);
+
+		double[] x = Arrays.copyOf(lp.x, model.size);
+		double value = 0.0;
+
+		if (model.integer)
+			for (int j = 0; j < x.length; j++)
+				x[j] = Math.rint(x[j]);
+		for (int j = 0; j < x.length; j++)
+			value += model.obj[j] * x[j];
+		return new Solution(model, status, value, gap, x, NAME, System.nanoTime() - start);
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public boolean isConcurrent() {
+		return true;
+	}
+
+	/**
+	 * Bounded variable LP min c x, A x - s = 0, lo &lt;= (x, s) &lt;= up
+	 * solved by dual simplex. Variables 0..n-1 are columns, n..n+m-1 the
+	 * row slacks.
+	 */
+	static class Lp {
+		private final ModelBuilder model;
+		private final int m;
+		private final int n;
+
+		// Dense [A | -I], row major, and minimisation costs, shared by copies
+		private final double[] a;
+		private final double[] c;
+
+		final double[] lo;
+		final double[] up;
+		private final int[] basic;
+		private final boolean[] isBasic;
+		private final boolean[] atUpper;
+
+		private final double[] binv;
+		final double[] x;
+		double value;
+		int iterations;
+
+		Lp(ModelBuilder model) {
+			this.model = model;
+			m = model.rows;
+			n = model.size;
+
+			final int w = n + m;
+			a = new double[m * w];
+			c = new double[w];
+			lo = new double[w];
+			up = new double[w];
+			basic = new int[m];
+			isBasic = new boolean[w];
+			atUpper = new boolean[w];
+			binv = new double[m * m];
+			x = new double[w];
+
+			if (Double.isInfinite(model.lb) || Double.isInfinite(model.ub))
+				throw new IllegalArgumentException("Java backend needs bounded columns");
+
+			for (int k = 1; k <= model.nnz; k++)
+				a[(model.ia[k] - 1) * w + model.ja[k] - 1] = model.ar[k];
+			for (int r = 0; r < m; r++)
+				a[r * w + n + r] = -1.0;
+
+			for (int j = 0; j < n; j++) {
+				c[j] = model.maximise ? -model.obj[j] : model.obj[j];
+				lo[j] = model.lb;
+				up[j] = model.ub;
+				atUpper[j] = c[j] < 0;
+			}
+			for (int r = 0; r < m; r++) {
+				lo[n + r] = model.rowLo[r];
+				up[n + r] = model.rowHi[r];
+				basic[r] = n + r;
+				isBasic[n + r] = true;
+			}
+		}
+
+		/**
+		 * Copy starting from the basis of another LP
+		 */
+		Lp(Lp other) {
+			model = other.model;
+			m = other.m;
+			n = other.n;
+			a = other.a;
+			c = other.c;
+			lo = other.lo.clone();
+			up = other.up.clone();
+			basic = other.basic.clone();
+			isBasic = other.isBasic.clone();
+			atUpper = other.atUpper.clone();
+			binv = new double[m * m];
+			x = new double[n + m];
+		}
+
+		/**
+		 * Runs the dual simplex from the current basis
+		 *
+		 * @return OPTIMAL, INFEASIBLE or FAILED
+		 */
+		Solution.Status solve() {
+			final int w = n + m;
+			final int maxIter = 50 * w + 1000;
+			final double[] y = new double[m];
+
+			for (iterations = 0; iterations < maxIter; iterations++) {
+				if (!invert())
+					return Solution.Status.FAILED;
+				primal();
+
+				// Leaving row, largest bound violation
+				int p = -1;
+				boolean toLower = false;
+				double worst = 0.0;
+
+				for (int r = 0; r < m; r++) {
+					final int b = basic[r];
+					final double below = lo[b] - x[b];
+					final double above = x[b] - up[b];
+
+					if (below > FEAS_TOL * (1 + Math.abs(lo[b])) && below > worst) {
+						worst = below;
+						p = r;
+						toLower = true;
+					} else if (above > FEAS_TOL * (1 + Math.abs(up[b])) && above > worst) {
+						worst = above;
+						p = r;
+						toLower = false;
+					}
+				}
+
+				if (p < 0) {
+					value = 0.0;
+					for (int j = 0; j < n; j++)
+						value += c[j] * x[j];
+					return Solution.Status.OPTIMAL;
+				}
+
+				// Simplex multipliers y = c_B B^-1
+				for (int r = 0; r < m; r++) {
+					double s = 0.0;
+					for (int k = 0; k < m; k++)
+						s += c[basic[k]] * binv[k * m + r];
+					y[r] = s;
+				}
+
+				// Dual ratio test on row p of B^-1 [A | -I]
+				int q = -1;
+				double best = Double.POSITIVE_INFINITY;
+				double pivot = 0.0;
+
+				for (int j = 0; j < w; j++) {
+					if (isBasic[j] || lo[j] == up[j])
+						continue;
+
+					double alpha = 0.0;
+					double d = c[j];
+					for (int r = 0; r < m; r++) {
+						alpha += binv[p * m + r] * a[r * w + j];
+						d -= y[r] * a[r * w + j];
+					}
+					if (Math.abs(alpha) < PIVOT_TOL)
+						continue;
+
+					// Moving x_j off its bound must push x_B[p] towards the violated bound
+					boolean eligible = toLower ? (atUpper[j] ? alpha > 0 : alpha < 0)
+											   : (atUpper[j] ? alpha < 0 : alpha > 0);
+					if (!eligible)
+						continue;
+
+					double ratio = Math.abs(d) / Math.abs(alpha);
+					if (ratio < best || (ratio == best && Math.abs(alpha) > Math.abs(pivot))) {
+						best = ratio;
+						pivot = alpha;
+						q = j;
+					}
+				}
+
+				if (q < 0)
+					return Solution.Status.INFEASIBLE;
+
+				final int leave = basic[p];
+				basic[p] = q;
+				isBasic[q] = true;
+				isBasic[leave] = false;
+				atUpper[leave] = !toLower;
+			}
+			return Solution.Status.FAILED;
+		}
+
+		/**
+		 * Inverts the basis by Gauss-Jordan elimination with partial pivoting
+		 *
+		 * @return false if the basis is singular
+		 */
+		private boolean invert() {
+			final int w = n + m;
+			final double[] b = new double[m * m];
+
+			for (int r = 0; r < m; r++)
+				for (int k = 0; k < m; k++)
+					b[r * m + k] = a[r * w + basic[k]];
+			Arrays.fill(binv, 0.0);
+			for (int r = 0; r < m; r++)
+				binv[r * m + r] = 1.0;
+
+			for (int col = 0; col < m; col++) {
+				int piv = col;
+				for (int r = col + 1; r < m; r++)
+					if (Math.abs(b[r * m + col]) > Math.abs(b[piv * m + col]))
+						piv = r;
+				if (Math.abs(b[piv * m + col]) < PIVOT_TOL)
+					return false;
+
+				if (piv != col)
+					for (int k = 0; k < m; k++) {
+						double t = b[col * m + k];
+						b[col * m + k] = b[piv * m + k];
+						b[piv * m + k] = t;
+						t = binv[col * m + k];
+						binv[col * m + k] = binv[piv * m + k];
+						binv[piv * m + k] = t;
+					}
+
+				final double d = b[col * m + col];
+				for (int k = 0; k < m; k++) {
+					b[col * m + k] /= d;
+					binv[col * m + k] /= d;
+				}
+				for (int r = 0; r < m; r++) {
+					if (r == col)
+						continue;
+					final double f = b[r * m + col];
+					if (f == 0.0)
+						continue;
+					for (int k = 0; k < m; k++) {
+						b[r * m + k] -= f * b[col * m + k];
+						binv[r * m + k] -= f * binv[col * m + k];
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Nonbasic variables at their bounds, basic ones from
+		 * x_B = -B^-1 N x_N
+		 */
+		private void primal() {
+			final int w = n + m;
+			final double[] rhs = new double[m];
+
+			for (int j = 0; j < w; j++) {
+				if (isBasic[j])
+					continue;
+				x[j] = atUpper[j] ? up[j] : lo[j];
+				if (x[j] != 0.0)
+					for (int r = 0; r < m; r++)
+						rhs[r] -= a[r * w + j] * x[j];
+			}
+			for (int r = 0; r < m; r++) {
+				double s = 0.0;
+				for (int k = 0; k < m; k++)
+					s += binv[r * m + k] * rhs[k];
+				x[basic[r]] = s;
+			}
+		}
+
+		/**
+		 * Returns the most fractional column
+		 *
+		 * @return column index, -1 if all columns are integral
+		 */
+		int fractional() {
+			int j = -1;
+			double worst = INT_TOL;
+
+			for (int k = 0; k < n; k++) {
+				double f = Math.abs(x[k] - Math.rint(x[k]));
+				if (f > worst) {
+					worst = f;
+					j = k;
+				}
+			}
+			return j;
+		}
+	}
+}
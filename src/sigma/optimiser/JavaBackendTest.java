@@ -0,0 +1,229 @@
+package sigma.optimiser;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sigma.quant.OptSide;
+import sigma.quant.Option;
+
+public class JavaBackendTest {
+
+	/**
+	 * Quoted options with a volatility, so that nothing is pruned
+	 */
+	private static List<Option> options(int n) {
+		List<Option> out = new ArrayList<>();
+
+		for (int i = 0; i < n; i++) {
+			Option o = new Option(50.0, 50.0 + i, 0.25, 0.3, 0.01, 0.0, OptSide.CALL);
+			o.setPrice(1.0);
+			out.add(o);
+		}
+		return out;
+	}
+
+	@Test
+	public void testFractionalKnapsack() {
+		double[] v = {6.0, 10.0, 12.0, 7.0, 3.0};
+		double[] w = {1.0, 2.0, 3.0, 2.0, 2.0};
+		ModelBuilder model = new ModelBuilder();
+
+		model.prune(options(v.length), v);
+		model.setObjective("knapsack", true, v);
+		model.setColumns(0, 1, false);
+		model.addRow("weight", Double.NEGATIVE_INFINITY, 5.0, w);
+
+		Solution s = new JavaBackend().solve(model);
+
+		// Greedy by value per weight: items 0, 1 and 2/3 of item 2
+		assertEquals(Solution.Status.OPTIMAL, s.getStatus());
+		assertEquals(24.0, s.getValue(), 1e-9);
+		assertArrayEquals(new double[] {1.0, 1.0, 2.0 / 3, 0.0, 0.0}, s.getPositions(), 1e-9);
+	}
+
+	@Test
+	public void testAgainstEnumeration() {
+		Random rnd = new Random(7);
+		final int n = 6;
+		final int maxPos = 3;
+
+		for (int trial = 0; trial < 20; trial++) {
+			double[] delta = new double[n];
+			double[] gamma = new double[n];
+			double[] theta = new double[n];
+
+			for (int i = 0; i < n; i++) {
+				delta[i] = 2 * rnd.nextDouble() - 1;
+				gamma[i] = 0.1 * rnd.nextDouble();
+				theta[i] = -rnd.nextDouble();
+			}
+
+			ModelBuilder model = new ModelBuilder();
+			model.prune(options(n), delta, gamma, theta);
+			model.setObjective("minGamma", false, gamma);
+			model.setColumns(0, maxPos, true);
+			model.addRow("theta", 1.0, Double.POSITIVE_INFINITY, negate(theta));
+			model.addRow("delta", -0.5, 0.5, delta);
+			model.addRow("open", Double.NEGATIVE_INFINITY, 8, 1.0);
+
+			Solution s = new JavaBackend().solve(model);
+			double best = enumerate(n, maxPos, gamma, theta, delta);
+
+			if (Double.isInfinite(best)) {
+				assertEquals(Solution.Status.INFEASIBLE, s.getStatus());
+			} else {
+				assertEquals(Solution.Status.OPTIMAL, s.getStatus());
+				assertEquals(best, s.getValue(), 1e-9);
+				assertTrue(feasible(s.getPositions(), theta, delta, 1.0, 0.5, 8));
+			}
+		}
+	}
+
+	@Test
+	public void testInfeasibleAndPruned() {
+		List<Option> opts = options(4);
+		double[] theta = {-1.0, -1.0, -1.0, -1.0};
+		double[] gamma = {0.1, 0.0, 0.1, 0.1};
+
+		// Unquoted option gets no column
+		opts.get(2).setPrice(-1.0);
+
+		ModelBuilder model = new ModelBuilder();
+		assertEquals(3, model.prune(opts, gamma, theta));
+		model.setObjective("minGamma", false, gamma);
+		model.setColumns(0, 1, true);
+		model.addRow("theta", 1.5, Double.POSITIVE_INFINITY, negate(theta));
+
+		Solution s = new JavaBackend().solve(model);
+		assertEquals(Solution.Status.OPTIMAL, s.getStatus());
+		assertEquals(0.1, s.getValue(), 1e-12);
+		assertEquals(0.0, s.getPosition(2), 0.0);
+		assertEquals(1.0, s.getPosition(1), 0.0);
+
+		// Three columns can not make theta of 3.5
+		model.prune(opts, gamma, theta);
+		model.setObjective("minGamma", false, gamma);
+		model.addRow("theta", 3.5, Double.POSITIVE_INFINITY, negate(theta));
+		assertEquals(Solution.Status.INFEASIBLE, new JavaBackend().solve(model).getStatus());
+	}
+
+	private static double[] negate(double[] a) {
+		double[] out = new double[a.length];
+
+		for (int i = 0; i < a.length; i++)
+			out[i] = -a[i];
+		return out;
+	}
+
+	private static boolean feasible(double[] x, double[] theta, double[] delta, double minTheta, double maxDelta, int maxOpen) {
+		double t = 0.0;
+		double d = 0.0;
+		double open = 0.0;
+
+		for (int i = 0; i < x.length; i++) {
+			t -= theta[i] * x[i];
+			d += delta[i] * x[i];
+			open += x[i];
+		}
+		return t >= minTheta - 1e-9 && Math.abs(d) <= maxDelta + 1e-9 && open <= maxOpen + 1e-9;
+	}
+
+	/**
+	 * Best objective over all integer points, infinity if none is feasible
+	 */
+	private static double enumerate(int n, int maxPos, double[] gamma, double[] theta, double[] delta) {
+		int[] x = new int[n];
+		double best = Double.POSITIVE_INFINITY;
+
+		while (true) {
+			double[] xd = new double[n];
+			double g = 0.0;
+
+			for (int i = 0; i < n; i++) {
+				xd[i] = x[i];
+				g += gamma[i] * x[i];
+			}
+			if (feasible(xd, theta, delta, 1.0, 0.5, 8))
+				best = Math.min(best, g);
+
+			int k = 0;
+			while (k < n && x[k] == maxPos)
+				x[k++] = 0;
+			if (k == n)
+				return best;
+			x[k]++;
+		}
+	}
+
+	/**
+	 * Gamma minimisation on a chain sized problem, takes a few hundred
+	 * branch and bound nodes
+	 */
+	private static ModelBuilder chainModel() {
+		List<Option> opts = new ArrayList<>();
+		Random rnd = new Random(3);
+		int n = 180;
+		double[] d = new double[n];
+		double[] g = new double[n];
+		double[] t = new double[n];
+
+		for (int i = 0; i < n; i++) {
+			Option o = new Option(55.0, 45.0 + i % 18, 0.1 + 0.1 * (i / 36), 0.3, 0.01, 0.0,
+								  i % 2 == 0 ? OptSide.CALL : OptSide.PUT);
+			o.setPrice(1.0);
+			opts.add(o);
+			d[i] = (rnd.nextBoolean() ? 1 : -1) * o.delta();
+			g[i] = o.gamma();
+			t[i] = o.theta();
+		}
+
+		ModelBuilder model = new ModelBuilder();
+		model.prune(opts, d, g, t);
+		model.setObjective("minGamma", false, g);
+		model.setColumns(0, 5, true);
+		model.addRow("theta", 5.0, Double.POSITIVE_INFINITY, negate(t));
+		model.addRow("delta", -0.9, 0.9, d);
+		model.addRow("open", Double.NEGATIVE_INFINITY, 20, 1.0);
+		return model;
+	}
+
+	@Test
+	public void testAnytime() {
+		ModelBuilder model = chainModel();
+		JavaBackend backend = new JavaBackend();
+		List<Solution> incumbents = new ArrayList<>();
+
+		Solution opt = backend.solve(model);
+		assertEquals(Solution.Status.OPTIMAL, opt.getStatus());
+		assertEquals(0.0, opt.getGap(), 0.0);
+
+		// Stop within 5% of the bound, every incumbent improves on the last
+		Solution s = backend.solve(model, 0, 0.05, incumbents::add);
+		assertTrue(s.hasSolution());
+		assertFalse(incumbents.isEmpty());
+		for (int i = 1; i < incumbents.size(); i++)
+			assertTrue(incumbents.get(i).getValue() < incumbents.get(i - 1).getValue());
+		assertEquals(incumbents.get(incumbents.size() - 1).getValue(), s.getValue(), 1e-12);
+		assertTrue(s.getGap() <= 0.05);
+		assertTrue(s.getValue() - opt.getValue() <= 0.05 * s.getValue() + 1e-12);
+
+		// Tight deadline still returns, with the best solution found if any
+		long start = System.nanoTime();
+		s = backend.solve(model, 1, 0.0, null);
+		assertTrue(System.nanoTime() - start < 500000000L);
+		assertTrue(s.getStatus() != Solution.Status.INFEASIBLE);
+		if (s.getStatus() == Solution.Status.FEASIBLE)
+			assertTrue(s.getValue() >= opt.getValue() - 1e-12 && s.getGap() >= 0);
+	}
+
+	@Test
+	public void testForName() {
+		assertEquals(JavaBackend.NAME, SolverBackend.forName("java").getName());
+		assertEquals(JavaBackend.NAME, SolverBackend.forName("Java").getName());
+	}
+}
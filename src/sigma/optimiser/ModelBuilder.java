@@ -0,0 +1,214 @@
+package sigma.optimiser;
+
+import java.util.Arrays;
+import java.util.List;
+
+import sigma.quant.Option;
+
+/**
+ * Assembles an optimisation problem in Java arrays, independent of the
+ * solver it is handed to (see SolverBackend).
+ *
+ * Options are first pruned to the columns worth solving for: options
+ * without a quote or an implied volatility, and options whose
+ * sensitivities are all zero, get no column. Pruning is deliberately
+ * limited to these: an option that looks dominated on one greek can still
+ * be needed to meet a two sided limit on another, so only zero columns
+ * are safe to drop without changing the optimum. Rows are then added with
+ * coefficients per option, only the non-zero coefficients of kept columns
+ * are stored as (row, column, value) triplets, so a backend can load the
+ * whole constraint matrix in one go.
+ *
+ * Column j of the problem (1-based) is option getOption(j) of the list
+ * given to prune(). All columns share the same bounds and kind.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class ModelBuilder {
+
+	// Sensitivities below this are treated as zero
+	public static final double ZERO = 1e-9;
+
+	// Number of options and option index per column, 0-based
+	int options;
+	int[] cols = new int[0];
+	int size;
+
+	// Objective per column
+	String name = "model";
+	boolean maximise;
+	double[] obj = new double[0];
+
+	// Column bounds and kind
+	double lb;
+	double ub = 1.0;
+	boolean integer;
+
+	// Rows, infinite bounds for free sides
+	String[] rowName = new String[4];
+	double[] rowLo = new double[4];
+	double[] rowHi = new double[4];
+	int rows;
+
+	// Constraint matrix triplets, 1-based as GLPK expects, index 0 unused
+	int[] ia = new int[1];
+	int[] ja = new int[1];
+	double[] ar = new double[1];
+	int nnz;
+
+	/**
+	 * Selects the columns. An option is kept if it is quoted, has an
+	 * implied volatility and at least one non-zero sensitivity. Clears
+	 * rows and objective.
+	 *
+	 * @param options options
+	 * @param greeks sensitivities per option the model uses, eg. delta, gamma and theta
+	 * @return number of columns kept
+	 */
+	public int prune(List<Option> options, double[]... greeks) {
+		this.options = options.size();
+		cols = new int[options.size()];
+		size = 0;
+
+		for (int i = 0; i < options.size(); i++) {
+			Option o = options.get(i);
+			boolean zero = true;
+
+			if (!(o.getPrice() > 0) || !(o.getSigma() > 0))
+				continue;
+			for (double[] g : greeks)
+				if (Math.abs(g[i]) > ZERO)
+					zero = false;
+			if (!zero)
+				cols[size++] = i;
+		}
+
+		obj = new double[size];
+		rows = 0;
+		nnz = 0;
+		return size;
+	}
+
+	/**
+	 * Sets the objective
+	 *
+	 * @param name objective name
+	 * @param maximise maximise if true, minimise otherwise
+	 * @param coef coefficient per option
+	 */
+	public void setObjective(String name, boolean maximise, double[] coef) {
+		this.name = name;
+		this.maximise = maximise;
+		for (int j = 0; j < size; j++)
+			obj[j] = coef[cols[j]];
+	}
+
+	/**
+	 * Sets bounds and kind of all columns
+	 *
+	 * @param lb lower bound
+	 * @param ub upper bound
+	 * @param integer integer columns if true, continuous otherwise
+	 */
+	public void setColumns(double lb, double ub, boolean integer) {
+		this.lb = lb;
+		this.ub = ub;
+		this.integer = integer;
+	}
+
+	/**
+	 * Adds a row lo &lt;= sum coef x &lt;= hi
+	 *
+	 * @param name row name
+	 * @param lo lower bound, negative infinity if none
+	 * @param hi upper bound, positive infinity if none
+	 * @param coef coefficient per option
+	 * @return row index, 1-based
+	 */
+	public int addRow(String name, double lo, double hi, double[] coef) {
+		if (rows == rowName.length) {
+			rowName = Arrays.copyOf(rowName, 2 * rows);
+			rowLo = Arrays.copyOf(rowLo, 2 * rows);
+			rowHi = Arrays.copyOf(rowHi, 2 * rows);
+		}
+		rowName[rows] = name;
+		rowLo[rows] = lo;
+		rowHi[rows] = hi;
+		rows++;
+
+		if (nnz + size + 1 > ia.length) {
+			int n = Math.max(2 * ia.length, nnz + size + 1);
+			ia = Arrays.copyOf(ia, n);
+			ja = Arrays.copyOf(ja, n);
+			ar = Arrays.copyOf(ar, n);
+		}
+		for (int j = 0; j < size; j++) {
+			double v = coef[cols[j]];
+			if (v != 0.0) {
+				nnz++;
+				ia[nnz] = rows;
+				ja[nnz] = j + 1;
+				ar[nnz] = v;
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Adds a row with the same coefficient for every column
+	 *
+	 * @param name row name
+	 * @param lo lower bound, negative infinity if none
+	 * @param hi upper bound, positive infinity if none
+	 * @param coef coefficient
+	 * @return row index, 1-based
+	 */
+	public int addRow(String name, double lo, double hi, double coef) {
+		double[] c = new double[options];
+
+		Arrays.fill(c, coef);
+		return addRow(name, lo, hi, c);
+	}
+
+	/**
+	 * Returns option index of a column
+	 *
+	 * @param col column, 1-based
+	 * @return option index, 0-based
+	 */
+	public int getOption(int col) {
+		return cols[col - 1];
+	}
+
+	/**
+	 * Number of columns kept by prune()
+	 *
+	 * @return columns
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Number of options given to prune()
+	 *
+	 * @return options
+	 */
+	public int getOptions() {
+		return options;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getNonZeros() {
+		return nnz;
+	}
+}
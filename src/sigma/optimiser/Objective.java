@@ -0,0 +1,14 @@
+package sigma.optimiser;
+
+/**
+ * Objective of the portfolio optimisation, see Optimiser.objMaximiseTheta()
+ * and Optimiser.objMinimiseGamma()
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public enum Objective {
+	MAX_THETA,
+	MIN_GAMMA
+}
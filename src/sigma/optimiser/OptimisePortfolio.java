@@ -6,6 +6,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import org.gnu.glpk.GLPK;
 import org.gnu.glpk.GLPKConstants;
@@ -21,8 +23,14 @@ import com.ib.client.ContractDetails;
 import com.ib.client.EWrapperMsgGenerator;
 import com.ib.client.TickAttr;
 
+import sigma.quant.AdjointRisk;
+import sigma.quant.AmericanPricer;
 import sigma.quant.OptSide;
 import sigma.quant.Option;
+import sigma.quant.OptionChain;
+import sigma.quant.SolverStatus;
+import sigma.quant.SurfaceCalibrator;
+import sigma.quant.UnderlyingIndex;
 import sigma.trading.Connector;
 import sigma.trading.Instrument;
 
@@ -48,6 +56,13 @@ public class OptimisePortfolio extends Connector {
 	
 	protected Instrument inst;
 	protected ArrayList<Option> portfolio;
+	protected OptionChain chain;
+	protected SurfaceCalibrator calibrator;
+	protected AdjointRisk risk;
+	protected AmericanPricer american;
+	protected PortfolioModel model;
+	protected SolverBackend backend;
+	protected volatile UnderlyingIndex ulIndex;
 	protected double limDelta;
 	protected double limTheta;
 	protected double limGamma;
@@ -67,6 +82,11 @@ public class OptimisePortfolio extends Connector {
 		String[] expiryArray = {"201802", "201803", "201804", "201805", "201806"};
 		
 		portfolio = new ArrayList<>();
+		chain = new OptionChain(strikeArray.length * expiryArray.length * 2);
+		calibrator = new SurfaceCalibrator();
+		risk = new AdjointRisk();
+		calibrator.setMode(SurfaceCalibrator.Mode.OTM);
+		backend = new GlpkBackend();
 		limDelta = 0.9;
 		limTheta = 0.3;
 		limGamma = 0.9;
@@ -137,6 +157,7 @@ public class OptimisePortfolio extends Connector {
 		// Done with options, now underlyings
 		logger.log("Done with options, now underlyings");
 		ArrayList<String> used = new ArrayList<>();
+		ArrayList<Contract> ulContracts = new ArrayList<>();
 		Contract c;
 		int ulId = 2000;
 		
@@ -155,19 +176,30 @@ public class OptimisePortfolio extends Connector {
 			// If we have not requested data for that one
 			if (!allDone) {
 				used.add(portfolio.get(i).getUnderlying().lastTradeDateOrContractMonth());
+				ulContracts.add(c);
 				portfolio.get(i).getUl().setId(ulId);
-				//logger.log(c.toString());
-				this.getClient().reqMktData(ulId, c, "", true, false, null);
 				ulId++;
 			}
 		}
+		
+		// Index has to be in place before the first underlying tick
+		ulIndex = new UnderlyingIndex(portfolio);
+		for(int s = 0; s < ulContracts.size(); s++) {
+			//logger.log(ulContracts.get(s).toString());
+			this.getClient().reqMktData(2000 + s, ulContracts.get(s), "", true, false, null);
+		}
 	}
 	
 	/**
 	 * Prints out the option surface
 	 */
 	public void printSurface() {
-		for (Option o: portfolio) {
+		Option o;
+		
+		calcChain();
+		
+		for (int i = 0; i < portfolio.size(); i++) {
+			o = portfolio.get(i);
 			logger.log(o.getSymbol() + " " + 
 		               o.getExpiry() + " " + 
 		               o.getStrike() + " " +
@@ -175,9 +207,9 @@ public class OptimisePortfolio extends Connector {
 					   " price: " + String.format("%4.3f", o.getPrice()) +
 					   " ul: " + o.getUl().getPrice() +
 					   " vol: " + String.format("%4.3f", o.getSigma()) + 
-					   " delta: " + String.format("%4.3f", o.delta()) +
-					   " gamma: " + String.format("%4.3f", o.gamma()) +
-					   " theta: " + String.format("%4.3f", o.theta())
+					   " delta: " + String.format("%4.3f", chain.getDelta()[i]) +
+					   " gamma: " + String.format("%4.3f", chain.getGamma()[i]) +
+					   " theta: " + String.format("%4.3f", chain.getTheta()[i])
 		               );
 		}
 	}
@@ -250,24 +282,19 @@ public class OptimisePortfolio extends Connector {
 			}
 		}
 		
-		// Process underlying prices
-		if(tickerId >= 2000) {
+		// Process underlying prices, only the options on that underlying are touched
+		if((tickerId >= 2000) && (ulIndex != null)) {
 			switch(field) {
 			case 1: // bid
-				for(Option o: portfolio)
-					if(o.getUl().getId() == tickerId)
-						o.getUl().setBid(price);
+				ulIndex.setBid(tickerId, price);
 				break;
 			case 2: // ask
-				for(Option o: portfolio)
-					if(o.getUl().getId() == tickerId)
-						o.getUl().setAsk(price);
+				ulIndex.setAsk(tickerId, price);
 				break;
 			case 4: // last
 			case 9: // close
-				for(Option o: portfolio)
-					if(o.getUl().getId() == tickerId)
-						o.getUl().setPrice(price);
+				ulIndex.setPrice(tickerId, price);
+				ulIndex.reprice();
 				break;
 			default:
 				break;
@@ -287,11 +314,20 @@ public class OptimisePortfolio extends Connector {
 	 * Calculates option chain volatilities
 	 */
 	public void calcVol() {
-		for (Option o: portfolio) {
-			
-			logger.verbose("Calculating implied volatility for instrument " + o.getId());
-			o.calcVol();
+		SolverStatus[] status;
+		int failed = 0;
+		
+		logger.log("Calibrating volatility surface");
+		status = calibrator.calibrate(portfolio);
+		
+		for (int i = 0; i < status.length; i++) {
+			if (status[i] != SolverStatus.SUCCESS) {
+				failed++;
+				logger.verbose("Implied volatility for instrument " + portfolio.get(i).getId() + ": " + status[i]);
+			}
 		}
+		logger.log("Surface calibrated, " + (status.length - failed) + " of " + status.length + " solved");
+		logger.log("Largest put-call parity violation: " + String.format("%5.4f", calibrator.maxParityViolation()));
 	}
 	
 	/**
@@ -529,13 +565,83 @@ public class OptimisePortfolio extends Connector {
         }
 	}
 	
+	/**
+	 * Loads the portfolio into the chain and calculates the greeks. With
+	 * American pricing on, price, delta, gamma, vega and theta come from
+	 * the American pricer and the second order greeks stay European.
+	 */
+	private void calcChain() {
+		chain.load(portfolio);
+		chain.calcGreeks();
+		if (american != null)
+			american.evaluate(chain);
+	}
+	
+	/**
+	 * Gamma minimisation on the persistent model. The model is built on the
+	 * first call and only updated and warm started on the following ones,
+	 * so this can be called every few seconds during the session.
+	 */
+	public void reoptimise() {
+		if (model == null || model.size() != portfolio.size()) {
+			if (model != null)
+				model.delete();
+			model = new PortfolioModel(portfolio.size(), Objective.MIN_GAMMA, 5, true);
+			model.setMaxOpen(20);
+		}
+		model.setThetaLimit(limTheta);
+		model.setDeltaLimit(limDelta);
+		
+		calcChain();
+		model.update(chain.getDelta(), chain.getGamma(), chain.getTheta());
+		
+		if (model.solve()) {
+			logger.log("Re-optimised, objective " + String.format("%5.4f", model.getValue()));
+			model.apply(portfolio);
+		} else {
+			logger.error("The problem could not be solved, GLPK return code " + model.getReturnCode());
+		}
+	}
+	
+	/**
+	 * Efficient frontier at the current delta limit, eg. best theta for a
+	 * range of gamma limits. The grid is solved concurrently and the table
+	 * is logged. A backend that serialises its solves, such as GLPK, is
+	 * replaced by JavaBackend for the sweep.
+	 * 
+	 * @param gammas gamma limits, null for no gamma constraint
+	 * @param thetas theta limits, null for no theta constraint
+	 * @return frontier with the selected positions per point
+	 */
+	public List<FrontierSweep.Point> frontier(FrontierSweep.Range gammas, FrontierSweep.Range thetas) {
+		SolverBackend b = backend;
+		FrontierSweep sweep;
+		List<FrontierSweep.Point> points;
+		
+		if (!b.isConcurrent()) {
+			logger.log("Backend " + b.getName() + " solves one problem at a time, sweeping with " + JavaBackend.NAME);
+			b = new JavaBackend();
+		}
+		sweep = new FrontierSweep(b);
+		
+		calcChain();
+		
+		points = sweep.sweep(portfolio, chain.getDelta(), chain.getGamma(), chain.getTheta(),
+				new FrontierSweep.Range(limDelta), gammas, thetas);
+		
+		logger.log("Efficient frontier, " + points.size() + " points");
+		for (String s : FrontierSweep.format(points))
+			logger.log(s);
+		return points;
+	}
+	
 	/**
 	 * Optimisation with new refactoring of Optimiser class.
 	 */
 	public void optimise() {
 		Optimiser opt;
 		
-		opt = new Optimiser();
+		opt = new Optimiser(backend);
 		
 		opt.loadData(portfolio);
 		opt.objMaximiseTheta(5);
@@ -618,26 +724,27 @@ public class OptimisePortfolio extends Connector {
 	public void portfolioSummary() {
 		String fmt = "%5.4f";
 		
-		Double totDelta = 0.0;
-		Double totGamma = 0.0;
-		Double totTheta = 0.0;
-		Double totVega  = 0.0;
-		Double totThega = 0.0;
-		Double totSpeed = 0.0;
-		Double totColor = 0.0;
+		double[] pos;
 		
 		logger.log("Porftolio summary");
 		
+		calcChain();
 		
-		for(int i = 0; i < portfolio.size(); i++) {
-			totDelta = totDelta + portfolio.get(i).delta() * portfolio.get(i).getPos();
-			totGamma = totGamma + portfolio.get(i).gamma() * portfolio.get(i).getPos();
-			totTheta = totTheta + portfolio.get(i).theta() * portfolio.get(i).getPos();
-			totVega  = totVega  + portfolio.get(i).vega()  * portfolio.get(i).getPos();
-			totThega = totThega + portfolio.get(i).thega() * portfolio.get(i).getPos();
-			totSpeed = totSpeed + portfolio.get(i).speed() * portfolio.get(i).getPos();
-			totColor = totColor + portfolio.get(i).color() * portfolio.get(i).getPos();
-		}
+		pos = new double[portfolio.size()];
+		for(int i = 0; i < portfolio.size(); i++)
+			pos[i] = portfolio.get(i).getPos();
+		
+		double totDelta = chain.total(chain.getDelta(), pos);
+		double totGamma = chain.total(chain.getGamma(), pos);
+		double totTheta = chain.total(chain.getTheta(), pos);
+		double totVega  = chain.total(chain.getVega(),  pos);
+		double totThega = chain.total(chain.getThega(), pos);
+		double totSpeed = chain.total(chain.getSpeed(), pos);
+		double totColor = chain.total(chain.getColor(), pos);
+		
+		// Rate and per underlying spot risk in one adjoint pass
+		risk.evaluate(chain, pos);
+		double totRho = risk.total(risk.getRate());
 		
 		logger.log("Non-zero positions");
 		for(int i = 0; i < portfolio.size(); i++) {
@@ -658,6 +765,10 @@ public class OptimisePortfolio extends Connector {
 		logger.log("Cumulative thega: " + String.format(fmt, totThega));
 		logger.log("Cumulative speed: " + String.format(fmt, totSpeed));
 		logger.log("Cumulative color: " + String.format(fmt, totColor));
+		logger.log("Cumulative rho: "   + String.format(fmt, totRho));
+		
+		for (Map.Entry<Integer, Double> e : risk.spotByUnderlying(portfolio).entrySet())
+			logger.log("Delta on underlying " + e.getKey() + ": " + String.format(fmt, e.getValue()));
 	}
 	
 	/**
@@ -669,6 +780,8 @@ public class OptimisePortfolio extends Connector {
 		OptimisePortfolio o;
 		Boolean fromFile = false;
 		Boolean toFile = false;
+		Boolean frontier = false;
+		Boolean warm = false;
 		String fname = "";
 		
 		o = new OptimisePortfolio();
@@ -680,6 +793,10 @@ public class OptimisePortfolio extends Connector {
 				System.out.println("-h --help print this help text.");
 				System.out.println("-f <fname> gets portfolio from file (not TWS)");
 				System.out.println("-s <fname> saves portfolio to file");
+				System.out.println("-b <backend> solver backend, glpk (default) or java");
+				System.out.println("-a prices the chain as American options on futures");
+				System.out.println("-F sweeps the theta for gamma frontier instead of optimising");
+				System.out.println("-w re-optimises on the persistent warm started model (experimental)");
 				System.exit(0);
 			}
 			
@@ -689,6 +806,26 @@ public class OptimisePortfolio extends Connector {
 				fname = args[i + 1];
 			}
 			
+			// Frontier mode
+			if (args[i].compareTo("-F") == 0) {
+				frontier = true;
+			}
+			
+			// Persistent model
+			if (args[i].compareTo("-w") == 0) {
+				warm = true;
+			}
+			
+			// American pricing
+			if (args[i].compareTo("-a") == 0) {
+				o.american = new AmericanPricer();
+			}
+			
+			// Solver backend
+			if ((args[i].compareTo("-b") == 0 && i+1 < args.length)) {
+				o.backend = SolverBackend.forName(args[i + 1]);
+			}
+			
 			// Save option chain to file
 			if ((args[i].compareTo("-s") == 0 && i+1 < args.length)) {
 				toFile = true;
@@ -733,7 +870,12 @@ public class OptimisePortfolio extends Connector {
 		
 		// Create optimisation problem and optimise
 		//o.maxTheta();
-		o.minGamma();
+		if (frontier)
+			o.frontier(new FrontierSweep.Range(0.1, o.limGamma, 9), null);
+		else if (warm)
+			o.reoptimise();
+		else
+			o.minGamma();
 		
 		// Summarize the portfolio
 		o.portfolioSummary();
@@ -2,20 +2,15 @@ package sigma.optimiser;
 
 import java.util.ArrayList;
 
-import org.gnu.glpk.GLPK;
-import org.gnu.glpk.GLPKConstants;
-import org.gnu.glpk.SWIGTYPE_p_double;
-import org.gnu.glpk.SWIGTYPE_p_int;
-import org.gnu.glpk.glp_iocp;
-import org.gnu.glpk.glp_prob;
-import org.gnu.glpk.glp_smcp;
-
 import sigma.quant.Option;
 import sigma.utils.Logger;
 
 /**
  * Optimiser class
  * 
+ * Objective and constraints are assembled in a ModelBuilder and solved by
+ * a SolverBackend, GLPK unless another backend is given.
+ * 
  * @author Peeter Meos
  * @version 0.1
  */
@@ -23,48 +18,83 @@ public class Optimiser {
 	// Logger, perhaps its better to pass a reference or something 
 	protected Logger logger;
 	
-	// Row counter for constraint matrix
-	protected int row;
-	
-	protected glp_prob lp;
-    protected SWIGTYPE_p_int ind;
-    protected SWIGTYPE_p_double val;
-	protected int ret;
+	protected SolverBackend backend;
+	protected Solution solution;
 	
 	// Option data that is used for optimisation
 	protected ArrayList<Option> data;
+	
+	// Problem assembled in Java, column to option map
+	protected ModelBuilder builder;
+	protected double[] delta;
+	protected double[] gamma;
+	protected double[] theta;
 
 	/** 
 	 * Simple constructor that initialises the logger
 	 */
 	public Optimiser() {
+		this(new GlpkBackend());
+	}
+	
+	/**
+	 * Constructor with given solver backend
+	 * 
+	 * @param backend solver backend
+	 */
+	public Optimiser(SolverBackend backend) {
 		logger = new Logger();
-		row = 0;
-		
-        // Create problem
-        lp = GLPK.glp_create_prob();
-        logger.log("Problem created");
+		builder = new ModelBuilder();
+		this.backend = backend;
 	}
 	
 	/**
-	 * Loads data for optimisation
+	 * Loads data for optimisation. Greeks are evaluated once per option and
+	 * options that are not quoted or have no sensitivity are pruned.
 	 * 
 	 * @param d Data structure
 	 */
 	public void loadData(ArrayList<Option> d) {    
+		double[] delta = new double[d.size()];
+		double[] gamma = new double[d.size()];
+		double[] theta = new double[d.size()];
+		
+		for (int i = 0; i < d.size(); i++) {
+			Option o = d.get(i);
+			if (o.getSigma() > 0) {
+				delta[i] = o.delta();
+				gamma[i] = o.gamma();
+				theta[i] = o.theta();
+			}
+		}
+		
+		loadData(d, delta, gamma, theta);
+		logger.log("Optimising over " + builder.size() + " of " + data.size() + " options");
+	}
+	
+	/**
+	 * Loads data with precomputed greeks, eg. from an OptionChain. The
+	 * options and arrays are only read, several optimisers can share them.
+	 * 
+	 * @param d Data structure
+	 * @param delta delta per option
+	 * @param gamma gamma per option
+	 * @param theta theta per option
+	 */
+	public void loadData(ArrayList<Option> d, double[] delta, double[] gamma, double[] theta) {
 		this.data = d;
+		this.delta = delta;
+		this.gamma = gamma;
+		this.theta = theta;
 		
-        // Allocate memory
-        ind = GLPK.new_intArray(data.size());
-        val = GLPK.new_doubleArray(data.size());
+		builder.prune(data, delta, gamma, theta);
 	}
 	
 	/**
-	 * Free memory on shutdown
+	 * Free memory on shutdown, backends do not hold on to the problem
 	 */
 	public void shutdown() {
-		// Free memory
-        GLPK.glp_delete_prob(lp);
+		solution = null;
 	}
 	
 	/**
@@ -73,24 +103,10 @@ public class Optimiser {
 	 * @param maxPos maximum quantity for one contract
 	 */
 	public void objMaximiseTheta(int maxPos) {
-        GLPK.glp_set_prob_name(lp, "maxTheta");
-
-        // Define objective
-        GLPK.glp_set_obj_name(lp, "z");
-        GLPK.glp_set_obj_dir(lp, GLPKConstants.GLP_MAX);
-        GLPK.glp_set_obj_coef(lp, 0, 0.0);
-        
-        // Define columns one for every portfolio entry
-        // Add objective function coefficients
-        GLPK.glp_add_cols(lp, data.size());
-        for(int i = 0; i < data.size(); i++) {
-        	GLPK.glp_set_col_name(lp, i + 1, "x" + data.get(i).getId());
-            GLPK.glp_set_col_kind(lp, i + 1, GLPKConstants.GLP_IV);
-            GLPK.glp_set_col_bnds(lp, i + 1, GLPKConstants.GLP_DB, 0, maxPos);
-            
-            // Thetas to the objective function
-            GLPK.glp_set_obj_coef(lp, i + 1, -data.get(i).theta()); 
-        }
+		builder.setColumns(0, maxPos, false);
+		
+		// Thetas to the objective function
+		builder.setObjective("maxTheta", true, negate(theta));
 	}
 	
 	/**
@@ -99,27 +115,10 @@ public class Optimiser {
 	 * @param Maximum quantity allowed for one contract
 	 */
 	public void objMinimiseGamma(int maxPos) {
-        // Create problem
-        lp = GLPK.glp_create_prob();
-        //logger.log("Problem created");
-        GLPK.glp_set_prob_name(lp, "minGamma");
-
-        // Define objective
-        GLPK.glp_set_obj_name(lp, "z");
-        GLPK.glp_set_obj_dir(lp, GLPKConstants.GLP_MIN);
-        GLPK.glp_set_obj_coef(lp, 0, 1.);
-      
-        // Define columns one for every portfolio entry
-        // Add objective function coefficients
-        GLPK.glp_add_cols(lp, data.size());
-        for(int i = 0; i < data.size(); i++) {
-        	GLPK.glp_set_col_name(lp, i + 1, "x" + data.get(i).getId());
-            GLPK.glp_set_col_kind(lp, i + 1, GLPKConstants.GLP_IV);
-            GLPK.glp_set_col_bnds(lp, i + 1, GLPKConstants.GLP_DB, 0, maxPos);
-            
-            // Gammas to the objective function
-            GLPK.glp_set_obj_coef(lp, i + 1, data.get(i).gamma());
-        }
+		builder.setColumns(0, maxPos, false);
+		
+		// Gammas to the objective function
+		builder.setObjective("minGamma", false, gamma);
 	}
 	
 	/**
@@ -128,23 +127,7 @@ public class Optimiser {
 	 * @param limit
 	 */
 	protected void constrDelta(Double limit) {
-		// Create rows
-        GLPK.glp_add_rows(lp, 2);
-        row++;
-        
-        // Bounded delta
-        GLPK.glp_set_row_name(lp, row, "delta_up");
-        GLPK.glp_set_row_name(lp, row + 1, "delta_dn");
-        GLPK.glp_set_row_bnds(lp, row, GLPKConstants.GLP_UP, .0, limit);
-        GLPK.glp_set_row_bnds(lp, row + 1, GLPKConstants.GLP_LO, -limit, .0);
-        for (int i = 1; i <= data.size(); i++) {
-        	GLPK.intArray_setitem(ind, i, i);
-        	GLPK.doubleArray_setitem(val, i, -data.get(i - 1).delta());
-        }           
-        GLPK.glp_set_mat_row(lp, row, data.size(), ind, val);
-        GLPK.glp_set_mat_row(lp, row + 1, data.size(), ind, val);
-        
-        row++;
+		builder.addRow("delta", -limit, limit, negate(delta));
 	}
 	
 	/**
@@ -153,18 +136,7 @@ public class Optimiser {
 	 * @param limit
 	 */
 	protected void constrGamma(double limit) {
-		// Create rows
-        GLPK.glp_add_rows(lp, 1);
-        row++;
-        
-        // Bounded gamma
-        GLPK.glp_set_row_name(lp, row, "gamma");
-        GLPK.glp_set_row_bnds(lp, row, GLPKConstants.GLP_UP, 0.0 , limit);
-        for (int i = 1; i <= data.size(); i++) {
-        	GLPK.intArray_setitem(ind, i, i);
-        	GLPK.doubleArray_setitem(val, i, data.get(i - 1).gamma());
-        }
-        GLPK.glp_set_mat_row(lp, row, data.size(), ind, val);
+		builder.addRow("gamma", Double.NEGATIVE_INFINITY, limit, gamma);
 	}
 	
 	/**
@@ -172,18 +144,7 @@ public class Optimiser {
 	 * @param limit
 	 */
 	protected void constrTheta(double limit) {
-		// Create rows
-        GLPK.glp_add_rows(lp, 1);
-        row++;
-        
-        // Bounded theta
-        GLPK.glp_set_row_name(lp, row, "theta");
-        GLPK.glp_set_row_bnds(lp, row, GLPKConstants.GLP_LO, limit * 365, 0.0);
-        for (int i = 1; i <= data.size(); i++) {
-        	GLPK.intArray_setitem(ind, i, i);
-        	GLPK.doubleArray_setitem(val, i, -data.get(i - 1).theta());
-        }
-        GLPK.glp_set_mat_row(lp, row, data.size(), ind, val);
+		builder.addRow("theta", limit * 365, Double.POSITIVE_INFINITY, negate(theta));
 	}
 	
 	/**
@@ -192,17 +153,18 @@ public class Optimiser {
 	 * @param maxSize
 	 */
 	protected void constrMaxPortfolio(int maxSize) {
-		// Create rows
-        GLPK.glp_add_rows(lp, 1);
-        
-        // Max positions open
-        GLPK.glp_set_row_name(lp, row, "open positions");
-        GLPK.glp_set_row_bnds(lp, row, GLPKConstants.GLP_UP, 0, maxSize);
-        for (int i = 1; i <= data.size(); i++) {
-        	GLPK.intArray_setitem(ind, i, i);
-        	GLPK.doubleArray_setitem(val, i, 1.0);
-        }           
-        GLPK.glp_set_mat_row(lp, row, data.size(), ind, val);
+		builder.addRow("open positions", Double.NEGATIVE_INFINITY, maxSize, 1.0);
+	}
+	
+	/**
+	 * Returns negated copy of an array
+	 */
+	private static double[] negate(double[] a) {
+		double[] out = new double[a.length];
+		
+		for (int i = 0; i < a.length; i++)
+			out[i] = -a[i];
+		return out;
 	}
 	
 	/**
@@ -211,66 +173,66 @@ public class Optimiser {
 	 * @param mip boolean MIP flag (solves LP relaxation if false)
 	 */
 	public void solve(Boolean mip) {
-        // Free memory
-        GLPK.delete_intArray(ind);
-        GLPK.delete_doubleArray(val);
-        
-        if (!mip) {
-            // Solve model as LP
-            glp_smcp parm = new glp_smcp();
-            parm.setMsg_lev(GLPKConstants.GLP_MSG_ALL);
-            GLPK.glp_init_smcp(parm);
-            ret = GLPK.glp_simplex(lp, parm);
-        } else {
-            // Solve model as MIP
-            glp_iocp parm = new glp_iocp();
-            GLPK.glp_init_iocp(parm);
-            parm.setMsg_lev(GLPKConstants.GLP_MSG_ALL);
-            parm.setPresolve(GLPKConstants.GLP_ON);
-            GLPK.glp_write_lp(lp, null, "yi.lp");
-            ret = GLPK.glp_intopt(lp, parm);
-        }
+		solve(mip, 0, 0.0, null);
 	}
 	
 	/**
-	 * Outputs LP solution
+	 * Solves the problem within a time budget, see SolverBackend. The
+	 * best solution found by the deadline is kept together with its gap.
 	 * 
-	 * @param lp Solved LP problem
+	 * @param mip boolean MIP flag (solves LP relaxation if false)
+	 * @param timeLimit wall clock budget in milliseconds, 0 for none
+	 * @param mipGap relative MIP gap to stop at
+	 * @param listener receives improving integer solutions, may be null
+	 */
+	public void solve(Boolean mip, long timeLimit, double mipGap, SolverBackend.IncumbentListener listener) {
+		builder.setColumns(builder.lb, builder.ub, mip);
+		solution = backend.solve(builder, timeLimit, mipGap, listener);
+		logger.verbose(solution.toString());
+	}
+	
+	/**
+	 * Outputs LP solution
 	 */
 	public void writeLpSolution() {
-        int i;
-        int n;
-        String name;
-        double val;
-
-        logger.log("LP solution output");
-        
-        name = GLPK.glp_get_obj_name(lp);
-        val = GLPK.glp_get_obj_val(lp);
-        logger.log(name + " = " + val);
-
-        n = GLPK.glp_get_num_cols(lp);
-        for (i = 1; i <= n; i++) {
-            name = GLPK.glp_get_col_name(lp, i);
-            val = GLPK.glp_get_col_prim(lp, i);
-            logger.log(name + " = " + val);
-        }
-    }
+		logger.log("LP solution output");
+		logger.log(builder.getName() + " = " + solution.getValue());
+		
+		for (int i = 1; i <= builder.size(); i++) {
+			int k = builder.getOption(i);
+			logger.log("x" + data.get(k).getId() + " = " + solution.getPosition(k));
+		}
+	}
 	
 	/**
-	 * Returns solution data
+	 * Returns solution data, positions are rounded for an integer problem
+	 * and the LP values otherwise
 	 * @return ArrayList consisting optimal option portfolio
 	 */
 	public ArrayList<Option> returnSolution() {
-		int n;
-		double val;
+		// Pruned options are not traded
+		for (int i = 0; i < data.size(); i++) {
+			double x = solution.getPosition(i);
+			data.get(i).setPos(builder.integer ? (double) Math.round(x) : x);
+		}
 		
-		val = GLPK.glp_get_obj_val(lp);
-        n = GLPK.glp_get_num_cols(lp);
-        for (int i = 1; i <= n; i++) {       	
-        	data.get(i - 1).setPos(-val);
-        }
-        
 		return(data);
 	}
+	
+	/**
+	 * Returns the last solution
+	 * 
+	 * @return solution, null before solve()
+	 */
+	public Solution getSolution() {
+		return solution;
+	}
+	
+	public SolverBackend getBackend() {
+		return backend;
+	}
+	
+	public void setBackend(SolverBackend backend) {
+		this.backend = backend;
+	}
 }
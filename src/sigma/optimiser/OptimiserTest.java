@@ -0,0 +1,74 @@
+package sigma.optimiser;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import sigma.quant.OptSide;
+import sigma.quant.Option;
+
+public class OptimiserTest {
+
+	private static Optimiser problem(ArrayList<Option> options) {
+		double[] delta = new double[options.size()];
+		double[] gamma = new double[options.size()];
+		double[] theta = new double[options.size()];
+		Optimiser opt = new Optimiser(new JavaBackend());
+
+		for (int i = 0; i < options.size(); i++) {
+			delta[i] = options.get(i).delta();
+			gamma[i] = options.get(i).gamma();
+			theta[i] = options.get(i).theta();
+		}
+		opt.loadData(options, delta, gamma, theta);
+		opt.objMaximiseTheta(5);
+		opt.constrDelta(0.5);
+		opt.constrGamma(0.2);
+		opt.constrMaxPortfolio(20);
+		return opt;
+	}
+
+	private static ArrayList<Option> options() {
+		ArrayList<Option> l = new ArrayList<>();
+
+		for (double k = 45.0; k <= 65.0; k += 2.5)
+			for (OptSide side : OptSide.values()) {
+				Option o = new Option(55.0, k, 0.2, 0.35, 0.01, 0.0, side);
+				o.setPrice(1.0);
+				l.add(o);
+			}
+		return l;
+	}
+
+	@Test
+	public void testRelaxationNotRounded() {
+		ArrayList<Option> l = options();
+		Optimiser opt = problem(l);
+		boolean fractional = false;
+
+		opt.solve(false);
+		assertEquals(Solution.Status.OPTIMAL, opt.getSolution().getStatus());
+		opt.returnSolution();
+		for (int i = 0; i < l.size(); i++) {
+			double x = opt.getSolution().getPosition(i);
+			assertEquals(x, l.get(i).getPos(), 0.0);
+			fractional |= x != Math.rint(x);
+		}
+		assertTrue(fractional);
+	}
+
+	@Test
+	public void testIntegerRounded() {
+		ArrayList<Option> l = options();
+		Optimiser opt = problem(l);
+
+		opt.solve(true);
+		opt.returnSolution();
+		for (int i = 0; i < l.size(); i++) {
+			assertEquals(Math.rint(l.get(i).getPos()), l.get(i).getPos(), 0.0);
+			assertEquals(opt.getSolution().getPosition(i), l.get(i).getPos(), 1e-6);
+		}
+	}
+}
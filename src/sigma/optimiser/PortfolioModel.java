@@ -0,0 +1,473 @@
+package sigma.optimiser;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.gnu.glpk.GLPK;
+import org.gnu.glpk.GLPKConstants;
+import org.gnu.glpk.SWIGTYPE_p_double;
+import org.gnu.glpk.SWIGTYPE_p_int;
+import org.gnu.glpk.glp_iocp;
+import org.gnu.glpk.glp_prob;
+import org.gnu.glpk.glp_smcp;
+
+import sigma.quant.Option;
+
+/**
+ * Long lived portfolio optimisation model for intraday re-optimisation.
+ *
+ * The GLPK problem is built once with one integer column per option and a
+ * fixed set of rows (theta, delta, gamma and open positions). Every cycle
+ * only the greeks and limits that have changed are written into the
+ * problem and it is re-solved from the basis of the previous cycle:
+ *
+ * - the LP relaxation is solved by dual simplex with presolve off, so the
+ *   previous optimal basis is the starting point. The basis stays dual
+ *   feasible when only the limits move and primal feasible when only the
+ *   objective moves, in both cases a few pivots restore optimality.
+ * - the MIP is then solved by branch and bound with presolve off on top of
+ *   that relaxation. The previous integer solution is passed in as the
+ *   first incumbent whenever it is still feasible for the new greeks and
+ *   limits.
+ *
+ * If the warm basis turns out singular the model falls back to an
+ * advanced basis and solves again.
+ *
+ * All GLPK calls are made under the lock of GlpkBackend, so models and
+ * backend solves in different threads are serialised.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class PortfolioModel {
+
+	// Row indices
+	static final int ROW_THETA = 1;
+	static final int ROW_DELTA = 2;
+	static final int ROW_GAMMA = 3;
+	static final int ROW_OPEN = 4;
+	static final int ROWS = 4;
+
+	// Tolerance for the feasibility check of the previous incumbent
+	static final double TOLERANCE = 1e-7;
+
+	private final glp_prob lp;
+	private final int size;
+	private final Objective objective;
+	private final boolean mip;
+
+	private final glp_smcp smcp;
+	private final glp_iocp iocp;
+
+	// Native row buffers, 1-based
+	private final SWIGTYPE_p_int ind;
+	private final SWIGTYPE_p_double val;
+
+	private final Rows rows;
+	private final double maxPos;
+
+	// Last solution
+	private final double[] x;
+	private double value;
+	private int ret;
+	private boolean optimal;
+	private boolean incumbent;
+	private double gap;
+
+	/**
+	 * Builds the problem structure, all coefficients are zero and all
+	 * limits free until update() and the limit setters are called
+	 *
+	 * @param size number of options
+	 * @param objective objective
+	 * @param maxPos maximum quantity of one contract
+	 * @param mip solve for integer positions, the LP relaxation otherwise
+	 */
+	public PortfolioModel(int size, Objective objective, int maxPos, boolean mip) {
+		this.size = size;
+		this.objective = objective;
+		this.mip = mip;
+		this.maxPos = maxPos;
+
+		rows = new Rows(size);
+		x = new double[size];
+
+		synchronized (GlpkBackend.LOCK) {
+			ind = GLPK.new_intArray(size + 1);
+			val = GLPK.new_doubleArray(size + 1);
+			for (int i = 1; i <= size; i++)
+				GLPK.intArray_setitem(ind, i, i);
+
+			lp = GLPK.glp_create_prob();
+			GLPK.glp_set_prob_name(lp, objective == Objective.MAX_THETA ? "maxTheta" : "minGamma");
+			GLPK.glp_set_obj_name(lp, "z");
+			GLPK.glp_set_obj_dir(lp, objective == Objective.MAX_THETA ? GLPKConstants.GLP_MAX : GLPKConstants.GLP_MIN);
+
+			GLPK.glp_add_cols(lp, size);
+			for (int i = 1; i <= size; i++) {
+				GLPK.glp_set_col_name(lp, i, "x" + (i - 1));
+				GLPK.glp_set_col_kind(lp, i, mip ? GLPKConstants.GLP_IV : GLPKConstants.GLP_CV);
+				GLPK.glp_set_col_bnds(lp, i, GLPKConstants.GLP_DB, 0, maxPos);
+			}
+
+			GLPK.glp_add_rows(lp, ROWS);
+			GLPK.glp_set_row_name(lp, ROW_THETA, "theta");
+			GLPK.glp_set_row_name(lp, ROW_DELTA, "delta");
+			GLPK.glp_set_row_name(lp, ROW_GAMMA, "gamma");
+			GLPK.glp_set_row_name(lp, ROW_OPEN, "open_pos");
+			for (int r = 1; r <= ROWS; r++)
+				GLPK.glp_set_row_bnds(lp, r, GLPKConstants.GLP_FR, 0.0, 0.0);
+
+			// Open positions row never changes
+			setRow(ROW_OPEN);
+
+			smcp = new glp_smcp();
+			GLPK.glp_init_smcp(smcp);
+			smcp.setMsg_lev(GLPKConstants.GLP_MSG_ERR);
+			smcp.setMeth(GLPKConstants.GLP_DUALP);
+			smcp.setPresolve(GLPKConstants.GLP_OFF);
+
+			iocp = new glp_iocp();
+			GLPK.glp_init_iocp(iocp);
+			iocp.setMsg_lev(GLPKConstants.GLP_MSG_ERR);
+			iocp.setPresolve(GLPKConstants.GLP_OFF);
+		}
+	}
+
+	/**
+	 * Writes new greeks into the problem. Objective coefficients and
+	 * constraint rows are only touched where they differ from the previous
+	 * cycle.
+	 *
+	 * @param delta delta per option
+	 * @param gamma gamma per option
+	 * @param theta theta per option
+	 */
+	public void update(double[] delta, double[] gamma, double[] theta) {
+		synchronized (GlpkBackend.LOCK) {
+			// Same sign convention as OptimisePortfolio.maxTheta() and minGamma()
+			for (int i = 0; i < size; i++)
+				if (rows.objective(i, objective == Objective.MAX_THETA ? -theta[i] : gamma[i]))
+					GLPK.glp_set_obj_coef(lp, i + 1, rows.obj[i]);
+
+			if (rows.load(ROW_THETA, theta, -1.0))
+				setRow(ROW_THETA);
+			if (rows.load(ROW_DELTA, delta, -1.0))
+				setRow(ROW_DELTA);
+			if (rows.load(ROW_GAMMA, gamma, 1.0))
+				setRow(ROW_GAMMA);
+		}
+	}
+
+	/**
+	 * Writes a row from the coefficient copy into the problem, caller
+	 * must hold the lock
+	 */
+	private void setRow(int row) {
+		double[] c = rows.coef[row - 1];
+
+		for (int i = 1; i <= size; i++)
+			GLPK.doubleArray_setitem(val, i, c[i - 1]);
+		GLPK.glp_set_mat_row(lp, row, size, ind, val);
+	}
+
+	/**
+	 * Sets row bounds if they have changed, null bounds are free
+	 */
+	private void setBounds(int row, Double low, Double high) {
+		int type;
+
+		if (!rows.bounds(row, low, high))
+			return;
+
+		if (low == null && high == null)
+			type = GLPKConstants.GLP_FR;
+		else if (low == null)
+			type = GLPKConstants.GLP_UP;
+		else if (high == null)
+			type = GLPKConstants.GLP_LO;
+		else
+			type = GLPKConstants.GLP_DB;
+		synchronized (GlpkBackend.LOCK) {
+			GLPK.glp_set_row_bnds(lp, row, type, low == null ? 0.0 : low, high == null ? 0.0 : high);
+		}
+	}
+
+	/**
+	 * Absolute limit on cumulative delta
+	 *
+	 * @param limit limit, null to drop the constraint
+	 */
+	public void setDeltaLimit(Double limit) {
+		setBounds(ROW_DELTA, limit == null ? null : -limit, limit);
+	}
+
+	/**
+	 * Upper bound on cumulative gamma
+	 *
+	 * @param limit limit, null to drop the constraint
+	 */
+	public void setGammaLimit(Double limit) {
+		setBounds(ROW_GAMMA, null, limit);
+	}
+
+	/**
+	 * Minimum level of theta, same scaling as OptimisePortfolio.minGamma()
+	 *
+	 * @param limit limit, null to drop the constraint
+	 */
+	public void setThetaLimit(Double limit) {
+		setBounds(ROW_THETA, limit == null ? null : limit * 365, null);
+	}
+
+	/**
+	 * Maximum number of contracts open
+	 *
+	 * @param limit limit, null to drop the constraint
+	 */
+	public void setMaxOpen(Integer limit) {
+		setBounds(ROW_OPEN, null, limit == null ? null : limit.doubleValue());
+	}
+
+	/**
+	 * Time budget of the branch and bound, the best integer solution found
+	 * by then is kept
+	 *
+	 * @param ms milliseconds, 0 for none
+	 */
+	public void setTimeLimit(int ms) {
+		iocp.setTm_lim(ms > 0 ? ms : Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Relative gap at which the branch and bound stops
+	 *
+	 * @param gap relative gap, 0 to prove optimality
+	 */
+	public void setMipGap(double gap) {
+		iocp.setMip_gap(gap);
+	}
+
+	/**
+	 * Re-solves the model from the previous basis and incumbent
+	 *
+	 * @return true if a solution was found, see isOptimal() and getGap()
+	 */
+	public boolean solve() {
+		synchronized (GlpkBackend.LOCK) {
+			return solveLocked();
+		}
+	}
+
+	/**
+	 * Body of solve(), caller must hold the lock
+	 */
+	private boolean solveLocked() {
+		double bound;
+		int status;
+
+		optimal = false;
+
+		ret = GLPK.glp_simplex(lp, smcp);
+		if (ret == GLPKConstants.GLP_EBADB || ret == GLPKConstants.GLP_ESING || ret == GLPKConstants.GLP_ECOND) {
+			GLPK.glp_adv_basis(lp, 0);
+			ret = GLPK.glp_simplex(lp, smcp);
+		}
+		if (ret != 0 || GLPK.glp_get_status(lp) != GLPKConstants.GLP_OPT) {
+			incumbent = false;
+			return false;
+		}
+
+		if (!mip) {
+			value = GLPK.glp_get_obj_val(lp);
+			for (int i = 0; i < size; i++)
+				x[i] = GLPK.glp_get_col_prim(lp, i + 1);
+			optimal = true;
+			gap = 0.0;
+			return true;
+		}
+
+		// Relaxation bounds the integer optimum
+		bound = GLPK.glp_get_obj_val(lp);
+
+		iocp.setUse_sol(incumbent && rows.feasible(x, maxPos) ? GLPKConstants.GLP_ON : GLPKConstants.GLP_OFF);
+		ret = GLPK.glp_intopt(lp, iocp);
+		status = GLPK.glp_mip_status(lp);
+		if (status != GLPKConstants.GLP_OPT && status != GLPKConstants.GLP_FEAS) {
+			incumbent = false;
+			return false;
+		}
+
+		// Stopped by the time limit or the gap with an integer solution
+		value = GLPK.glp_mip_obj_val(lp);
+		for (int i = 0; i < size; i++)
+			x[i] = GLPK.glp_mip_col_val(lp, i + 1);
+		incumbent = true;
+		optimal = ret == 0 && status == GLPKConstants.GLP_OPT;
+		gap = optimal ? 0.0 : Solution.gap(value, bound);
+		return true;
+	}
+
+	/**
+	 * Copies the last solution into option positions, integer solutions
+	 * are rounded off the solver tolerance
+	 *
+	 * @param options options in column order
+	 */
+	public void apply(List<Option> options) {
+		for (int i = 0; i < size; i++)
+			options.get(i).setPos(mip ? (double) Math.round(x[i]) : x[i]);
+	}
+
+	/**
+	 * Frees the problem and the native buffers
+	 */
+	public void delete() {
+		synchronized (GlpkBackend.LOCK) {
+			GLPK.delete_intArray(ind);
+			GLPK.delete_doubleArray(val);
+			GLPK.glp_delete_prob(lp);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isOptimal() {
+		return optimal;
+	}
+
+	/**
+	 * Returns GLPK return code of the last solver call
+	 *
+	 * @return return code, 0 on success
+	 */
+	public int getReturnCode() {
+		return ret;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns relative gap of the last solution to the LP relaxation
+	 * bound, zero if proven optimal
+	 *
+	 * @return gap
+	 */
+	public double getGap() {
+		return gap;
+	}
+
+	/**
+	 * Returns last solution per option, owned by the model
+	 *
+	 * @return positions
+	 */
+	public double[] getSolution() {
+		return x;
+	}
+
+	/**
+	 * Java copy of the objective, the constraint coefficients and the row
+	 * bounds in the problem. Changes are detected against the copy, so
+	 * the problem is never read back. Does not call GLPK.
+	 */
+	static class Rows {
+		final double[] obj;
+
+		// Row major by ROW_* - 1
+		final double[][] coef;
+		final double[] lo;
+		final double[] hi;
+
+		/**
+		 * Zero coefficients and free rows, the open positions row is all ones
+		 *
+		 * @param size number of columns
+		 */
+		Rows(int size) {
+			obj = new double[size];
+			coef = new double[ROWS][size];
+			lo = new double[ROWS];
+			hi = new double[ROWS];
+
+			Arrays.fill(lo, Double.NEGATIVE_INFINITY);
+			Arrays.fill(hi, Double.POSITIVE_INFINITY);
+			Arrays.fill(coef[ROW_OPEN - 1], 1.0);
+		}
+
+		/**
+		 * Sets an objective coefficient
+		 *
+		 * @return true if it changed
+		 */
+		boolean objective(int i, double c) {
+			if (obj[i] == c)
+				return false;
+			obj[i] = c;
+			return true;
+		}
+
+		/**
+		 * Copies scaled greeks into a row
+		 *
+		 * @return true if anything changed
+		 */
+		boolean load(int row, double[] greek, double scale) {
+			double[] c = coef[row - 1];
+			boolean changed = false;
+
+			for (int i = 0; i < c.length; i++) {
+				double v = scale * greek[i];
+				if (c[i] != v) {
+					c[i] = v;
+					changed = true;
+				}
+			}
+			return changed;
+		}
+
+		/**
+		 * Sets row bounds, null bounds are infinite
+		 *
+		 * @return true if they changed
+		 */
+		boolean bounds(int row, Double low, Double high) {
+			double l = low == null ? Double.NEGATIVE_INFINITY : low;
+			double h = high == null ? Double.POSITIVE_INFINITY : high;
+
+			if (l == lo[row - 1] && h == hi[row - 1])
+				return false;
+			lo[row - 1] = l;
+			hi[row - 1] = h;
+			return true;
+		}
+
+		/**
+		 * Checks a solution against the coefficients, the row bounds and
+		 * the column bounds
+		 *
+		 * @param x value per column
+		 * @param maxPos column upper bound
+		 * @return true if feasible within TOLERANCE
+		 */
+		boolean feasible(double[] x, double maxPos) {
+			for (int r = 0; r < ROWS; r++) {
+				double a = 0.0;
+
+				for (int i = 0; i < x.length; i++)
+					a += coef[r][i] * x[i];
+				if (a < lo[r] - TOLERANCE || a > hi[r] + TOLERANCE)
+					return false;
+			}
+			for (int i = 0; i < x.length; i++)
+				if (x[i] < 0 || x[i] > maxPos)
+					return false;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package sigma.optimiser;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gnu.glpk.GLPK;
+import org.junit.Test;
+
+import sigma.quant.OptSide;
+import sigma.quant.Option;
+
+/**
+ * Tests of the Java side of PortfolioModel, the GLPK problem itself needs
+ * the native library and is skipped without it
+ */
+public class PortfolioModelTest {
+
+	private static final double[] DELTA = {0.5, -0.4, 0.3};
+	private static final double[] GAMMA = {0.1, 0.3, 0.08};
+
+	private static boolean glpk() {
+		try {
+			GLPK.glp_version();
+			return true;
+		} catch (UnsatisfiedLinkError | NoClassDefFoundError | ExceptionInInitializerError e) {
+			return false;
+		}
+	}
+
+	private static List<Option> options(int n) {
+		List<Option> l = new ArrayList<>();
+
+		for (int i = 0; i < n; i++)
+			l.add(new Option(55.0, 50.0 + i, 0.25, 0.3, 0.02, 0.0, OptSide.CALL));
+		return l;
+	}
+
+	@Test
+	public void testChangeDetection() {
+		PortfolioModel.Rows rows = new PortfolioModel.Rows(3);
+		double[] theta = {-0.01, -0.02, -0.03};
+
+		// Theta is stored negated, the open positions row is fixed
+		assertTrue(rows.load(PortfolioModel.ROW_THETA, theta, -1.0));
+		assertArrayEquals(new double[] {0.01, 0.02, 0.03}, rows.coef[PortfolioModel.ROW_THETA - 1], 0.0);
+		assertArrayEquals(new double[] {1.0, 1.0, 1.0}, rows.coef[PortfolioModel.ROW_OPEN - 1], 0.0);
+
+		assertFalse(rows.load(PortfolioModel.ROW_THETA, theta.clone(), -1.0));
+		theta[1] = -0.025;
+		assertTrue(rows.load(PortfolioModel.ROW_THETA, theta, -1.0));
+		assertEquals(0.025, rows.coef[PortfolioModel.ROW_THETA - 1][1], 0.0);
+
+		assertFalse(rows.objective(0, 0.0));
+		assertTrue(rows.objective(0, 0.5));
+		assertFalse(rows.objective(0, 0.5));
+	}
+
+	@Test
+	public void testBounds() {
+		PortfolioModel.Rows rows = new PortfolioModel.Rows(2);
+
+		// Rows start free
+		assertFalse(rows.bounds(PortfolioModel.ROW_DELTA, null, null));
+		assertTrue(rows.bounds(PortfolioModel.ROW_DELTA, -0.9, 0.9));
+		assertFalse(rows.bounds(PortfolioModel.ROW_DELTA, -0.9, 0.9));
+		assertTrue(rows.bounds(PortfolioModel.ROW_DELTA, null, 0.9));
+		assertEquals(Double.NEGATIVE_INFINITY, rows.lo[PortfolioModel.ROW_DELTA - 1], 0.0);
+		assertTrue(rows.bounds(PortfolioModel.ROW_DELTA, null, null));
+		assertEquals(Double.POSITIVE_INFINITY, rows.hi[PortfolioModel.ROW_DELTA - 1], 0.0);
+	}
+
+	@Test
+	public void testFeasible() {
+		PortfolioModel.Rows rows = new PortfolioModel.Rows(3);
+		double[] x = {2.0, 0.0, 1.0};
+
+		rows.load(PortfolioModel.ROW_DELTA, new double[] {0.5, -0.4, -0.3}, -1.0);
+		rows.bounds(PortfolioModel.ROW_DELTA, -0.9, 0.9);
+		rows.bounds(PortfolioModel.ROW_OPEN, null, 3.0);
+		assertTrue(rows.feasible(x, 5));
+
+		// Delta row is -0.7, within the tolerance of the limit and beyond it
+		rows.bounds(PortfolioModel.ROW_DELTA, -0.7 + 0.5 * PortfolioModel.TOLERANCE, 0.7);
+		assertTrue(rows.feasible(x, 5));
+		rows.bounds(PortfolioModel.ROW_DELTA, -0.7 + 2 * PortfolioModel.TOLERANCE, 0.7);
+		assertFalse(rows.feasible(x, 5));
+		rows.bounds(PortfolioModel.ROW_DELTA, -0.9, 0.9);
+
+		// Open positions and column bounds
+		rows.bounds(PortfolioModel.ROW_OPEN, null, 2.0);
+		assertFalse(rows.feasible(x, 5));
+		rows.bounds(PortfolioModel.ROW_OPEN, null, null);
+		assertFalse(rows.feasible(x, 1));
+	}
+
+	@Test
+	public void testResolveInteger() {
+		assumeTrue(glpk());
+		PortfolioModel m = new PortfolioModel(3, Objective.MIN_GAMMA, 5, true);
+		List<Option> l = options(3);
+
+		try {
+			m.setThetaLimit(0.035 / 365);
+			m.update(DELTA, GAMMA, new double[] {-0.01, -0.02, -0.005});
+			assertTrue(m.solve());
+			assertEquals(0.38, m.getValue(), 1e-9);
+			m.apply(l);
+			assertEquals(3.0, l.get(0).getPos(), 0.0);
+			assertEquals(0.0, l.get(1).getPos(), 0.0);
+			assertEquals(1.0, l.get(2).getPos(), 0.0);
+
+			// Cheaper theta on the first option moves the solution
+			m.update(DELTA, GAMMA, new double[] {-0.005, -0.02, -0.005});
+			assertTrue(m.solve());
+			assertTrue(m.isOptimal());
+			assertEquals(0.54, m.getValue(), 1e-9);
+			m.apply(l);
+			assertEquals(0.0, l.get(0).getPos(), 0.0);
+			assertEquals(1.0, l.get(1).getPos(), 0.0);
+			assertEquals(3.0, l.get(2).getPos(), 0.0);
+		} finally {
+			m.delete();
+		}
+	}
+
+	@Test
+	public void testRelaxationNotRounded() {
+		assumeTrue(glpk());
+		PortfolioModel m = new PortfolioModel(3, Objective.MIN_GAMMA, 5, false);
+		List<Option> l = options(3);
+
+		try {
+			m.setThetaLimit(0.035 / 365);
+			m.update(DELTA, GAMMA, new double[] {-0.01, -0.02, -0.005});
+			assertTrue(m.solve());
+			assertEquals(0.35, m.getValue(), 1e-9);
+			m.apply(l);
+			assertEquals(3.5, l.get(0).getPos(), 1e-9);
+		} finally {
+			m.delete();
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package sigma.optimiser;
+
+/**
+ * Solution of a ModelBuilder problem, the same from every SolverBackend.
+ * Positions are per option of the model, options pruned from the model
+ * and unsolved problems have zero position.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class Solution {
+
+	public enum Status {
+		OPTIMAL,
+		FEASIBLE,
+		INFEASIBLE,
+		UNBOUNDED,
+		FAILED
+	}
+
+	private final Status status;
+	private final double value;
+	private final double gap;
+	private final double[] positions;
+	private final String backend;
+	private final long time;
+
+	/**
+	 * Solution from column values
+	 *
+	 * @param model solved model
+	 * @param status solver status
+	 * @param value objective value, NaN without a solution
+	 * @param columns value per column, null without a solution
+	 * @param backend backend name
+	 * @param time solve time in nanoseconds
+	 */
+	public Solution(ModelBuilder model, Status status, double value, double[] columns, String backend, long time) {
+		this(model, status, value, status == Status.OPTIMAL ? 0.0 : Double.NaN, columns, backend, time);
+	}
+
+	/**
+	 * Solution from column values with a known MIP gap
+	 *
+	 * @param model solved model
+	 * @param status solver status
+	 * @param value objective value, NaN without a solution
+	 * @param gap relative gap to the best bound, NaN if unknown
+	 * @param columns value per column, null without a solution
+	 * @param backend backend name
+	 * @param time solve time in nanoseconds
+	 */
+	public Solution(ModelBuilder model, Status status, double value, double gap, double[] columns, String backend, long time) {
+		this.status = status;
+		this.value = value;
+		this.gap = gap;
+		this.backend = backend;
+		this.time = time;
+
+		positions = new double[model.getOptions()];
+		if (columns != null)
+			for (int j = 1; j <= model.size(); j++)
+				positions[model.getOption(j)] = columns[j - 1];
+	}
+
+	/**
+	 * True if the solution is proven optimal
+	 *
+	 * @return optimality
+	 */
+	public boolean isOptimal() {
+		return status == Status.OPTIMAL;
+	}
+
+	/**
+	 * True if there is a feasible solution, optimal or not
+	 *
+	 * @return feasibility
+	 */
+	public boolean hasSolution() {
+		return status == Status.OPTIMAL || status == Status.FEASIBLE;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns relative gap |value - bound| / |value| between the objective
+	 * and the best bound, zero for proven optimal solutions
+	 *
+	 * @return gap, NaN if unknown
+	 */
+	public double getGap() {
+		return gap;
+	}
+
+	/**
+	 * Relative MIP gap in GLPK's definition
+	 *
+	 * @param value incumbent objective
+	 * @param bound best bound
+	 * @return gap
+	 */
+	static double gap(double value, double bound) {
+		return Math.abs(value - bound) / (Math.abs(value) + 2.220446049250313e-16);
+	}
+
+	/**
+	 * Returns position of an option
+	 *
+	 * @param i option index
+	 * @return position
+	 */
+	public double getPosition(int i) {
+		return positions[i];
+	}
+
+	/**
+	 * Returns positions per option, owned by the solution
+	 *
+	 * @return positions
+	 */
+	public double[] getPositions() {
+		return positions;
+	}
+
+	public String getBackend() {
+		return backend;
+	}
+
+	/**
+	 * Returns solve time
+	 *
+	 * @return nanoseconds
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	@Override
+	public String toString() {
+		return "Solution [status=" + status + ", value=" + value + ", gap=" + gap + ", backend=" + backend +
+			   ", time=" + String.format("%.3f", time / 1e6) + " ms]";
+	}
+}
@@ -0,0 +1,78 @@
+package sigma.optimiser;
+
+/**
+ * Solver a ModelBuilder problem is handed to. Backends are stateless
+ * between solves, a backend that can run several solves at once says so
+ * with isConcurrent().
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public interface SolverBackend {
+
+	/**
+	 * Receives improving integer solutions during a MIP solve, called on
+	 * the solving thread
+	 */
+	interface IncumbentListener {
+		void incumbent(Solution solution);
+	}
+
+	/**
+	 * Solves the problem to optimality
+	 *
+	 * @param model assembled problem, not modified
+	 * @return solution, never null
+	 */
+	default Solution solve(ModelBuilder model) {
+		return solve(model, 0, 0.0, null);
+	}
+
+	/**
+	 * Solves the problem within a time budget. A MIP solve stops at the
+	 * deadline or once the relative gap between the incumbent and the best
+	 * bound is within mipGap, and returns the best integer solution found
+	 * with status FEASIBLE and its gap.
+	 *
+	 * @param model assembled problem, not modified
+	 * @param timeLimit wall clock budget in milliseconds, 0 for none
+	 * @param mipGap relative MIP gap to stop at, 0 to prove optimality
+	 * @param listener incumbent listener, may be null
+	 * @return solution, never null
+	 */
+	Solution solve(ModelBuilder model, long timeLimit, double mipGap, IncumbentListener listener);
+
+	/**
+	 * Returns backend name, as accepted by forName()
+	 *
+	 * @return name
+	 */
+	String getName();
+
+	/**
+	 * Tells if solves from several threads run in parallel
+	 *
+	 * @return true if the backend solves concurrently, false if solves are serialised
+	 */
+	default boolean isConcurrent() {
+		return false;
+	}
+
+	/**
+	 * Creates a backend by name
+	 *
+	 * @param name "glpk" or "java"
+	 * @return backend
+	 */
+	static SolverBackend forName(String name) {
+		switch (name.toLowerCase()) {
+		case GlpkBackend.NAME:
+			return new GlpkBackend();
+		case JavaBackend.NAME:
+			return new JavaBackend();
+		default:
+			throw new IllegalArgumentException("Unknown solver backend " + name);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package sigma.quant;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Portfolio sensitivities by adjoint (reverse mode) differentiation.
+ *
+ * The position weighted value of the chain is recorded on a Tape and one
+ * backward sweep gives its derivative with respect to the spot, volatility,
+ * interest rate and time to maturity of every row. Sensitivities to shared
+ * inputs such as the spot of an underlying or a rate bucket are sums of the
+ * row sensitivities, see bucket(), so the cost does not depend on how the
+ * risk is bucketed.
+ *
+ * Prices follow the convention of Greeks. The tau sensitivity is with
+ * respect to time to maturity, i.e. minus the calendar theta. Rows with no
+ * time or volatility left are valued at intrinsic value on the discounted
+ * strike.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class AdjointRisk {
+
+	private final Tape tape = new Tape();
+
+	private int size;
+	private double value;
+
+	// Input nodes per row, -1 for rows without position
+	private int[] nodes = new int[0];
+
+	// Sensitivities per row
+	private double[] spot = new double[0];
+	private double[] sigma = new double[0];
+	private double[] rate = new double[0];
+	private double[] tau = new double[0];
+
+	/**
+	 * Values the position and computes sensitivities to all inputs
+	 *
+	 * @param chain option chain
+	 * @param pos position per chain row
+	 * @return portfolio value
+	 */
+	public double evaluate(OptionChain chain, double[] pos) {
+		int total;
+
+		if (pos.length < chain.size())
+			throw new IllegalArgumentException("Position vector shorter than the chain");
+
+		size = chain.size();
+		if (spot.length < size) {
+			nodes = new int[4 * size];
+			spot = new double[size];
+			sigma = new double[size];
+			rate = new double[size];
+			tau = new double[size];
+		}
+
+		tape.reset();
+		total = tape.input(0.0);
+
+		for (int i = 0; i < size; i++) {
+			if (pos[i] == 0.0) {
+				nodes[4 * i] = -1;
+				continue;
+			}
+
+			final int s = tape.input(chain.s[i]);
+			final int v = tape.input(chain.sigma[i]);
+			final int r = tape.input(chain.r[i]);
+			final int t = tape.input(chain.t[i]);
+
+			nodes[4 * i] = s;
+			nodes[4 * i + 1] = v;
+			nodes[4 * i + 2] = r;
+			nodes[4 * i + 3] = t;
+
+			total = tape.add(total, tape.scale(price(s, chain.k[i], t, v, r, chain.side[i] == OptionChain.CALL), pos[i]));
+		}
+
+		tape.backward(total);
+
+		for (int i = 0; i < size; i++) {
+			final int j = nodes[4 * i];
+
+			if (j < 0) {
+				spot[i] = sigma[i] = rate[i] = tau[i] = 0.0;
+				continue;
+			}
+			spot[i] = tape.adjoint(j);
+			sigma[i] = tape.adjoint(nodes[4 * i + 1]);
+			rate[i] = tape.adjoint(nodes[4 * i + 2]);
+			tau[i] = tape.adjoint(nodes[4 * i + 3]);
+		}
+
+		value = tape.value(total);
+		return value;
+	}
+
+	/**
+	 * Values a portfolio of options, positions are taken from the options
+	 *
+	 * @param options option portfolio, sigma and t must be set
+	 * @return portfolio value
+	 */
+	public double evaluate(List<Option> options) {
+		double[] pos = new double[options.size()];
+
+		for (int i = 0; i < pos.length; i++)
+			pos[i] = options.get(i).getPos();
+		return evaluate(new OptionChain(options), pos);
+	}
+
+	/**
+	 * Records Black-Scholes price of one option
+	 *
+	 * @return price node
+	 */
+	private int price(int s, double k, int t, int v, int r, boolean call) {
+		final int kert = tape.scale(tape.exp(tape.scale(tape.mul(r, t), -1.0)), k);
+		final int c;
+
+		if (!(tape.value(t) > 0) || !(tape.value(v) > 0)) {
+			c = tape.positive(tape.sub(s, kert));
+		} else {
+			final int st = tape.mul(v, tape.sqrt(t));
+			final int drift = tape.mul(t, tape.add(r, tape.scale(tape.mul(v, v), 0.5)));
+			final int d1 = tape.div(tape.add(tape.shift(tape.log(s), -Math.log(k)), drift), st);
+			final int d2 = tape.sub(d1, st);
+
+			c = tape.sub(tape.mul(s, tape.cdf(d1)), tape.mul(kert, tape.cdf(d2)));
+		}
+
+		// put = call - s + k * exp(-r * t)
+		return call ? c : tape.add(tape.sub(c, s), kert);
+	}
+
+	/**
+	 * Sums row sensitivities into buckets, eg. spot risk per underlying
+	 * or rate risk per maturity bucket
+	 *
+	 * @param risk sensitivity per row, eg. getSpot()
+	 * @param bucket bucket index per row, rows with a negative index are skipped
+	 * @param buckets number of buckets
+	 * @return sensitivity per bucket
+	 */
+	public double[] bucket(double[] risk, int[] bucket, int buckets) {
+		double[] out = new double[buckets];
+
+		for (int i = 0; i < size; i++)
+			if (bucket[i] >= 0)
+				out[bucket[i]] += risk[i];
+		return out;
+	}
+
+	/**
+	 * Spot sensitivity per underlying, after evaluate(List)
+	 *
+	 * @param options the evaluated options
+	 * @return underlying ticker id to the derivative of value by its price
+	 */
+	public Map<Integer, Double> spotByUnderlying(List<Option> options) {
+		Map<Integer, Double> out = new LinkedHashMap<>();
+
+		for (int i = 0; i < size; i++) {
+			Integer id = options.get(i).getUl().getId();
+			Double v = out.get(id);
+			out.put(id, (v == null ? 0.0 : v) + spot[i]);
+		}
+		return out;
+	}
+
+	/**
+	 * Returns total of a sensitivity over all rows
+	 *
+	 * @param risk sensitivity per row
+	 * @return sum
+	 */
+	public double total(double[] risk) {
+		double sum = 0.0;
+
+		for (int i = 0; i < size; i++)
+			sum += risk[i];
+		return sum;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Sensitivities per row. The arrays are owned by the object and may be
+	 * longer than size(), they must not be modified by the caller.
+	 */
+
+	public double[] getSpot() {
+		return spot;
+	}
+
+	public double[] getSigma() {
+		return sigma;
+	}
+
+	public double[] getRate() {
+		return rate;
+	}
+
+	public double[] getTau() {
+		return tau;
+	}
+}
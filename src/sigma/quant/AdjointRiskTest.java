@@ -0,0 +1,73 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AdjointRiskTest {
+
+	private static final int N = 40;
+
+	private static OptionChain chain(double s, double r, double bumpT, int row) {
+		OptionChain c = new OptionChain(0);
+
+		c.resize(N);
+		for (int i = 0; i < N; i++)
+			c.set(i, s, 40.0 + i, (i % 4 + 1) * 0.2 + (i == row ? bumpT : 0.0), 0.2 + 0.004 * i, r, 0.0,
+				  i % 2 == 0 ? OptSide.CALL : OptSide.PUT);
+		return c;
+	}
+
+	private static double[] pos() {
+		double[] pos = new double[N];
+
+		for (int i = 0; i < N; i++)
+			pos[i] = i % 3 == 0 ? 0.0 : (i % 5) - 2.0;
+		return pos;
+	}
+
+	@Test
+	public void testAgainstClosedForm() {
+		OptionChain c = chain(55.0, 0.02, 0.0, -1);
+		double[] pos = pos();
+		AdjointRisk risk = new AdjointRisk();
+		double v = risk.evaluate(c, pos);
+
+		c.calcGreeks();
+		assertEquals(c.total(c.getPrice(), pos), v, 1e-10);
+
+		for (int i = 0; i < N; i++) {
+			assertEquals(pos[i] * c.getDelta()[i], risk.getSpot()[i], 1e-10);
+			assertEquals(pos[i] * c.getVega()[i], risk.getSigma()[i], 1e-9);
+			assertEquals(-pos[i] * c.getTheta()[i], risk.getTau()[i], 1e-9);
+		}
+		assertEquals(c.total(c.getDelta(), pos), risk.total(risk.getSpot()), 1e-10);
+	}
+
+	@Test
+	public void testRateAndBuckets() {
+		double[] pos = pos();
+		AdjointRisk risk = new AdjointRisk();
+		AdjointRisk bump = new AdjointRisk();
+		double h = 1e-6;
+		int[] bucket = new int[N];
+
+		risk.evaluate(chain(55.0, 0.02, 0.0, -1), pos);
+
+		// Rate sensitivity of the whole book by central differences
+		double up = bump.evaluate(chain(55.0, 0.02 + h, 0.0, -1), pos);
+		double down = bump.evaluate(chain(55.0, 0.02 - h, 0.0, -1), pos);
+		assertEquals((up - down) / (2 * h), risk.total(risk.getRate()), 1e-6);
+
+		// Tau of one row
+		up = bump.evaluate(chain(55.0, 0.02, h, 7), pos);
+		down = bump.evaluate(chain(55.0, 0.02, -h, 7), pos);
+		assertEquals((up - down) / (2 * h), risk.getTau()[7], 1e-6);
+
+		// Spot buckets by maturity add up to the total
+		for (int i = 0; i < N; i++)
+			bucket[i] = i % 4;
+		double[] b = risk.bucket(risk.getSpot(), bucket, 4);
+		assertEquals(risk.total(risk.getSpot()), b[0] + b[1] + b[2] + b[3], 1e-12);
+	}
+}
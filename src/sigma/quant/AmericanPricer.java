@@ -0,0 +1,388 @@
+package sigma.quant;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * American options on futures.
+ *
+ * The hot path is the quadratic approximation of Barone-Adesi and Whaley
+ * (1987) with cost of carry b, b = 0 for options on futures. The critical
+ * price is found by Newton iteration from the seed of Barone-Adesi and
+ * Whaley, greeks are central finite differences of the approximation.
+ * Against a converged lattice the approximation is within one to two
+ * percent of the price up to a year to maturity, the error grows for longer dated
+ * options.
+ *
+ * Lattice is a preallocated Cox-Ross-Rubinstein binomial tree for
+ * validation and for greeks by finite differences on the tree.
+ *
+ * As a ChainKernel the pricer fills price, delta, gamma, vega and theta
+ * of an option chain treating the spot column as the futures price, with
+ * the same units as Greeks (theta per calendar year). evaluate(chain)
+ * splits the chain over a fork-join pool.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class AmericanPricer implements ChainKernel {
+
+	// Rows per task
+	private static final int THRESHOLD = 64;
+
+	// Critical price iteration
+	private static final double TOLERANCE = 1e-10;
+	private static final int MAX_ITERATIONS = 100;
+
+	// Finite difference steps, relative spot bump and absolute vol and time bumps
+	static final double SPOT_BUMP = 1e-3;
+	static final double VOL_BUMP = 1e-4;
+	static final double TIME_BUMP = 1e-4;
+
+	// Vol bump on the lattice, prices on a tree are not smooth in small vol changes
+	static final double LATTICE_VOL_BUMP = 0.01;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Pricer running batches on the common fork-join pool
+	 */
+	public AmericanPricer() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Pricer running batches on given pool
+	 *
+	 * @param pool fork-join pool
+	 */
+	public AmericanPricer(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * American option on a futures price, Barone-Adesi-Whaley
+	 *
+	 * @param f futures price
+	 * @param k strike
+	 * @param t time to maturity
+	 * @param sigma volatility
+	 * @param r risk free interest rate
+	 * @param call true for call, false for put
+	 * @return price
+	 */
+	public static double price(double f, double k, double t, double sigma, double r, boolean call) {
+		return baw(f, k, t, sigma, r, 0.0, call);
+	}
+
+	/**
+	 * Generalised Black-Scholes European price with cost of carry b
+	 */
+	static double european(double s, double k, double t, double sigma, double r, double b, boolean call) {
+		final double st = sigma * Math.sqrt(t);
+		final double d1 = (Math.log(s / k) + (b + 0.5 * sigma * sigma) * t) / st;
+		final double d2 = d1 - st;
+		final double ebr = Math.exp((b - r) * t);
+		final double er = Math.exp(-r * t);
+
+		if (call)
+			return s * ebr * NormalDistribution.cdf(d1) - k * er * NormalDistribution.cdf(d2);
+		return k * er * NormalDistribution.cdf(-d2) - s * ebr * NormalDistribution.cdf(-d1);
+	}
+
+	/**
+	 * Barone-Adesi-Whaley approximation with cost of carry b
+	 *
+	 * @param s underlying price
+	 * @param k strike
+	 * @param t time to maturity
+	 * @param sigma volatility
+	 * @param r risk free interest rate
+	 * @param b cost of carry, 0 for futures
+	 * @param call true for call, false for put
+	 * @return price
+	 */
+	public static double baw(double s, double k, double t, double sigma, double r, double b, boolean call) {
+		if (!(t > 0) || !(sigma > 0))
+			return Math.max(call ? s - k : k - s, 0.0);
+
+		// Early exercise of a call is never optimal without a carry cost,
+		// of a put never without a positive rate. The approximation below
+		// also divides by 1 - exp(-r t), which is zero at r = 0.
+		if (call ? b >= r : r <= 0)
+			return european(s, k, t, sigma, r, b, call);
+
+		final double v2 = sigma * sigma;
+		final double m = 2 * r / v2;
+		final double n = 2 * b / v2;
+		final double kt = 1 - Math.exp(-r * t);
+		final double sqt = Math.sqrt(t);
+		final double ebr = Math.exp((b - r) * t);
+		final double disc = Math.sqrt((n - 1) * (n - 1) + 4 * m / kt);
+
+		if (call) {
+			final double q2 = (-(n - 1) + disc) / 2;
+			final double sc = critical(k, t, sigma, r, b, true, q2);
+			if (s >= sc)
+				return s - k;
+
+			final double d1 = (Math.log(sc / k) + (b + 0.5 * v2) * t) / (sigma * sqt);
+			final double a2 = sc / q2 * (1 - ebr * NormalDistribution.cdf(d1));
+			return european(s, k, t, sigma, r, b, true) + a2 * Math.pow(s / sc, q2);
+		}
+
+		final double q1 = (-(n - 1) - disc) / 2;
+		final double sc = critical(k, t, sigma, r, b, false, q1);
+		if (s <= sc)
+			return k - s;
+
+		final double d1 = (Math.log(sc / k) + (b + 0.5 * v2) * t) / (sigma * sqt);
+		final double a1 = -sc / q1 * (1 - ebr * NormalDistribution.cdf(-d1));
+		return european(s, k, t, sigma, r, b, false) + a1 * Math.pow(s / sc, q1);
+	}
+
+	/**
+	 * Critical underlying price by Newton iteration
+	 *
+	 * @param q q2 for a call, q1 for a put
+	 * @return exercise boundary at time to maturity t
+	 */
+	static double critical(double k, double t, double sigma, double r, double b, boolean call, double q) {
+		final double v2 = sigma * sigma;
+		final double sqt = Math.sqrt(t);
+		final double st = sigma * sqt;
+		final double ebr = Math.exp((b - r) * t);
+		final double n = 2 * b / v2;
+		final double m = 2 * r / v2;
+
+		// Seed from the infinite maturity boundary
+		final double qInf = ((1 - n) + (call ? 1 : -1) * Math.sqrt((n - 1) * (n - 1) + 4 * m)) / 2;
+		final double sInf = k / (1 - 1 / qInf);
+		double si;
+
+		if (call)
+			si = k + (sInf - k) * (1 - Math.exp(-(b * t + 2 * st) * k / (sInf - k)));
+		else
+			si = sInf + (k - sInf) * Math.exp((b * t - 2 * st) * k / (k - sInf));
+
+		for (int i = 0; i < MAX_ITERATIONS; i++) {
+			final double d1 = (Math.log(si / k) + (b + 0.5 * v2) * t) / st;
+			final double pdf = NormalDistribution.pdf(d1);
+			final double next;
+
+			if (call) {
+				final double nd1 = NormalDistribution.cdf(d1);
+				final double rhs = european(si, k, t, sigma, r, b, true) + (1 - ebr * nd1) * si / q;
+				final double bi = ebr * nd1 * (1 - 1 / q) + (1 - ebr * pdf / st) / q;
+
+				if (Math.abs(si - k - rhs) <= TOLERANCE * k)
+					break;
+				next = (k + rhs - bi * si) / (1 - bi);
+			} else {
+				final double nd1 = NormalDistribution.cdf(-d1);
+				final double rhs = european(si, k, t, sigma, r, b, false) - (1 - ebr * nd1) * si / q;
+				final double bi = -ebr * nd1 * (1 - 1 / q) - (1 + ebr * pdf / st) / q;
+
+				if (Math.abs(k - si - rhs) <= TOLERANCE * k)
+					break;
+				next = (k - rhs + bi * si) / (1 + bi);
+			}
+
+			if (!(next > 0))
+				break;
+			si = next;
+		}
+		return si;
+	}
+
+	/**
+	 * Price and first order greeks on a futures price by central finite
+	 * differences of the approximation
+	 *
+	 * @param f futures price
+	 * @param k strike
+	 * @param t time to maturity
+	 * @param sigma volatility
+	 * @param r risk free interest rate
+	 * @param call true for call, false for put
+	 * @param out output vector of at least Greeks.COUNT elements, PRICE to THETA are set
+	 */
+	public static void greeks(double f, double k, double t, double sigma, double r, boolean call, double[] out) {
+		final double h = SPOT_BUMP * f;
+		final double p = price(f, k, t, sigma, r, call);
+		final double up = price(f + h, k, t, sigma, r, call);
+		final double down = price(f - h, k, t, sigma, r, call);
+		final double dt = Math.min(TIME_BUMP, 0.5 * t);
+
+		out[Greeks.PRICE] = p;
+		out[Greeks.DELTA] = (up - down) / (2 * h);
+		out[Greeks.GAMMA] = (up - 2 * p + down) / (h * h);
+		out[Greeks.VEGA] = (price(f, k, t, sigma + VOL_BUMP, r, call) -
+							price(f, k, t, sigma - VOL_BUMP, r, call)) / (2 * VOL_BUMP);
+
+		// Calendar time, so minus the derivative by time to maturity
+		out[Greeks.THETA] = dt > 0 ? (price(f, k, t - dt, sigma, r, call) -
+									   price(f, k, t + dt, sigma, r, call)) / (2 * dt) : 0.0;
+	}
+
+	@Override
+	public void evaluate(OptionChain chain, int from, int to) {
+		final double[] out = new double[Greeks.COUNT];
+
+		for (int i = from; i < to; i++) {
+			greeks(chain.s[i], chain.k[i], chain.t[i], chain.sigma[i], chain.r[i], chain.side[i] == OptionChain.CALL, out);
+
+			chain.price[i] = out[Greeks.PRICE];
+			chain.delta[i] = out[Greeks.DELTA];
+			chain.gamma[i] = out[Greeks.GAMMA];
+			chain.vega[i] = out[Greeks.VEGA];
+			chain.theta[i] = out[Greeks.THETA];
+		}
+	}
+
+	/**
+	 * Evaluates the whole chain in parallel
+	 *
+	 * @param chain option chain, spot column holds the futures prices
+	 */
+	public void evaluate(OptionChain chain) {
+		pool.invoke(new Rows(this, chain, 0, chain.size()));
+	}
+
+	@Override
+	public String getName() {
+		return "american baw";
+	}
+
+	/**
+	 * Range of chain rows
+	 */
+	private static class Rows extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final ChainKernel kernel;
+		private final OptionChain chain;
+		private final int from;
+		private final int to;
+
+		Rows(ChainKernel kernel, OptionChain chain, int from, int to) {
+			this.kernel = kernel;
+			this.chain = chain;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Rows(kernel, chain, from, mid), new Rows(kernel, chain, mid, to));
+				return;
+			}
+			kernel.evaluate(chain, from, to);
+		}
+	}
+
+	/**
+	 * Cox-Ross-Rubinstein binomial tree. Node storage is allocated once
+	 * per instance, an instance is not thread safe.
+	 */
+	public static class Lattice {
+		private final int steps;
+		private final double[] v;
+
+		/**
+		 * Tree with given number of time steps
+		 *
+		 * @param steps time steps, at least 2
+		 */
+		public Lattice(int steps) {
+			this.steps = Math.max(steps, 2);
+			this.v = new double[this.steps + 1];
+		}
+
+		/**
+		 * American option price with cost of carry b
+		 *
+		 * @return price
+		 */
+		public double price(double s, double k, double t, double sigma, double r, double b, boolean call) {
+			return roll(s, k, t, sigma, r, b, call, true, null);
+		}
+
+		/**
+		 * European price on the same tree, for validation
+		 *
+		 * @return price
+		 */
+		public double european(double s, double k, double t, double sigma, double r, double b, boolean call) {
+			return roll(s, k, t, sigma, r, b, call, false, null);
+		}
+
+		/**
+		 * American price and first order greeks. Delta, gamma and theta
+		 * are read off the first two steps of the tree, vega is a central
+		 * difference of two more trees.
+		 *
+		 * @param out output vector of at least Greeks.COUNT elements, PRICE to THETA are set
+		 */
+		public void greeks(double s, double k, double t, double sigma, double r, double b, boolean call, double[] out) {
+			roll(s, k, t, sigma, r, b, call, true, out);
+			out[Greeks.VEGA] = (price(s, k, t, sigma + LATTICE_VOL_BUMP, r, b, call) -
+								price(s, k, t, sigma - LATTICE_VOL_BUMP, r, b, call)) / (2 * LATTICE_VOL_BUMP);
+		}
+
+		/**
+		 * Backward induction
+		 */
+		private double roll(double s, double k, double t, double sigma, double r, double b, boolean call,
+				boolean american, double[] out) {
+			final double dt = t / steps;
+			final double u = Math.exp(sigma * Math.sqrt(dt));
+			final double d = 1 / u;
+			final double u2 = u * u;
+			final double p = (Math.exp(b * dt) - d) / (u - d);
+			final double dp = Math.exp(-r * dt) * p;
+			final double dq = Math.exp(-r * dt) * (1 - p);
+			final double q = call ? 1.0 : -1.0;
+
+			// Terminal payoff
+			double x = s * Math.pow(d, steps);
+			for (int j = 0; j <= steps; j++) {
+				v[j] = Math.max(q * (x - k), 0.0);
+				x *= u2;
+			}
+
+			for (int i = steps - 1; i >= 0; i--) {
+				x = s * Math.pow(d, i);
+				for (int j = 0; j <= i; j++) {
+					double c = dq * v[j] + dp * v[j + 1];
+					v[j] = american ? Math.max(c, q * (x - k)) : c;
+					x *= u2;
+				}
+
+				if (out != null && i == 2) {
+					final double f0 = v[0], f1 = v[1], f2 = v[2];
+					final double su = s * u2;
+					final double sd = s / u2;
+
+					out[Greeks.GAMMA] = ((f2 - f1) / (su - s) - (f1 - f0) / (s - sd)) / (0.5 * (su - sd));
+					out[Greeks.THETA] = f1;
+				}
+				if (out != null && i == 1)
+					out[Greeks.DELTA] = (v[1] - v[0]) / (s * u - s * d);
+			}
+
+			if (out != null) {
+				out[Greeks.PRICE] = v[0];
+				out[Greeks.THETA] = (out[Greeks.THETA] - v[0]) / (2 * dt);
+			}
+			return v[0];
+		}
+
+		public int getSteps() {
+			return steps;
+		}
+	}
+}
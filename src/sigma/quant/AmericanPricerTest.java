@@ -0,0 +1,98 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AmericanPricerTest {
+
+	private static final double F = 55.0;
+	private static final double R = 0.05;
+	private static final double SIGMA = 0.35;
+
+	@Test
+	public void testBawAgainstLattice() {
+		AmericanPricer.Lattice tree = new AmericanPricer.Lattice(1000);
+
+		for (double t : new double[] {0.02, 0.1, 0.25, 0.5, 1.0})
+			for (double k = 40.0; k <= 70.0; k += 5.0)
+				for (boolean call : new boolean[] {true, false}) {
+					double baw = AmericanPricer.price(F, k, t, SIGMA, R, call);
+					double lat = tree.price(F, k, t, SIGMA, R, 0.0, call);
+					double eur = AmericanPricer.european(F, k, t, SIGMA, R, 0.0, call);
+
+					assertTrue(baw >= eur - 1e-12);
+					assertTrue(baw >= Math.max(call ? F - k : k - F, 0.0));
+					assertEquals(lat, baw, Math.max(0.015 * lat, 0.005));
+				}
+	}
+
+	@Test
+	public void testLatticeEuropean() {
+		AmericanPricer.Lattice tree = new AmericanPricer.Lattice(1000);
+
+		for (double k = 40.0; k <= 70.0; k += 5.0)
+			for (boolean call : new boolean[] {true, false})
+				assertEquals(AmericanPricer.european(F, k, 0.5, SIGMA, R, 0.0, call),
+							 tree.european(F, k, 0.5, SIGMA, R, 0.0, call), 3e-3);
+
+		// Without carry cost the American call is European
+		assertEquals(AmericanPricer.european(F, 50.0, 0.5, SIGMA, R, R, true),
+					 AmericanPricer.baw(F, 50.0, 0.5, SIGMA, R, R, true), 0.0);
+	}
+
+	@Test
+	public void testNonPositiveRate() {
+		AmericanPricer.Lattice tree = new AmericanPricer.Lattice(1000);
+
+		// No early exercise premium at zero or negative rates
+		for (double r : new double[] {0.0, -0.005})
+			for (double k = 40.0; k <= 70.0; k += 5.0)
+				for (boolean call : new boolean[] {true, false}) {
+					double eur = AmericanPricer.european(F, k, 0.5, SIGMA, r, 0.0, call);
+
+					assertEquals(eur, AmericanPricer.price(F, k, 0.5, SIGMA, r, call), 0.0);
+					assertEquals(eur, tree.price(F, k, 0.5, SIGMA, r, 0.0, call), 3e-3);
+				}
+	}
+
+	@Test
+	public void testGreeks() {
+		AmericanPricer.Lattice tree = new AmericanPricer.Lattice(1000);
+		double[] baw = new double[Greeks.COUNT];
+		double[] lat = new double[Greeks.COUNT];
+
+		for (double k : new double[] {45.0, 55.0, 65.0})
+			for (boolean call : new boolean[] {true, false}) {
+				AmericanPricer.greeks(F, k, 0.5, SIGMA, R, call, baw);
+				tree.greeks(F, k, 0.5, SIGMA, R, 0.0, call, lat);
+
+				assertEquals(lat[Greeks.DELTA], baw[Greeks.DELTA], 0.01);
+				assertEquals(lat[Greeks.GAMMA], baw[Greeks.GAMMA], 0.05 * lat[Greeks.GAMMA]);
+				assertEquals(lat[Greeks.VEGA], baw[Greeks.VEGA], 0.02 * lat[Greeks.VEGA]);
+				assertEquals(lat[Greeks.THETA], baw[Greeks.THETA], 0.05 * Math.abs(lat[Greeks.THETA]));
+			}
+	}
+
+	@Test
+	public void testChainBatch() {
+		OptionChain chain = new OptionChain(0);
+		double[] out = new double[Greeks.COUNT];
+		int n = 0;
+
+		chain.resize(2 * 31 * 3);
+		for (double k = 40.0; k <= 70.0; k += 1.0)
+			for (double t : new double[] {0.05, 0.3, 0.8})
+				for (OptSide side : OptSide.values())
+					chain.set(n++, F, k, t, SIGMA, R, 0.0, side);
+
+		new AmericanPricer().evaluate(chain);
+
+		for (int i = 0; i < n; i++) {
+			AmericanPricer.greeks(F, chain.getStrike(i), chain.getTau(i), SIGMA, R, chain.getSide(i) == OptionChain.CALL, out);
+			assertEquals(out[Greeks.PRICE], chain.getPrice()[i], 0.0);
+			assertEquals(out[Greeks.DELTA], chain.getDelta()[i], 0.0);
+			assertEquals(out[Greeks.THETA], chain.getTheta()[i], 0.0);
+		}
+	}
+}
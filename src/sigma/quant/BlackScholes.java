@@ -192,7 +192,7 @@ public class BlackScholes {
 
 	double NormOrdinate(double z){
 		// The normal ordinate (probability density function)
-		return Math.exp(-0.5 * z * z) / Math.sqrt(2 * Pi);
+		return NormalDistribution.pdf(z);
 	}
 
 	double NormalCDF_old(double y){
@@ -235,28 +235,8 @@ public class BlackScholes {
 	}
 
 	double NormalCDF(double x){
-		double a1 =  0.319381530;
-		double a2 = -0.356563782;
-		double a3 =  1.781477937;
-		double a4 = -1.821255978;
-		double a5 =  1.330274429;
-
-		double gamma     = 0.2316419;
-		double precision = 1e-6;
-
-		if (x >= 0.0) {
- 		double k = 1.0/(1.0+gamma*x);
- 		double temp = NormOrdinate(x) * k *
-   		(a1 + k*(a2 + k*(a3 + k*(a4 + k*a5))));
- 		if (temp < precision) 
- 			return 1.0;
- 		temp = 1.0 - temp;
- 		if (temp < precision) 
- 			return 0.0;
- 		return temp;
-		} else { // if(x < 0.0)
- 		return 1.0-NormalCDF(-x);
-		}
+		// Cumulative normal distribution, see NormalDistribution for the accuracy
+		return NormalDistribution.cdf(x);
 	}
 
 	// replicates Sgn as in visual basic, the signum of a real number
@@ -0,0 +1,94 @@
+package sigma.quant;
+
+/**
+ * Accuracy of the normal CDF and PDF used by a pricer.
+ *
+ * CODY is the exact (double precision) NormalDistribution. The other
+ * modes use a precomputed table with cubic Hermite interpolation and
+ * guarantee the stated absolute error for both the CDF and the PDF
+ * over the whole real line. The tables are small enough to stay in
+ * the L2 cache.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public enum CdfAccuracy {
+
+	CODY(0.0) {
+		@Override
+		public double cdf(double x) {
+			return NormalDistribution.cdf(x);
+		}
+
+		@Override
+		public double pdf(double x) {
+			return NormalDistribution.pdf(x);
+		}
+	},
+
+	// h = 1/64 on [-8.5, 8.5], 1088 intervals, 68 kB
+	ABS_1E9(1e-9) {
+		@Override
+		public double cdf(double x) {
+			return Tables.FINE.cdf(x);
+		}
+
+		@Override
+		public double pdf(double x) {
+			return Tables.FINE.pdf(x);
+		}
+	},
+
+	// h = 1/16 on [-6, 6], 192 intervals, 12 kB
+	ABS_1E7(1e-7) {
+		@Override
+		public double cdf(double x) {
+			return Tables.COARSE.cdf(x);
+		}
+
+		@Override
+		public double pdf(double x) {
+			return Tables.COARSE.pdf(x);
+		}
+	};
+
+	private final double error;
+
+	CdfAccuracy(double error) {
+		this.error = error;
+	}
+
+	/**
+	 * Standard normal CDF
+	 *
+	 * @param x argument
+	 * @return CDF at x
+	 */
+	public abstract double cdf(double x);
+
+	/**
+	 * Standard normal PDF
+	 *
+	 * @param x argument
+	 * @return PDF at x
+	 */
+	public abstract double pdf(double x);
+
+	/**
+	 * Guaranteed absolute error, zero for the exact mode
+	 *
+	 * @return maximum absolute error
+	 */
+	public double getError() {
+		return error;
+	}
+
+	/**
+	 * Tables are built on first use of a table mode
+	 */
+	private static final class Tables {
+		static final NormalTable FINE = new NormalTable(8.5, 64);
+		static final NormalTable COARSE = new NormalTable(6.0, 16);
+	}
+}
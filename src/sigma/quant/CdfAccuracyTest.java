@@ -0,0 +1,79 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CdfAccuracyTest {
+
+	// Dense scan, the step is not a multiple of any table spacing
+	private static final double STEP = 1.0e-4 / 3.0;
+
+	private static void scan(CdfAccuracy a, double from, double to) {
+		double cdfErr = 0.0;
+		double pdfErr = 0.0;
+
+		for (double x = from; x <= to; x += STEP) {
+			cdfErr = Math.max(cdfErr, Math.abs(a.cdf(x) - NormalDistribution.cdf(x)));
+			pdfErr = Math.max(pdfErr, Math.abs(a.pdf(x) - NormalDistribution.pdf(x)));
+		}
+		assertTrue(a + " cdf error " + cdfErr, cdfErr <= a.getError());
+		assertTrue(a + " pdf error " + pdfErr, pdfErr <= a.getError());
+	}
+
+	@Test
+	public void testErrorBoundOverDomain() {
+		for (CdfAccuracy a : CdfAccuracy.values()) {
+			scan(a, -12.0, 12.0);
+
+			// Far tails and the edges of the real line
+			for (double x : new double[] {-1e300, -40.0, 40.0, 1e300}) {
+				assertEquals(NormalDistribution.cdf(x), a.cdf(x), a.getError());
+				assertEquals(NormalDistribution.pdf(x), a.pdf(x), a.getError());
+			}
+			assertEquals(0.0, a.cdf(Double.NEGATIVE_INFINITY), 0.0);
+			assertEquals(1.0, a.cdf(Double.POSITIVE_INFINITY), 0.0);
+			assertEquals(0.0, a.pdf(Double.NEGATIVE_INFINITY), 0.0);
+			assertTrue(Double.isNaN(a.cdf(Double.NaN)));
+			assertTrue(Double.isNaN(a.pdf(Double.NaN)));
+		}
+	}
+
+	@Test
+	public void testTableEdges() {
+		// Table bounds of all modes, probed on every mode
+		for (CdfAccuracy a : CdfAccuracy.values())
+			for (double hi : new double[] {6.0, 8.5})
+				for (double x : new double[] {Math.nextDown(hi), hi, Math.nextUp(-hi), -hi}) {
+					assertEquals(a + " cdf at " + x, NormalDistribution.cdf(x), a.cdf(x), a.getError());
+					assertEquals(a + " pdf at " + x, NormalDistribution.pdf(x), a.pdf(x), a.getError());
+				}
+		assertEquals(1.0, CdfAccuracy.ABS_1E9.cdf(8.499999999999998), 1e-9);
+		assertEquals(1.0, CdfAccuracy.ABS_1E7.cdf(5.999999999999999), 1e-7);
+	}
+
+	@Test
+	public void testChainAccuracy() {
+		OptionChain exact = new OptionChain(0);
+		OptionChain fast = new OptionChain(0);
+		int n = 0;
+
+		exact.resize(41 * 2);
+		fast.resize(41 * 2);
+		for (double k = 35.0; k <= 75.0; k += 1.0)
+			for (OptSide side : OptSide.values()) {
+				exact.set(n, 55.0, k, 0.25, 0.3, 0.02, 0.0, side);
+				fast.set(n++, 55.0, k, 0.25, 0.3, 0.02, 0.0, side);
+			}
+
+		fast.setAccuracy(CdfAccuracy.ABS_1E9);
+		exact.calcGreeks();
+		fast.calcGreeks();
+
+		// Price error is at most (s + k) times the CDF error
+		for (int i = 0; i < n; i++) {
+			assertEquals(exact.getPrice()[i], fast.getPrice()[i], 130 * 1e-9);
+			assertEquals(exact.getDelta()[i], fast.getDelta()[i], 1e-9);
+		}
+	}
+}
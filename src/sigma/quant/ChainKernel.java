@@ -0,0 +1,31 @@
+package sigma.quant;
+
+/**
+ * Chain pricing kernel for price and first order greeks.
+ *
+ * Implementations read the input columns of an option chain and write
+ * its price, delta, gamma, vega and theta columns, using the same
+ * conventions as Greeks.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public interface ChainKernel {
+
+	/**
+	 * Evaluates rows from..to-1 of the chain
+	 *
+	 * @param chain option chain
+	 * @param from first row
+	 * @param to end row, exclusive
+	 */
+	void evaluate(OptionChain chain, int from, int to);
+
+	/**
+	 * Returns kernel name for logging
+	 *
+	 * @return name
+	 */
+	String getName();
+}
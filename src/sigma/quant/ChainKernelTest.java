@@ -0,0 +1,65 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+public class ChainKernelTest {
+
+	// Absolute tolerance against BlackScholes, prices are in the units of the spot
+	private static final double TOL = 1e-11;
+
+	private static OptionChain chain(double d) {
+		OptionChain c = new OptionChain(0);
+		int n = 0;
+
+		// Odd size, so that the vector kernel ends with a partial block
+		c.resize(2 * 41 * 4 + 1);
+		for (double k = 35.0; k <= 75.0; k += 1.0)
+			for (double t : new double[] {0.01, 0.1, 0.5, 2.0})
+				for (OptSide side : OptSide.values())
+					c.set(n++, 55.0, k, t, 0.2 + 0.005 * (k - 35.0), 0.02, d, side);
+		c.set(n, 55.0, 55.5, 0.3, 0.25, 0.02, d, OptSide.CALL);
+		return c;
+	}
+
+	private static void check(ChainKernel kernel) {
+		OptionChain c = chain(0.0);
+		c.calcFirstOrder(kernel);
+
+		for (int i = 0; i < c.size(); i++) {
+			BlackScholes bs = new BlackScholes(c.getSpot(i), c.getStrike(i), 0.02, c.getSigma(i), c.getTau(i));
+			boolean call = c.getSide(i) == OptionChain.CALL;
+
+			assertEquals(call ? bs.BSCall() : bs.BSPut(), c.getPrice()[i], TOL);
+			assertEquals(call ? bs.BSCallDelta() : bs.BSPutDelta(), c.getDelta()[i], TOL);
+			assertEquals(bs.BSGamma(), c.getGamma()[i], TOL);
+			assertEquals(bs.BSVega(), c.getVega()[i], TOL);
+		}
+
+		// Theta and dividends against the full kernel
+		c = chain(0.03);
+		OptionChain ref = chain(0.03);
+		c.calcFirstOrder(kernel);
+		ref.calcGreeks();
+		for (int i = 0; i < c.size(); i++) {
+			assertEquals(ref.getDelta()[i], c.getDelta()[i], TOL);
+			assertEquals(ref.getTheta()[i], c.getTheta()[i], TOL);
+		}
+	}
+
+	@Test
+	public final void testScalar() {
+		check(ChainKernels.scalar());
+	}
+
+	@Test
+	public final void testVector() {
+		// Only when src-vector is on the class path and the module is enabled
+		assumeTrue(ChainKernels.get() != ChainKernels.scalar());
+		assertTrue(ChainKernels.get().getName().startsWith("vector"));
+		check(ChainKernels.get());
+	}
+
+}
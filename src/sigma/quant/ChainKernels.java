@@ -0,0 +1,55 @@
+package sigma.quant;
+
+/**
+ * Chain kernel selection.
+ *
+ * The SIMD kernel (sigma.quant.VectorChainKernel, see src-vector) needs
+ * JDK 16+ and the jdk.incubator.vector module. It is loaded reflectively
+ * so that this package still builds and runs on Java 8, and the scalar
+ * kernel is used whenever the class or the module is not available.
+ * Setting the system property sigma.quant.vector=false forces the scalar
+ * kernel.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public final class ChainKernels {
+
+	static final String VECTOR_KERNEL = "sigma.quant.VectorChainKernel";
+
+	private static final ChainKernel scalar = new ScalarChainKernel();
+	private static final ChainKernel best = load();
+
+	private ChainKernels() {
+	}
+
+	private static ChainKernel load() {
+		if ("false".equalsIgnoreCase(System.getProperty("sigma.quant.vector")))
+			return scalar;
+
+		try {
+			return (ChainKernel) Class.forName(VECTOR_KERNEL).newInstance();
+		} catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+			return scalar;
+		}
+	}
+
+	/**
+	 * Fastest available kernel
+	 *
+	 * @return vector kernel if available, scalar otherwise
+	 */
+	public static ChainKernel get() {
+		return best;
+	}
+
+	/**
+	 * Scalar kernel
+	 *
+	 * @return scalar kernel
+	 */
+	public static ChainKernel scalar() {
+		return scalar;
+	}
+}
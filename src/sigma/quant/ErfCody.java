@@ -3,21 +3,22 @@ package sigma.quant;
 public class ErfCody {
    static double d_int(double x){ return( (x>0) ? Math.floor(x) : -Math.floor(-x) ); }
 
-	/*<       SUBROUTINE CALERF(ARG,RESULT,JINT) >*/
-	static double calerf(double x, int jint) {
-
-	   final double[] a = new double[] { 3.1611237438705656,113.864154151050156,377.485237685302021,3209.37758913846947,.185777706184603153 };
-	   final double[] b = new double[] { 23.6012909523441209,244.024637934444173,1282.61652607737228,2844.23683343917062 };
-	   final double[] c = new double[] { .564188496988670089,8.88314979438837594,66.1191906371416295,298.635138197400131,881.95222124176909,
+	// CALERF coefficients, shared so that calls do not allocate
+	private static final double[] a = new double[] { 3.1611237438705656,113.864154151050156,377.485237685302021,3209.37758913846947,.185777706184603153 };
+	private static final double[] b = new double[] { 23.6012909523441209,244.024637934444173,1282.61652607737228,2844.23683343917062 };
+	private static final double[] c = new double[] { .564188496988670089,8.88314979438837594,66.1191906371416295,298.635138197400131,881.95222124176909,
 			   1712.04761263407058,2051.07837782607147,1230.33935479799725,2.15311535474403846e-8 };
 	   
-	   final double[] d = new double[] { 15.7449261107098347,117.693950891312499,537.181101862009858,1621.38957456669019,3290.79923573345963,
+	private static final double[] d = new double[] { 15.7449261107098347,117.693950891312499,537.181101862009858,1621.38957456669019,3290.79923573345963,
 			   4362.61909014324716,3439.36767414372164,1230.33935480374942 };
 	   
-	   final double[] p = new double[] { .305326634961232344,.360344899949804439,.125781726111229246,.0160837851487422766,6.58749161529837803e-4,
+	private static final double[] p = new double[] { .305326634961232344,.360344899949804439,.125781726111229246,.0160837851487422766,6.58749161529837803e-4,
 			   .0163153871373020978 };
 	   
-	   final double[] q = new double[] { 2.56852019228982242,1.87295284992346047,.527905102951428412,.0605183413124413191,.00233520497626869185 };
+	private static final double[] q = new double[] { 2.56852019228982242,1.87295284992346047,.527905102951428412,.0605183413124413191,.00233520497626869185 };
+
+	/*<       SUBROUTINE CALERF(ARG,RESULT,JINT) >*/
+	static double calerf(double x, int jint) {
 
 	   double zero = 0.;
 	   double half = .5;
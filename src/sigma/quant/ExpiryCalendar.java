@@ -0,0 +1,249 @@
+package sigma.quant;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Expiry calendar and time to maturity service.
+ *
+ * Expiry strings (yyyyMMdd) are parsed once and cached. Year fractions
+ * are computed against a snapshot of the clock taken by refresh(), so
+ * every option on the same expiry gets exactly the same tau until the
+ * next refresh. Options expire at the start of the expiry day in the
+ * zone of the clock.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class ExpiryCalendar {
+
+	/**
+	 * Year fraction convention
+	 */
+	public enum Convention {
+		// Actual calendar days / 365
+		CALENDAR,
+		// Weekdays / 252, no exchange holidays
+		TRADING
+	}
+
+	static final double DAYS_PER_YEAR = 365.0;
+	static final double TRADING_DAYS_PER_YEAR = 252.0;
+
+	private static final double MS_PER_DAY = 24.0 * 60.0 * 60.0 * 1000.0;
+
+	private static final ExpiryCalendar shared = new ExpiryCalendar();
+
+	private final Clock clock;
+	private final Convention convention;
+	private final ConcurrentHashMap<String, LocalDate> dates;
+
+	private volatile Snapshot snapshot;
+
+	/**
+	 * Calendar day convention on the system clock
+	 */
+	public ExpiryCalendar() {
+		this(Clock.systemDefaultZone(), Convention.CALENDAR);
+	}
+
+	/**
+	 * Calendar with given clock and convention
+	 *
+	 * @param clock clock, also defines the time zone of the expiries
+	 * @param convention year fraction convention
+	 */
+	public ExpiryCalendar(Clock clock, Convention convention) {
+		this.clock = clock;
+		this.convention = convention;
+		this.dates = new ConcurrentHashMap<>();
+		refresh();
+	}
+
+	/**
+	 * Calendar shared by the options that are not calibrated through
+	 * a SurfaceCalibrator
+	 *
+	 * @return shared calendar
+	 */
+	public static ExpiryCalendar getDefault() {
+		return shared;
+	}
+
+	/**
+	 * Reads the clock and drops the cached year fractions
+	 *
+	 * @return the new valuation time
+	 */
+	public Instant refresh() {
+		Snapshot s = new Snapshot(clock.instant());
+		this.snapshot = s;
+		return s.now;
+	}
+
+	/**
+	 * Reads the clock once and sets t for all the options
+	 *
+	 * @param options options to update
+	 */
+	public void refresh(List<Option> options) {
+		refresh();
+		for (Option o : options)
+			o.t = tau(o.getExpiry());
+	}
+
+	/**
+	 * Valuation time of the current snapshot
+	 *
+	 * @return valuation time
+	 */
+	public Instant getNow() {
+		return snapshot.now;
+	}
+
+	/**
+	 * Returns the year fraction convention
+	 *
+	 * @return convention
+	 */
+	public Convention getConvention() {
+		return convention;
+	}
+
+	/**
+	 * Parses the expiry, the result is cached
+	 *
+	 * @param expiry expiry in yyyyMMdd format
+	 * @return expiry date, null if the expiry cannot be parsed
+	 */
+	public LocalDate date(String expiry) {
+		LocalDate d;
+
+		if (expiry == null)
+			return null;
+
+		d = dates.get(expiry);
+		if (d == null) {
+			try {
+				d = LocalDate.parse(expiry, DateTimeFormatter.BASIC_ISO_DATE);
+			} catch (DateTimeParseException e) {
+				return null;
+			}
+			dates.putIfAbsent(expiry, d);
+		}
+		return d;
+	}
+
+	/**
+	 * Time to maturity at the current snapshot
+	 *
+	 * @param expiry expiry in yyyyMMdd format
+	 * @return time to maturity in years, NaN if the expiry cannot be parsed
+	 */
+	public double tau(String expiry) {
+		Snapshot s = snapshot;
+		Double t;
+
+		if (expiry == null)
+			return Double.NaN;
+
+		t = s.taus.get(expiry);
+		if (t == null) {
+			t = tau(expiry, s.now);
+			s.taus.putIfAbsent(expiry, t);
+		}
+		return t;
+	}
+
+	/**
+	 * Time to maturity with a fresh clock reading, not cached
+	 *
+	 * @param expiry expiry in yyyyMMdd format
+	 * @return time to maturity in years, NaN if the expiry cannot be parsed
+	 */
+	public double tauNow(String expiry) {
+		return tau(expiry, clock.instant());
+	}
+
+	/**
+	 * Time to maturity at given time, not cached
+	 *
+	 * @param expiry expiry in yyyyMMdd format
+	 * @param now valuation time
+	 * @return time to maturity in years, zero or negative once expired,
+	 * NaN if the expiry cannot be parsed
+	 */
+	public double tau(String expiry, Instant now) {
+		LocalDate d = date(expiry);
+		ZonedDateTime start;
+		ZonedDateTime tomorrow;
+		double rest = 0.0;
+		double ms;
+
+		if (d == null)
+			return Double.NaN;
+
+		start = d.atStartOfDay(clock.getZone());
+		ms = start.toInstant().toEpochMilli() - now.toEpochMilli();
+
+		if (convention == Convention.CALENDAR)
+			return ms / MS_PER_DAY / DAYS_PER_YEAR;
+
+		// Expired or expiring within a day
+		tomorrow = now.atZone(clock.getZone()).toLocalDate().plusDays(1).atStartOfDay(clock.getZone());
+		if (ms <= 0 || !start.isAfter(tomorrow))
+			return ms / MS_PER_DAY / TRADING_DAYS_PER_YEAR;
+
+		// Remaining part of today counts if today is a trading day
+		if (isWeekday(tomorrow.toLocalDate().minusDays(1)))
+			rest = (tomorrow.toInstant().toEpochMilli() - now.toEpochMilli()) / MS_PER_DAY;
+
+		return (rest + weekdays(tomorrow.toLocalDate(), d)) / TRADING_DAYS_PER_YEAR;
+	}
+
+	private static boolean isWeekday(LocalDate d) {
+		DayOfWeek w = d.getDayOfWeek();
+		return w != DayOfWeek.SATURDAY && w != DayOfWeek.SUNDAY;
+	}
+
+	/**
+	 * Number of weekdays in [from, to)
+	 *
+	 * @param from first day
+	 * @param to end day, exclusive
+	 * @return number of weekdays
+	 */
+	static long weekdays(LocalDate from, LocalDate to) {
+		long days = to.toEpochDay() - from.toEpochDay();
+		long n;
+
+		if (days <= 0)
+			return 0;
+
+		n = (days / 7) * 5;
+		for (LocalDate d = from.plusDays((days / 7) * 7); d.isBefore(to); d = d.plusDays(1))
+			if (isWeekday(d))
+				n++;
+		return n;
+	}
+
+	/**
+	 * Clock reading with the year fractions computed against it
+	 */
+	private static class Snapshot {
+		final Instant now;
+		final ConcurrentHashMap<String, Double> taus = new ConcurrentHashMap<>();
+
+		Snapshot(Instant now) {
+			this.now = now;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ExpiryCalendarTest {
+
+	private static final ZoneId ZONE = ZoneId.of("America/New_York");
+
+	// Wednesday noon
+	private static final ZonedDateTime NOW = ZonedDateTime.of(2017, 3, 15, 12, 0, 0, 0, ZONE);
+
+	private static ExpiryCalendar calendar(ExpiryCalendar.Convention c) {
+		return new ExpiryCalendar(Clock.fixed(NOW.toInstant(), ZONE), c);
+	}
+
+	@Test
+	public final void testCalendarDays() {
+		ExpiryCalendar cal = calendar(ExpiryCalendar.Convention.CALENDAR);
+
+		assertEquals(1.5 / 365.0, cal.tau("20170317"), 1e-15);
+		assertEquals(cal.tau("20170317"), cal.tau("20170317"), 0.0);
+		assertTrue(cal.tau("20170315") < 0);
+		assertTrue(Double.isNaN(cal.tau("2017031")));
+		assertTrue(Double.isNaN(cal.tau(null)));
+	}
+
+	@Test
+	public final void testTradingDays() {
+		ExpiryCalendar cal = calendar(ExpiryCalendar.Convention.TRADING);
+
+		// Half of Wednesday, Thursday, Friday and Monday
+		assertEquals(3.5 / 252.0, cal.tau("20170321"), 1e-15);
+		// Weekend does not count
+		assertEquals(2.5 / 252.0, cal.tau("20170320"), 1e-15);
+		assertEquals(2.5 / 252.0, cal.tau("20170318"), 1e-15);
+		assertEquals(0.5 / 252.0, cal.tau("20170316"), 1e-15);
+		assertEquals(5, ExpiryCalendar.weekdays(LocalDate.of(2017, 3, 1), LocalDate.of(2017, 3, 8)));
+		assertEquals(0, ExpiryCalendar.weekdays(LocalDate.of(2017, 3, 18), LocalDate.of(2017, 3, 20)));
+	}
+
+	@Test
+	public final void testRefreshOptions() {
+		ExpiryCalendar cal = calendar(ExpiryCalendar.Convention.CALENDAR);
+		List<Option> l = new ArrayList<>();
+
+		for (int i = 0; i < 3; i++) {
+			Option o = new Option(55.0, 50.0 + i, 1.0, 0.3, 0.02, 0.0, OptSide.CALL);
+			o.setExpiry("20170415");
+			l.add(o);
+		}
+
+		cal.refresh(l);
+		for (Option o : l)
+			assertEquals(30.5 / 365.0, o.t, 1e-15);
+	}
+
+}
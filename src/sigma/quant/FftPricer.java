@@ -0,0 +1,284 @@
+package sigma.quant;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math.complex.Complex;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+
+/**
+ * Carr-Madan FFT pricer.
+ *
+ * Call prices on a whole grid of log-moneyness m = ln(K / F) are obtained
+ * from the characteristic function of the log return ln(F_T / F) with one
+ * complex FFT of length N:
+ *
+ *   c(m) = exp(-alpha m) / pi * Re sum_j exp(-i v_j m) psi(v_j) w_j
+ *   psi(v) = phi(v - (alpha + 1) i) / (alpha^2 + alpha - v^2 + i (2 alpha + 1) v)
+ *
+ * with v_j = eta j, Simpson weights w_j and the log-moneyness grid spacing
+ * lambda = 2 pi / (N eta) centered on the money. The call price is then
+ * df * F * c(m). Listed strikes are interpolated from the grid with a
+ * four point cubic in log-moneyness, puts follow from put-call parity on
+ * the forward.
+ *
+ * Black-76 is provided to validate the transform, Heston for skew. The
+ * grid depends only on the model and the maturity, not on the forward.
+ *
+ * The pricer keeps its FFT plan and work arrays, it is not thread safe.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class FftPricer {
+
+	public static final int DEFAULT_N = 4096;
+	public static final double DEFAULT_ETA = 0.25;
+	public static final double DEFAULT_ALPHA = 1.5;
+
+	/**
+	 * Characteristic function of the log return ln(F_T / F) in the
+	 * forward measure, so phi(-i) = 1
+	 */
+	public interface Model {
+		Complex phi(Complex u, double t);
+	}
+
+	/**
+	 * Model selection per expiry, eg. a Heston fit per expiry
+	 */
+	public interface ModelPerExpiry {
+		Model get(String expiry);
+	}
+
+	/**
+	 * Black-76, lognormal forward
+	 */
+	public static class Black implements Model {
+		private final double sigma;
+
+		public Black(double sigma) {
+			this.sigma = sigma;
+		}
+
+		@Override
+		public Complex phi(Complex u, double t) {
+			// exp(-sigma^2 t / 2 (i u + u^2))
+			Complex iu = Complex.I.multiply(u);
+			return iu.add(u.multiply(u)).multiply(-0.5 * sigma * sigma * t).exp();
+		}
+	}
+
+	/**
+	 * Heston stochastic volatility, in the formulation of Albrecher et al.
+	 * (the "little Heston trap") which stays on the principal branch of
+	 * the logarithm for long maturities
+	 */
+	public static class Heston implements Model {
+		private final double v0;
+		private final double kappa;
+		private final double theta;
+		private final double xi;
+		private final double rho;
+
+		/**
+		 * @param v0 initial variance
+		 * @param kappa mean reversion speed
+		 * @param theta long run variance
+		 * @param xi volatility of variance
+		 * @param rho correlation of the forward and the variance
+		 */
+		public Heston(double v0, double kappa, double theta, double xi, double rho) {
+			this.v0 = v0;
+			this.kappa = kappa;
+			this.theta = theta;
+			this.xi = xi;
+			this.rho = rho;
+		}
+
+		@Override
+		public Complex phi(Complex u, double t) {
+			final Complex iu = Complex.I.multiply(u);
+			final Complex b = new Complex(kappa, 0.0).subtract(iu.multiply(rho * xi));
+			final Complex d = b.multiply(b).add(iu.add(u.multiply(u)).multiply(xi * xi)).sqrt();
+			final Complex bd = b.subtract(d);
+			final Complex g = bd.divide(b.add(d));
+			final Complex edt = d.multiply(-t).exp();
+			final Complex gedt = Complex.ONE.subtract(g.multiply(edt));
+
+			final Complex c = bd.multiply(t).subtract(gedt.divide(Complex.ONE.subtract(g)).log().multiply(2.0))
+					.multiply(kappa * theta / (xi * xi));
+			final Complex dd = bd.multiply(1.0 / (xi * xi)).multiply(Complex.ONE.subtract(edt).divide(gedt));
+
+			return c.add(dd.multiply(v0)).exp();
+		}
+	}
+
+	private final int n;
+	private final double eta;
+	private final double alpha;
+	private final double lambda;
+	private final double b;
+
+	private final DoubleFFT_1D fft;
+	private final double[] weight;
+	private final double[] work;
+
+	// Call prices per unit forward on the log-moneyness grid
+	private final double[] grid;
+
+	/**
+	 * Pricer with default transform settings
+	 */
+	public FftPricer() {
+		this(DEFAULT_N, DEFAULT_ETA, DEFAULT_ALPHA);
+	}
+
+	/**
+	 * Pricer with given transform settings
+	 *
+	 * @param n number of points, a power of two
+	 * @param eta frequency spacing
+	 * @param alpha damping of the call price
+	 */
+	public FftPricer(int n, double eta, double alpha) {
+		this.n = n;
+		this.eta = eta;
+		this.alpha = alpha;
+		this.lambda = 2 * Math.PI / (n * eta);
+		this.b = 0.5 * n * lambda;
+
+		this.fft = new DoubleFFT_1D(n);
+		this.weight = new double[n];
+		this.work = new double[2 * n];
+		this.grid = new double[n];
+
+		// Simpson weights
+		for (int j = 0; j < n; j++)
+			weight[j] = eta / 3 * (j == 0 ? 1 : j % 2 == 1 ? 4 : 2);
+	}
+
+	/**
+	 * Computes undiscounted call prices per unit forward on the whole
+	 * log-moneyness grid
+	 *
+	 * @param model model
+	 * @param t time to maturity
+	 * @return grid of c(m), owned by the pricer, see moneyness()
+	 */
+	public double[] transform(Model model, double t) {
+		final double a1 = alpha + 1;
+
+		for (int j = 0; j < n; j++) {
+			final double v = eta * j;
+			final Complex phi = model.phi(new Complex(v, -a1), t);
+			final Complex psi = phi.divide(new Complex(alpha * alpha + alpha - v * v, (2 * alpha + 1) * v));
+
+			// exp(i b v) psi w
+			final double c = Math.cos(b * v) * weight[j];
+			final double s = Math.sin(b * v) * weight[j];
+			work[2 * j] = c * psi.getReal() - s * psi.getImaginary();
+			work[2 * j + 1] = s * psi.getReal() + c * psi.getImaginary();
+		}
+
+		fft.complexForward(work);
+
+		for (int u = 0; u < n; u++)
+			grid[u] = Math.exp(-alpha * moneyness(u)) / Math.PI * work[2 * u];
+		return grid;
+	}
+
+	/**
+	 * Log-moneyness of a grid point
+	 *
+	 * @param u grid index
+	 * @return ln(K / F)
+	 */
+	public double moneyness(int u) {
+		return -b + lambda * u;
+	}
+
+	/**
+	 * Prices listed strikes of one expiry with one transform
+	 *
+	 * @param model model
+	 * @param f forward price
+	 * @param t time to maturity
+	 * @param df discount factor to the payment date
+	 * @param k strikes
+	 * @param side sides
+	 * @param out output prices
+	 */
+	public void price(Model model, double f, double t, double df, double[] k, OptSide[] side, double[] out) {
+		transform(model, t);
+
+		for (int i = 0; i < k.length; i++) {
+			double call = df * f * interpolate(Math.log(k[i] / f));
+			out[i] = side[i] == OptSide.CALL ? call : call - df * (f - k[i]);
+		}
+	}
+
+	/**
+	 * Prices a portfolio with one transform per expiry. The forward and
+	 * the discount factor follow the convention of Option.calcVol(), t of
+	 * every option must be set.
+	 *
+	 * @param model model per expiry
+	 * @param options options
+	 * @return price per option
+	 */
+	public double[] price(ModelPerExpiry model, List<Option> options) {
+		double[] out = new double[options.size()];
+
+		for (Map.Entry<String, List<Integer>> e : SurfaceCalibrator.partition(options).entrySet()) {
+			double t = options.get(e.getValue().get(0)).t;
+			transform(model.get(e.getKey()), t);
+
+			for (int i : e.getValue()) {
+				Option o = options.get(i);
+				double df = Math.exp(-o.r * o.t);
+				double f = o.s() / df;
+				double call = df * f * interpolate(Math.log(o.k / f));
+
+				out[i] = o.side == OptSide.CALL ? call : call - df * (f - o.k);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Four point cubic interpolation on the grid of the last transform
+	 *
+	 * @param m log-moneyness
+	 * @return c(m)
+	 */
+	double interpolate(double m) {
+		final double x = (m + b) / lambda;
+		final int i = Math.min(Math.max((int) Math.floor(x), 1), n - 3);
+		final double p = x - i;
+
+		final double y0 = grid[i - 1];
+		final double y1 = grid[i];
+		final double y2 = grid[i + 1];
+		final double y3 = grid[i + 2];
+
+		// Lagrange weights for nodes -1, 0, 1, 2
+		return -p * (p - 1) * (p - 2) / 6 * y0 + (p + 1) * (p - 1) * (p - 2) / 2 * y1
+			   - (p + 1) * p * (p - 2) / 2 * y2 + (p + 1) * p * (p - 1) / 6 * y3;
+	}
+
+	public int getN() {
+		return n;
+	}
+
+	/**
+	 * Returns log-moneyness grid spacing
+	 *
+	 * @return lambda
+	 */
+	public double getSpacing() {
+		return lambda;
+	}
+}
@@ -0,0 +1,91 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math.complex.Complex;
+import org.junit.Test;
+
+public class FftPricerTest {
+
+	private static final double F = 55.0;
+	private static final double DF = 0.99;
+
+	private static double[] strikes() {
+		double[] k = new double[41];
+
+		for (int i = 0; i < k.length; i++)
+			k[i] = 35.0 + i;
+		return k;
+	}
+
+	private static OptSide[] sides(int n) {
+		OptSide[] s = new OptSide[n];
+
+		for (int i = 0; i < n; i++)
+			s[i] = i % 2 == 0 ? OptSide.CALL : OptSide.PUT;
+		return s;
+	}
+
+	@Test
+	public void testBlackAgainstClosedForm() {
+		FftPricer p = new FftPricer();
+		double[] k = strikes();
+		OptSide[] side = sides(k.length);
+		double[] out = new double[k.length];
+
+		for (double t : new double[] {0.1, 0.25, 1.0, 5.0}) {
+			p.price(new FftPricer.Black(0.3), F, t, DF, k, side, out);
+
+			for (int i = 0; i < k.length; i++)
+				assertEquals(DF * ImplVol.blackPrice(F, k[i], 0.3, t, side[i] == OptSide.CALL ? 1.0 : -1.0), out[i], 1e-6);
+		}
+	}
+
+	@Test
+	public void testHeston() {
+		FftPricer p = new FftPricer();
+		double[] k = strikes();
+		OptSide[] side = sides(k.length);
+		double[] out = new double[k.length];
+
+		// Martingale in the forward measure
+		Complex m = new FftPricer.Heston(0.09, 2.0, 0.06, 0.6, -0.7).phi(new Complex(0.0, -1.0), 1.0);
+		assertEquals(1.0, m.getReal(), 1e-12);
+		assertEquals(0.0, m.getImaginary(), 1e-12);
+
+		// Without vol of vol Heston is Black
+		p.price(new FftPricer.Heston(0.09, 2.0, 0.09, 1e-4, 0.0), F, 1.0, DF, k, side, out);
+		for (int i = 0; i < k.length; i++)
+			assertEquals(DF * ImplVol.blackPrice(F, k[i], 0.3, 1.0, side[i] == OptSide.CALL ? 1.0 : -1.0), out[i], 1e-6);
+
+		// Negative correlation gives a downward sloping smile
+		p.price(new FftPricer.Heston(0.09, 2.0, 0.09, 0.6, -0.7), F, 0.5, DF, k, side, out);
+		double low = ImplVol.impliedVolatility(out[0] / DF, F, k[0], 0.5, side[0]);
+		double atm = ImplVol.impliedVolatility(out[20] / DF, F, k[20], 0.5, side[20]);
+		double high = ImplVol.impliedVolatility(out[40] / DF, F, k[40], 0.5, side[40]);
+		assertTrue(low > atm && atm > high);
+	}
+
+	@Test
+	public void testPortfolioPerExpiry() {
+		FftPricer p = new FftPricer();
+		List<Option> options = new ArrayList<>();
+
+		for (double t : new double[] {0.25, 0.5})
+			for (double k = 45.0; k <= 65.0; k += 5.0)
+				for (OptSide side : OptSide.values()) {
+					Option o = new Option(55.0, k, t, 0.3, 0.02, 0.0, side);
+					o.setExpiry(t == 0.25 ? "20170614" : "20170915");
+					options.add(o);
+				}
+
+		double[] price = p.price(e -> new FftPricer.Black(0.3), options);
+		for (int i = 0; i < options.size(); i++) {
+			Option o = options.get(i);
+			assertEquals(o.side == OptSide.CALL ? o.call() : o.put(), price[i], 1e-6);
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package sigma.quant;
+
+/**
+ * Immutable snapshot of option price and greeks, together with the
+ * valuation inputs they were computed from.
+ *
+ * The evaluation is fused: d1, d2, the discount factors and the
+ * CDF and PDF values are computed once and shared by all the greeks.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ */
+public final class Greeks {
+
+	// Layout of the evaluate() output vector
+	public static final int PRICE = 0;
+	public static final int DELTA = 1;
+	public static final int GAMMA = 2;
+	public static final int VEGA  = 3;
+	public static final int THETA = 4;
+	public static final int CHARM = 5;
+	public static final int THEGA = 6;
+	public static final int COLOR = 7;
+	public static final int SPEED = 8;
+	public static final int COUNT = 9;
+
+	// Inputs
+	private final double s;
+	private final double k;
+	private final double t;
+	private final double sigma;
+	private final double r;
+	private final double d;
+	private final OptSide side;
+
+	// Outputs
+	private final double price;
+	private final double delta;
+	private final double gamma;
+	private final double vega;
+	private final double theta;
+	private final double charm;
+	private final double thega;
+	private final double color;
+	private final double speed;
+
+	/**
+	 * Computes the snapshot.
+	 *
+	 * @param s Spot price
+	 * @param k Strike price
+	 * @param t Time to maturity
+	 * @param sigma Volatility
+	 * @param r Risk free interest rate
+	 * @param d Dividend rate
+	 * @param side Option side
+	 */
+	public Greeks(double s, double k, double t, double sigma, double r, double d, OptSide side) {
+		double[] out = new double[COUNT];
+
+		evaluate(s, k, t, sigma, r, d, side == OptSide.CALL, out);
+
+		this.s = s;
+		this.k = k;
+		this.t = t;
+		this.sigma = sigma;
+		this.r = r;
+		this.d = d;
+		this.side = side;
+
+		price = out[PRICE];
+		delta = out[DELTA];
+		gamma = out[GAMMA];
+		vega  = out[VEGA];
+		theta = out[THETA];
+		charm = out[CHARM];
+		thega = out[THEGA];
+		color = out[COLOR];
+		speed = out[SPEED];
+	}
+
+	/**
+	 * Fused Black-Scholes evaluation of price and greeks.
+	 * Theta, charm and thega are derivatives with respect to calendar
+	 * time, color is the textbook d gamma / d time to maturity.
+	 *
+	 * @param s Spot price
+	 * @param k Strike price
+	 * @param t Time to maturity
+	 * @param sigma Volatility
+	 * @param r Risk free interest rate
+	 * @param d Dividend rate
+	 * @param call true for call, false for put
+	 * @param out output vector of at least COUNT elements
+	 */
+	static void evaluate(double s, double k, double t, double sigma, double r, double d, boolean call, double[] out) {
+		evaluate(s, k, t, sigma, r, d, call, CdfAccuracy.CODY, out);
+	}
+
+	/**
+	 * Fused Black-Scholes evaluation with given normal CDF accuracy
+	 *
+	 * @param s Spot price
+	 * @param k Strike price
+	 * @param t Time to maturity
+	 * @param sigma Volatility
+	 * @param r Risk free interest rate
+	 * @param d Dividend rate
+	 * @param call true for call, false for put
+	 * @param acc normal CDF and PDF accuracy
+	 * @param out output vector of at least COUNT elements
+	 */
+	static void evaluate(double s, double k, double t, double sigma, double r, double d, boolean call,
+			CdfAccuracy acc, double[] out) {
+		final double sqt = Math.sqrt(t);
+		final double st = sigma * sqt;
+		final double d1 = (Math.log(s / k) + t * (r + 0.5 * sigma * sigma)) / st;
+		final double d2 = d1 - st;
+
+		final double nd1 = acc.cdf(d1);
+		final double nd2 = acc.cdf(d2);
+		final double pd1 = acc.pdf(d1);
+		final double edt = Math.exp(-d * t);
+		final double ert = Math.exp(-r * t);
+
+		// Shared by charm, thega and color
+		final double drift = (2 * (r - d) * t - d2 * st) / st;
+
+		double g = edt * pd1 / (s * st);
+		if (Double.isNaN(g))
+			g = 0.0;
+
+		final double callPrice = s * nd1 - ert * k * nd2;
+		final double thetaX = -edt * (s * pd1 * sigma) / (2 * sqt);
+		final double thetaY = r * k * ert;
+		final double thetaZ = d * s * edt;
+		final double charmX = d * edt;
+		final double charmY = edt * pd1 * drift / (2 * t);
+		final double thegaX = -(s * sigma * pd1) / (4 * t * sqt) * (1 + drift * d1);
+		final double thegaY = r * r * k * ert;
+		final double thegaZ = d * d * s * edt;
+		final double thegaU = r * s * edt * pd1 * (drift / (2 * t) - sigma / (2 * sqt));
+
+		if (call) {
+			out[PRICE] = callPrice;
+			out[DELTA] = edt * nd1;
+			out[THETA] = thetaX - thetaY * nd2 + thetaZ * nd1;
+			out[CHARM] = charmX * nd1 - charmY;
+			out[THEGA] = thegaX - thegaY * nd2 + thegaZ * nd1 + thegaU;
+		} else {
+			out[PRICE] = callPrice - s + k * ert;
+			out[DELTA] = -edt * (1 - nd1);
+			out[THETA] = thetaX + thetaY * (1 - nd2) - thetaZ * (1 - nd1);
+			out[CHARM] = -charmX * (1 - nd1) - charmY;
+			out[THEGA] = thegaX + thegaY * (1 - nd2) - thegaZ * (1 - nd1) + thegaU;
+		}
+
+		out[GAMMA] = g;
+		out[VEGA]  = s * edt * pd1 * sqt;
+		out[COLOR] = -edt * pd1 / (2 * s * t * st) * (2 * d * t + 1 + drift * d1);
+		out[SPEED] = -g / s * (d1 / st + 1);
+	}
+
+	/**
+	 * Checks whether the snapshot was computed from the given inputs
+	 *
+	 * @return true if all inputs match
+	 */
+	boolean isFor(double s, double k, double t, double sigma, double r, double d, OptSide side) {
+		return Double.compare(this.s, s) == 0 &&
+			   Double.compare(this.k, k) == 0 &&
+			   Double.compare(this.t, t) == 0 &&
+			   Double.compare(this.sigma, sigma) == 0 &&
+			   Double.compare(this.r, r) == 0 &&
+			   Double.compare(this.d, d) == 0 &&
+			   this.side == side;
+	}
+
+	/**
+	 * Checks whether the snapshot is for the same contract and volatility,
+	 * spot and time to maturity may differ
+	 *
+	 * @return true if the other inputs match
+	 */
+	boolean isForTerms(double k, double sigma, double r, double d, OptSide side) {
+		return Double.compare(this.k, k) == 0 &&
+			   Double.compare(this.sigma, sigma) == 0 &&
+			   Double.compare(this.r, r) == 0 &&
+			   Double.compare(this.d, d) == 0 &&
+			   this.side == side;
+	}
+
+	public double getSpot() {
+		return s;
+	}
+
+	public double getTau() {
+		return t;
+	}
+
+	public double getSigma() {
+		return sigma;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public double getDelta() {
+		return delta;
+	}
+
+	public double getGamma() {
+		return gamma;
+	}
+
+	public double getVega() {
+		return vega;
+	}
+
+	public double getTheta() {
+		return theta;
+	}
+
+	public double getCharm() {
+		return charm;
+	}
+
+	public double getThega() {
+		return thega;
+	}
+
+	public double getColor() {
+		return color;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+}
@@ -16,9 +16,9 @@ package sigma.quant;
 //
 
 public class ImplVol {
-	private final static double DBL_EPSILON = 0.00000000001;
+	private final static double DBL_EPSILON = Math.ulp(1.0);
 	private final static double DBL_MAX = Double.MAX_VALUE;
-	private final static double DBL_MIN = Double.MIN_VALUE;
+	private final static double DBL_MIN = Double.MIN_NORMAL;
 	
 	private final static double TWO_PI                        = 6.283185307179586476925286766559005768394338798750;
 	private final static double SQRT_PI_OVER_TWO              = 1.253314137315500251207882642405522626503493370305; // sqrt(pi/2) to avoid misinterpretation.
@@ -43,16 +43,23 @@ public class ImplVol {
 
 	private final static double VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_BELOW_INTRINSIC = -DBL_MAX;
 	private final static double VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_ABOVE_MAXIMUM = DBL_MAX;
+	
+	/**
+	 * Returned when the option price is below intrinsic value
+	 */
+	public final static double BELOW_INTRINSIC = VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_BELOW_INTRINSIC;
+	
+	/**
+	 * Returned when the option price is at or above its maximum (forward for a call, strike for a put)
+	 */
+	public final static double ABOVE_MAXIMUM = VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_ABOVE_MAXIMUM;
 
-	boolean is_below_horizon(double x){ return Math.abs(x) < DENORMALISATION_CUTOFF; } // This weeds out denormalised (a.k.a. 'subnormal') numbers.
-
-	static long implied_volatility_maximum_iterations =  2; // (DBL_DIG*20)/3 ≈ 100 . Only needed when the iteration effectively alternates Householder/Halley/Newton steps and binary nesting due to roundoff truncation.
+	static boolean is_below_horizon(double x){ return Math.abs(x) < DENORMALISATION_CUTOFF; } // This weeds out denormalised (a.k.a. 'subnormal') numbers.
 
-    static long implied_volatility_output_type = 0;
-	double implied_volatility_output(int count, double volatility){ return implied_volatility_output_type>0 ? count : volatility; }
+	// Solver configuration. These are constants so that the solver holds no mutable state and is thread-safe.
+	static final int implied_volatility_maximum_iterations =  2; // (DBL_DIG*20)/3 ≈ 100 . Only needed when the iteration effectively alternates Householder/Halley/Newton steps and binary nesting due to roundoff truncation.
+	static final int implied_volatility_householder_method_order = 4;
 
-    static long implied_volatility_householder_method_order = 4;
-    
     /**
      * 
      * @param newton
@@ -60,47 +67,84 @@ public class ImplVol {
      * @param hh3
      * @return
      */
-    double householder_factor(double newton, double halley, double hh3){
+    static double householder_factor(double newton, double halley, double hh3){
 	      return implied_volatility_householder_method_order > 3 ? (1+0.5*halley*newton)/(1+newton*(halley+hh3*newton/6)) : 
 	    	  ( implied_volatility_householder_method_order > 2 ? 1/(1+0.5*halley*newton) : 1 );
 	   }
 
-    /**
-     * 
-     * @param t
-     * @return
-     */
-	double set_implied_volatility_maximum_iterations(double t){
-	   int i = (int)t;
-	   if (i>=0) {
-	      implied_volatility_maximum_iterations = i;
-	   }
-	   return implied_volatility_maximum_iterations;
+	/**
+	 * Implied Black volatility from an undiscounted option price.
+	 * Stateless and thread-safe.
+	 * 
+	 * @param price undiscounted option price
+	 * @param F forward (futures) price
+	 * @param K strike
+	 * @param T time to expiry in years
+	 * @param q 1 for call, -1 for put
+	 * @return implied volatility, BELOW_INTRINSIC or ABOVE_MAXIMUM if the price is out of bounds
+	 */
+	public static double impliedVolatility(double price, double F, double K, double T, double q) {
+		return implied_volatility_from_a_transformed_rational_guess(price, F, K, T, q);
 	}
 
 	/**
+	 * Implied Black volatility from an undiscounted option price.
 	 * 
-	 * @param t
-	 * @return
+	 * @param price undiscounted option price
+	 * @param F forward (futures) price
+	 * @param K strike
+	 * @param T time to expiry in years
+	 * @param side option side
+	 * @return implied volatility, BELOW_INTRINSIC or ABOVE_MAXIMUM if the price is out of bounds
 	 */
-	double set_implied_volatility_output_type(double t){
-	   int i = (int)t;
-	   implied_volatility_output_type = i;
-	   return implied_volatility_output_type;
-	} 
+	public static double impliedVolatility(double price, double F, double K, double T, OptSide side) {
+		return impliedVolatility(price, F, K, T, side == OptSide.CALL ? 1.0 : -1.0);
+	}
 
 	/**
+	 * Batch variant of impliedVolatility(). All arrays must be of the
+	 * same length, results are written to vol.
 	 * 
-	 * @param t
-	 * @return
+	 * @param price undiscounted option prices
+	 * @param F forward prices
+	 * @param K strikes
+	 * @param T times to expiry
+	 * @param q 1 for call, -1 for put
+	 * @param vol output volatilities
 	 */
-	double set_implied_volatility_householder_method_order(double t){
-	   int i = (int)t;
-	   if (i>=0) {
-	      implied_volatility_householder_method_order = i;
-	   }
-	   return implied_volatility_householder_method_order;
-	} 
+	public static void impliedVolatility(double[] price, double[] F, double[] K, double[] T, double[] q, double[] vol) {
+		int n = price.length;
+		
+		if (F.length != n || K.length != n || T.length != n || q.length != n || vol.length < n)
+			throw new IllegalArgumentException("Input arrays differ in length");
+		
+		for (int i = 0; i < n; i++)
+			vol[i] = implied_volatility_from_a_transformed_rational_guess(price[i], F[i], K[i], T[i], q[i]);
+	}
+
+	/**
+	 * Undiscounted Black price
+	 * 
+	 * @param F forward price
+	 * @param K strike
+	 * @param sigma volatility
+	 * @param T time to expiry
+	 * @param q 1 for call, -1 for put
+	 * @return undiscounted price
+	 */
+	public static double blackPrice(double F, double K, double sigma, double T, double q) {
+		return black(F, K, sigma, T, q);
+	}
+
+	/**
+	 * Checks whether a value returned by impliedVolatility() is a real volatility
+	 * 
+	 * @param vol solver output
+	 * @return true unless vol is one of the out of bounds signals or not a number
+	 */
+	public static boolean isValid(double vol) {
+		return vol != BELOW_INTRINSIC && vol != ABOVE_MAXIMUM && !Double.isNaN(vol);
+	}
 
 	/**
 	 * Normalised intrinsic
@@ -109,7 +153,7 @@ public class ImplVol {
 	 * @param q
 	 * @return
 	 */
-	double normalised_intrinsic(double x, double q /* q=±1 */){
+	static double normalised_intrinsic(double x, double q /* q=±1 */){
 	   if (q*x<=0)
 	      return 0;
 	   double x2=x*x;
@@ -119,7 +163,7 @@ public class ImplVol {
 	   return Math.abs(Math.max((q<0?-1:1)*(b_max-one_over_b_max),0.));
 	}
 
-	double normalised_intrinsic_call(double x){ return normalised_intrinsic(x,1); }
+	static double normalised_intrinsic_call(double x){ return normalised_intrinsic(x,1); }
 
 	/**
 	 * 	Asymptotic expansion of
@@ -148,7 +192,7 @@ public class ImplVol {
 	 * @param t
 	 * @return
 	 */
-	double asymptotic_expansion_of_normalised_black_call(double h, double t){
+	static double asymptotic_expansion_of_normalised_black_call(double h, double t){
 	   double e=(t/h)*(t/h), r=((h+t)*(h-t)), q=(h/r)*(h/r);
 	   // 17th order asymptotic expansion of A(h,t) in q, sufficient for Φ(h) [and thus y(h)] to have relative accuracy of 1.64E-16 for h <= η  with  η:=-10.
 	   double asymptotic_expansion_sum = (2.0+q*(-6.0E0-2.0*e+3.0*q*(1.0E1+e*(2.0E1+2.0*e)+5.0*q*(-1.4E1+e*(-7.0E1+e*(-4.2E1-2.0*e))+
@@ -230,7 +274,7 @@ public class ImplVol {
 	 * @param t
 	 * @return
 	 */
-	double normalised_black_call_using_erfcx(double h, double t) {
+	static double normalised_black_call_using_erfcx(double h, double t) {
 
 	   double b = 0.5 * Math.exp(-0.5*(h*h+t*t)) * ( ErfCody.erfcx_cody(-ONE_OVER_SQRT_TWO*(h+t)) - ErfCody.erfcx_cody(-ONE_OVER_SQRT_TWO*(h-t)) );
 	   return Math.abs(Math.max(b,0.0));
@@ -255,7 +299,7 @@ public class ImplVol {
 	 * @param t
 	 * @return
 	 */
-	double small_t_expansion_of_normalised_black_call(double h, double t){
+	static double small_t_expansion_of_normalised_black_call(double h, double t){
 	   // Y(h) := Φ(h)/φ(h) = √(π/2)·erfcx(-h/√2)
 	   // a := 1+h·Y(h)  --- Note that due to h<0, and h·Y(h) -> -1 (from above) as h -> -∞, we also have that a>0 and a -> 0 as h -> -∞
 	   // w := t² , h2 := h²
@@ -277,7 +321,7 @@ public class ImplVol {
 	 * @param s
 	 * @return
 	 */
-	double normalised_black_call_using_norm_cdf(double x, double s){
+	static double normalised_black_call_using_norm_cdf(double x, double s){
 	   double h = x/s, t = 0.5*s, b_max = Math.exp(0.5*x), b = NormalDistribution.norm_cdf(h + t) * b_max - NormalDistribution.norm_cdf(h - t) / b_max;
 	   return Math.abs(Math.max(b,0.0));
 	}
@@ -307,7 +351,7 @@ public class ImplVol {
 	 * @param s
 	 * @return
 	 */
-	double normalised_black_call_with_optimal_use_of_codys_functions(double x, double s){
+	static double normalised_black_call_with_optimal_use_of_codys_functions(double x, double s){
 	   double codys_threshold = 0.46875, h = x/s, t = 0.5*s, q1 = -ONE_OVER_SQRT_TWO*(h+t), q2 = -ONE_OVER_SQRT_TWO*(h-t);
 	   double two_b;
 	   if ( q1 < codys_threshold )
@@ -323,7 +367,7 @@ public class ImplVol {
 	   return Math.abs(Math.max(0.5*two_b,0.0));
 	}
 
-	double normalised_black_call(double x, double s) {
+	static double normalised_black_call(double x, double s) {
 	   if (x>0)
 	      return normalised_intrinsic_call(x)+normalised_black_call(-x,s); // In the money.
 	   if (s<=Math.abs(x)*DENORMALISATION_CUTOFF)
@@ -351,7 +395,7 @@ public class ImplVol {
 	 * @param x
 	 * @return
 	 */
-	double square(double x){ return x*x; }
+	static double square(double x){ return x*x; }
 
 	/**
 	 * Normalised vega calculation
@@ -360,7 +404,7 @@ public class ImplVol {
 	 * @param s
 	 * @return
 	 */
-	double normalised_vega(double x, double s) {
+	static double normalised_vega(double x, double s) {
 	   double ax = Math.abs(x);
 	   return (ax<=0) ? ONE_OVER_SQRT_TWO_PI*Math.exp(-0.125*s*s) : ( (s<=0 || s<=ax*SQRT_DBL_MIN) ? 0 : ONE_OVER_SQRT_TWO_PI*Math.exp(-0.5*(square(x/s)+square(0.5*s))) );
 	}
@@ -373,7 +417,7 @@ public class ImplVol {
 	 * @param q
 	 * @return
 	 */
-	double normalised_black(double x, double s, double q /* q=±1 */) {  return normalised_black_call(q<0?-x:x,s); /* Reciprocal-strike call-put equivalence */ }
+	static double normalised_black(double x, double s, double q /* q=±1 */) {  return normalised_black_call(q<0?-x:x,s); /* Reciprocal-strike call-put equivalence */ }
 
 	/**
 	 * B&S
@@ -385,7 +429,7 @@ public class ImplVol {
 	 * @param q
 	 * @return
 	 */
-	double black(double F, double K, double sigma, double T, double q /* q=±1 */) {
+	static double black(double F, double K, double sigma, double T, double q /* q=±1 */) {
 	   double intrinsic = Math.abs(Math.max((q<0?K-F:F-K),0.0));
 	   // Map in-the-money to out-of-the-money
 	   if (q*(F-K)>0)
@@ -394,7 +438,7 @@ public class ImplVol {
 	}
 
 	// #ifdef COMPUTE_LOWER_MAP_DERIVATIVES_INDIVIDUALLY
-	double f_lower_map(double x, double s){ 
+	static double f_lower_map(double x, double s){ 
 	   if (is_below_horizon(x))
 	      return 0;
 	   if (is_below_horizon(s))
@@ -402,13 +446,13 @@ public class ImplVol {
 	   double z=SQRT_ONE_OVER_THREE*Math.abs(x)/s, Phi=NormalDistribution.norm_cdf(-z);
 	   return TWO_PI_OVER_SQRT_TWENTY_SEVEN*Math.abs(x)*(Phi*Phi*Phi);
 	}
-	double d_f_lower_map_d_beta(double x,double s){
+	static double d_f_lower_map_d_beta(double x,double s){
 	   if (is_below_horizon(s))
 	      return 1;
 	   double z=SQRT_ONE_OVER_THREE*Math.abs(x)/s, y = z*z, Phi=NormalDistribution.norm_cdf(-z);
 	   return TWO_PI*y*(Phi*Phi) * Math.exp(y+0.125*s*s);
 	}
-	double d2_f_lower_map_d_beta2(double x,double s){
+	static double d2_f_lower_map_d_beta2(double x,double s){
 	   double ax=Math.abs(x), z=SQRT_ONE_OVER_THREE*ax/s, y = z*z, s2=s*s, Phi=NormalDistribution.norm_cdf(-z), phi=NormalDistribution.norm_pdf(z);
 	   return PI_OVER_SIX * y/(s2*s) * Phi * ( 8*SQRT_THREE*s*ax + (3*s2*(s2-8)-8*x*x)*Phi/phi ) * Math.exp(2*y+0.25*s2);
 	}
@@ -439,18 +483,18 @@ public class ImplVol {
 	#endif
 	*/
 
-	double inverse_f_lower_map(double x,double f){
+	static double inverse_f_lower_map(double x,double f){
 	   return is_below_horizon(f) ? 0 : Math.abs(x/(SQRT_THREE*NormalDistribution.inverse_norm_cdf( Math.pow( f/(TWO_PI_OVER_SQRT_TWENTY_SEVEN*Math.abs(x)) , 1./3.) ))); 
 	}
 
 	// #ifdef COMPUTE_UPPER_MAP_DERIVATIVES_INDIVIDUALLY
-	double f_upper_map(double s){
+	static double f_upper_map(double s){
 	   return NormalDistribution.norm_cdf(-0.5*s);
 	}
-	double d_f_upper_map_d_beta(double x,double s){
+	static double d_f_upper_map_d_beta(double x,double s){
 	   return is_below_horizon(x) ? -0.5 : -0.5*Math.exp(0.5*square(x/s));
 	}
-	double d2_f_upper_map_d_beta2(double x,double s){
+	static double d2_f_upper_map_d_beta2(double x,double s){
 	   if (is_below_horizon(x))
 	      return 0;
 	   double w = square(x/s);
@@ -480,7 +524,7 @@ public class ImplVol {
 	#endif
 	*/
 
-	double inverse_f_upper_map(double f){
+	static double inverse_f_upper_map(double f){
 	   return -2.*NormalDistribution.inverse_norm_cdf(f);
 	}
 
@@ -505,7 +549,7 @@ public class ImplVol {
 	 * @param N
 	 * @return
 	 */
-	double unchecked_normalised_implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(double beta, double x, double q /* q=±1 */, int N){
+	static double unchecked_normalised_implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(double beta, double x, double q /* q=±1 */, int N){
 	   // Subtract intrinsic.
 	   if (q*x>0) {
 	      beta = Math.abs(Math.max(beta-normalised_intrinsic(x, q),0.));
@@ -517,12 +561,12 @@ public class ImplVol {
 	      q = -q;
 	   }
 	   if (beta<=0) // For negative or zero prices we return 0.
-	      return implied_volatility_output(0,0);
+	      return 0;
 	   if (beta<DENORMALISATION_CUTOFF) // For positive but denormalised (a.k.a. 'subnormal') prices, we return 0 since it would be impossible to converge to full machine accuracy anyway.
-	      return implied_volatility_output(0,0);
+	      return 0;
 	      double b_max = Math.exp(0.5*x);
 	   if (beta>=b_max)
-	      return implied_volatility_output(0,VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_ABOVE_MAXIMUM);
+	      return VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_ABOVE_MAXIMUM;
 	   int iterations=0, direction_reversal_count = 0;
 	   double f=-DBL_MAX, s=-DBL_MAX, ds=s, ds_previous=0, s_left=DBL_MIN, s_right=DBL_MAX;
 	   // The temptation is great to use the optimised form b_c = exp(x/2)/2-exp(-x/2)·Phi(sqrt(-2·x)) but that would require implementing all of the above types of round-off and over/underflow handling for this expression, too.
@@ -534,9 +578,9 @@ public class ImplVol {
 	         double f_lower_map_l, d_f_lower_map_l_d_beta, d2_f_lower_map_l_d_beta2;
 	         //compute_f_lower_map_and_first_two_derivatives(x,s_l,f_lower_map_l,d_f_lower_map_l_d_beta,d2_f_lower_map_l_d_beta2);
 	         
-	         f_lower_map_l   = f_lower_map(x,s);
-	         d_f_lower_map_l_d_beta  = d_f_lower_map_d_beta(x,s);
-	         d2_f_lower_map_l_d_beta2 = d2_f_lower_map_d_beta2(x,s);
+	         f_lower_map_l   = f_lower_map(x,s_l);
+	         d_f_lower_map_l_d_beta  = d_f_lower_map_d_beta(x,s_l);
+	         d2_f_lower_map_l_d_beta2 = d2_f_lower_map_d_beta2(x,s_l);
 	         
 	         
 	         double r_ll=RationalCubic.convex_rational_cubic_control_parameter_to_fit_second_derivative_at_right_side(0.,b_l,0.,f_lower_map_l,1.,
@@ -586,7 +630,7 @@ public class ImplVol {
 	            }
 	            s += ds = Math.max(-0.5*s , ds );
 	         }
-	         return implied_volatility_output(iterations,s);
+	         return s;
 	      } else {
 	         double v_l = normalised_vega(x, s_l), r_lm = RationalCubic.convex_rational_cubic_control_parameter_to_fit_second_derivative_at_right_side(b_l,b_c,s_l,s_c,1/v_l,1/v_c,0.0,false);
 	         s = RationalCubic.rational_cubic_interpolation(beta,b_l,b_c,s_l,s_c,1/v_l,1/v_c,r_lm);
@@ -604,9 +648,9 @@ public class ImplVol {
 	         double f_upper_map_h, d_f_upper_map_h_d_beta, d2_f_upper_map_h_d_beta2;
 	         // compute_f_upper_map_and_first_two_derivatives(x,s_h,f_upper_map_h,d_f_upper_map_h_d_beta,d2_f_upper_map_h_d_beta2);
 	         
-	         f_upper_map_h   = f_upper_map(s);
-	         d_f_upper_map_h_d_beta  = d_f_upper_map_d_beta(x,s);
-	         d2_f_upper_map_h_d_beta2 = d2_f_upper_map_d_beta2(x,s);
+	         f_upper_map_h   = f_upper_map(s_h);
+	         d_f_upper_map_h_d_beta  = d_f_upper_map_d_beta(x,s_h);
+	         d2_f_upper_map_h_d_beta2 = d2_f_upper_map_d_beta2(x,s_h);
 		   
 		   
 	         if ( d2_f_upper_map_h_d_beta2>-SQRT_DBL_MAX && d2_f_upper_map_h_d_beta2<SQRT_DBL_MAX ){
@@ -656,7 +700,7 @@ public class ImplVol {
 	               }
 	               s += ds = Math.max(-0.5*s , ds );
 	            }
-	            return implied_volatility_output(iterations,s);
+	            return s;
 	         }
 	      }
 	   }
@@ -685,16 +729,16 @@ public class ImplVol {
 	      double newton = (beta-b)/bp, halley = square(x/s)/s-s/4, hh3 = halley*halley-3*square(x/(s*s))-0.25;
 	      s += ds = Math.max(-0.5*s , newton * householder_factor(newton,halley,hh3) );
 	   }
-	   return implied_volatility_output(iterations,s);
+	   return s;
 	}
 
-	double implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(double price, double F, double K, double T, double q /* q=±1 */, int N){
+	static double implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(double price, double F, double K, double T, double q /* q=±1 */, int N){
 	   double intrinsic = Math.abs(Math.max((q<0?K-F:F-K),0.0));
 	   if (price<intrinsic)
-	      return implied_volatility_output(0,VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_BELOW_INTRINSIC);
+	      return VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_BELOW_INTRINSIC;
 	   double max_price = (q<0?K:F);
 	   if (price>=max_price)
-	      return implied_volatility_output(0,VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_ABOVE_MAXIMUM);
+	      return VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_ABOVE_MAXIMUM;
 	   double x = Math.log(F/K);
 	   // Map in-the-money to out-of-the-money
 	   if (q*x>0) {
@@ -704,22 +748,22 @@ public class ImplVol {
 	   return unchecked_normalised_implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(price/(Math.sqrt(F)*Math.sqrt(K)), x, q, N)/Math.sqrt(T);
 	}
 
-	double implied_volatility_from_a_transformed_rational_guess(double price, double F, double K, double T, double q /* q=±1 */){
-	   return implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(price,F,K,T,q, (int)implied_volatility_maximum_iterations);
+	static double implied_volatility_from_a_transformed_rational_guess(double price, double F, double K, double T, double q /* q=±1 */){
+	   return implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(price,F,K,T,q, implied_volatility_maximum_iterations);
 	}
 
-	double normalised_implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(double beta, double x, double q /* q=±1 */, int N){
+	static double normalised_implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(double beta, double x, double q /* q=±1 */, int N){
 	   // Map in-the-money to out-of-the-money
 	   if (q*x>0) {
 	      beta -= normalised_intrinsic(x, q);
 	      q = -q;
 	   }
 	   if (beta<0)
-	      return implied_volatility_output(0,VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_BELOW_INTRINSIC);
+	      return VOLATILITY_VALUE_TO_SIGNAL_PRICE_IS_BELOW_INTRINSIC;
 	   return unchecked_normalised_implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(beta, x, q, N);
 	}
 
-	double normalised_implied_volatility_from_a_transformed_rational_guess(double beta, double x, double q /* q=±1 */){
-	   return normalised_implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(beta,x,q,(int)implied_volatility_maximum_iterations);
+	static double normalised_implied_volatility_from_a_transformed_rational_guess(double beta, double x, double q /* q=±1 */){
+	   return normalised_implied_volatility_from_a_transformed_rational_guess_with_limited_iterations(beta,x,q,implied_volatility_maximum_iterations);
 	}
 }
@@ -0,0 +1,48 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ImplVolTest {
+
+	private static final double F = 55.0;
+
+	@Test
+	public final void testRoundTrip() {
+		for (double k = 30.0; k <= 90.0; k += 2.5)
+			for (double t : new double[] {0.02, 0.25, 1.0})
+				for (double sigma : new double[] {0.1, 0.35, 0.9})
+					for (double q : new double[] {1.0, -1.0}) {
+						double price = ImplVol.blackPrice(F, k, sigma, t, q);
+						if (price - Math.max(q * (F - k), 0.0) < 1e-8)
+							continue;
+						assertEquals(sigma, ImplVol.impliedVolatility(price, F, k, t, q), 1e-10);
+					}
+	}
+
+	@Test
+	public final void testBatch() {
+		double[] k = {45.0, 55.0, 65.0};
+		double[] f = {F, F, F};
+		double[] t = {0.5, 0.5, 0.5};
+		double[] q = {-1.0, 1.0, 1.0};
+		double[] price = new double[3];
+		double[] vol = new double[3];
+
+		for (int i = 0; i < 3; i++)
+			price[i] = ImplVol.blackPrice(f[i], k[i], 0.3, t[i], q[i]);
+
+		ImplVol.impliedVolatility(price, f, k, t, q, vol);
+		for (int i = 0; i < 3; i++)
+			assertEquals(0.3, vol[i], 1e-12);
+	}
+
+	@Test
+	public final void testOutOfBounds() {
+		assertEquals(ImplVol.BELOW_INTRINSIC, ImplVol.impliedVolatility(4.0, F, 50.0, 0.5, OptSide.CALL), 0.0);
+		assertEquals(ImplVol.ABOVE_MAXIMUM, ImplVol.impliedVolatility(F, F, 50.0, 0.5, OptSide.CALL), 0.0);
+		assertFalse(ImplVol.isValid(ImplVol.impliedVolatility(-1.0, F, 50.0, 0.5, OptSide.PUT)));
+	}
+
+}
@@ -0,0 +1,214 @@
+package sigma.quant;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Implied volatility with result reuse.
+ *
+ * Between ticks most quotes do not change, and the ones that do usually
+ * move only a little. Quote keeps the inputs and the result of the last
+ * solve of an option. Option.calcVol() returns the stored result when
+ * the inputs are unchanged, and warm starts from the stored volatility
+ * when they are close (see solve()). The cache instance itself is a
+ * bounded LRU map for ad-hoc queries that are not tied to an option.
+ *
+ * Prices are undiscounted and F is the forward, as in ImplVol.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class ImpliedVolCache {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	// Largest relative forward and maturity change for a warm start
+	static final double MAX_FORWARD_MOVE = 0.02;
+	static final double MAX_TAU_MOVE = 0.05;
+
+	// Newton iterations before falling back to the full solver
+	static final int MAX_ITERATIONS = 4;
+
+	// Relative volatility step treated as converged
+	static final double TOLERANCE = 1e-12;
+
+	private static final double SQRT_TWO_PI = 2.506628274631000502;
+
+	private final Map<Quote, Quote> lru;
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * Cache with the default capacity
+	 */
+	public ImpliedVolCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Cache with given capacity
+	 *
+	 * @param capacity maximum number of quotes kept
+	 */
+	public ImpliedVolCache(final int capacity) {
+		this.lru = new LinkedHashMap<Quote, Quote>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Quote, Quote> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Implied volatility of a quote, solved once per distinct quote
+	 *
+	 * @param price undiscounted option price
+	 * @param F forward price
+	 * @param K strike
+	 * @param T time to expiry in years
+	 * @param side option side
+	 * @return implied volatility or one of the ImplVol error values
+	 */
+	public synchronized double vol(double price, double F, double K, double T, OptSide side) {
+		Quote key = new Quote(price, F, K, T, side, 0.0, null);
+		Quote q = lru.get(key);
+
+		if (q != null) {
+			hits++;
+			return q.vol;
+		}
+
+		misses++;
+		key = new Quote(price, F, K, T, side, ImplVol.impliedVolatility(price, F, K, T, side), null);
+		lru.put(key, key);
+		return key.vol;
+	}
+
+	public synchronized int size() {
+		return lru.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized void clear() {
+		lru.clear();
+	}
+
+	/**
+	 * Implied volatility, warm started from the previous solve when the
+	 * quote has moved only slightly. Newton steps on Black's price are
+	 * taken from the previous volatility; if they do not converge the
+	 * full rational guess solver of ImplVol is used.
+	 *
+	 * @param price undiscounted option price
+	 * @param F forward price
+	 * @param K strike
+	 * @param T time to expiry in years
+	 * @param side option side
+	 * @param last previous solve of the option, may be null
+	 * @return implied volatility or one of the ImplVol error values
+	 */
+	static double solve(double price, double F, double K, double T, OptSide side, Quote last) {
+		if (last != null && last.isNear(F, K, T, side)) {
+			double vol = newton(price, F, K, T, side == OptSide.CALL ? 1.0 : -1.0, last.vol);
+			if (vol > 0)
+				return vol;
+		}
+		return ImplVol.impliedVolatility(price, F, K, T, side);
+	}
+
+	/**
+	 * Newton iteration on Black's price
+	 *
+	 * @return volatility, or -1 if the iteration did not converge
+	 */
+	private static double newton(double price, double F, double K, double T, double q, double vol) {
+		final double sqt = Math.sqrt(T);
+		final double lfk = Math.log(F / K);
+
+		for (int i = 0; i < MAX_ITERATIONS; i++) {
+			final double st = vol * sqt;
+			final double d1 = lfk / st + 0.5 * st;
+			final double vega = F * Math.exp(-0.5 * d1 * d1) / SQRT_TWO_PI * sqt;
+			final double step = (ImplVol.blackPrice(F, K, vol, T, q) - price) / vega;
+
+			if (!(vega > 0) || Double.isNaN(step))
+				return -1.0;
+
+			vol -= step;
+			if (!(vol > 0))
+				return -1.0;
+			if (Math.abs(step) <= TOLERANCE * vol)
+				return vol;
+		}
+		return -1.0;
+	}
+
+	/**
+	 * Inputs and result of one implied volatility solve
+	 */
+	static final class Quote {
+		final double price;
+		final double F;
+		final double K;
+		final double T;
+		final OptSide side;
+		final double vol;
+		final SolverStatus status;
+
+		Quote(double price, double F, double K, double T, OptSide side, double vol, SolverStatus status) {
+			this.price = price;
+			this.F = F;
+			this.K = K;
+			this.T = T;
+			this.side = side;
+			this.vol = vol;
+			this.status = status;
+		}
+
+		/**
+		 * Checks if the quote has exactly these inputs
+		 */
+		boolean matches(double price, double F, double K, double T, OptSide side) {
+			return this.price == price && this.F == F && this.K == K && this.T == T && this.side == side;
+		}
+
+		/**
+		 * Checks if the quote is a usable starting point for these inputs
+		 */
+		boolean isNear(double F, double K, double T, OptSide side) {
+			return status == SolverStatus.SUCCESS && vol > 0 && this.K == K && this.side == side &&
+				   Math.abs(F - this.F) <= MAX_FORWARD_MOVE * this.F && Math.abs(T - this.T) <= MAX_TAU_MOVE * this.T;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Quote))
+				return false;
+
+			Quote q = (Quote) o;
+			return matches(q.price, q.F, q.K, q.T, q.side);
+		}
+
+		@Override
+		public int hashCode() {
+			long h = Double.doubleToLongBits(price);
+
+			h = 31 * h + Double.doubleToLongBits(F);
+			h = 31 * h + Double.doubleToLongBits(K);
+			h = 31 * h + Double.doubleToLongBits(T);
+			h = 31 * h + side.hashCode();
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ImpliedVolCacheTest {
+
+	private static Option option(double s, double k, double tau, double sigma, OptSide side) {
+		Option o = new Option(s, k, tau, sigma, 0.02, 0.0, side);
+		o.setPrice(side == OptSide.CALL ? o.call() : o.put());
+		return o;
+	}
+
+	@Test
+	public void testUnchangedQuoteIsNotSolved() {
+		Option o = option(55.0, 60.0, 0.25, 0.3, OptSide.CALL);
+
+		assertEquals(SolverStatus.SUCCESS, o.calcVol(0.25));
+		ImpliedVolCache.Quote q = o.quote;
+		assertEquals(0.3, o.sigma, 1e-12);
+
+		o.sigma = 0.0;
+		assertEquals(SolverStatus.SUCCESS, o.calcVol(0.25));
+		assertSame(q, o.quote);
+		assertEquals(0.3, o.sigma, 1e-12);
+	}
+
+	@Test
+	public void testWarmStartMatchesFullSolve() {
+		for (double k = 40.0; k <= 70.0; k += 2.5)
+			for (OptSide side : OptSide.values()) {
+				Option o = option(55.0, k, 0.25, 0.3, side);
+				assertEquals(SolverStatus.SUCCESS, o.calcVol(0.25));
+
+				// Small moves in spot, vol and time
+				for (double m : new double[] {-0.01, -0.002, 0.0, 0.003, 0.01}) {
+					Option next = option(55.0 * (1 + m), k, 0.249, 0.3 + m, side);
+					double df = Math.exp(-0.02 * 0.249);
+					double full = ImplVol.impliedVolatility(next.getPrice() / df, next.s() / df, k, 0.249, side);
+
+					o.getUl().setPrice(next.s());
+					o.setPrice(next.getPrice());
+					assertEquals(SolverStatus.SUCCESS, o.calcVol(0.249));
+					assertEquals(full, o.sigma, 1e-10);
+				}
+			}
+	}
+
+	@Test
+	public void testFailedSolveIsCached() {
+		Option o = option(55.0, 50.0, 0.25, 0.3, OptSide.CALL);
+
+		o.setPrice(1.0);
+		assertEquals(SolverStatus.UNDEFINED, o.calcVol(0.25));
+		assertEquals(0.0, o.sigma, 0.0);
+		assertEquals(SolverStatus.UNDEFINED, o.calcVol(0.25));
+	}
+
+	@Test
+	public void testLru() {
+		ImpliedVolCache cache = new ImpliedVolCache(2);
+		double p1 = ImplVol.blackPrice(55.0, 50.0, 0.3, 0.5, 1.0);
+		double p2 = ImplVol.blackPrice(55.0, 55.0, 0.3, 0.5, 1.0);
+		double p3 = ImplVol.blackPrice(55.0, 60.0, 0.3, 0.5, 1.0);
+
+		assertEquals(0.3, cache.vol(p1, 55.0, 50.0, 0.5, OptSide.CALL), 1e-12);
+		assertEquals(0.3, cache.vol(p2, 55.0, 55.0, 0.5, OptSide.CALL), 1e-12);
+		assertEquals(0.3, cache.vol(p1, 55.0, 50.0, 0.5, OptSide.CALL), 1e-12);
+		assertEquals(1, cache.getHits());
+
+		// The least recently used quote (strike 55) is evicted
+		cache.vol(p3, 55.0, 60.0, 0.5, OptSide.CALL);
+		assertEquals(2, cache.size());
+		cache.vol(p1, 55.0, 50.0, 0.5, OptSide.CALL);
+		assertEquals(2, cache.getHits());
+		cache.vol(p2, 55.0, 55.0, 0.5, OptSide.CALL);
+		assertEquals(4, cache.getMisses());
+	}
+}
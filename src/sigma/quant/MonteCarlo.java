@@ -0,0 +1,522 @@
+package sigma.quant;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.math.random.MersenneTwister;
+
+import cern.jet.random.tdouble.Normal;
+import cern.jet.random.tdouble.engine.DoubleRandomEngine;
+
+/**
+ * Monte Carlo pricer and portfolio P&L simulator.
+ *
+ * Paths are generated in chunks. Every chunk draws from its own Mersenne
+ * Twister stream with a 64 bit seed mixed from the engine seed and the
+ * chunk number, and the chunk results are combined in chunk order, so results
+ * are reproducible and do not depend on the number of threads. Chunks
+ * run on a fork-join pool and reuse primitive path buffers, paths do not
+ * allocate.
+ *
+ * The underlying follows geometric Brownian motion with drift r, the same
+ * model as Greeks and BlackScholes. Antithetic variates pair every normal
+ * draw with its negation. The control variate is the vanilla payoff on
+ * the same strike and side, whose expectation is the closed form
+ * BlackScholes price, with the regression coefficient estimated from
+ * the sample.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class MonteCarlo {
+
+	// Paths per chunk, also the unit of parallel work
+	static final int CHUNK = 8192;
+
+	/**
+	 * Payoff of a simulated path
+	 */
+	public interface Payoff {
+		/**
+		 * Undiscounted payoff
+		 *
+		 * @param path underlying at the end of every time step
+		 * @param steps number of time steps
+		 * @return payoff at maturity
+		 */
+		double apply(double[] path, int steps);
+	}
+
+	/**
+	 * Vanilla payoff
+	 *
+	 * @param k strike
+	 * @param side call or put
+	 * @return payoff on the last path value
+	 */
+	public static Payoff european(double k, OptSide side) {
+		final double q = side == OptSide.CALL ? 1.0 : -1.0;
+		return (path, steps) -> Math.max(q * (path[steps - 1] - k), 0.0);
+	}
+
+	/**
+	 * Arithmetic average price payoff
+	 *
+	 * @param k strike
+	 * @param side call or put
+	 * @return payoff on the path average
+	 */
+	public static Payoff asian(double k, OptSide side) {
+		final double q = side == OptSide.CALL ? 1.0 : -1.0;
+		return (path, steps) -> {
+			double a = 0.0;
+			for (int i = 0; i < steps; i++)
+				a += path[i];
+			return Math.max(q * (a / steps - k), 0.0);
+		};
+	}
+
+	private final ForkJoinPool pool;
+	private final long seed;
+
+	private int paths;
+	private boolean antithetic;
+	private boolean controlVariate;
+
+	/**
+	 * Engine on the common fork-join pool
+	 *
+	 * @param seed random seed
+	 */
+	public MonteCarlo(long seed) {
+		this(ForkJoinPool.commonPool(), seed);
+	}
+
+	/**
+	 * Engine on given pool
+	 *
+	 * @param pool fork-join pool
+	 * @param seed random seed
+	 */
+	public MonteCarlo(ForkJoinPool pool, long seed) {
+		this.pool = pool;
+		this.seed = seed;
+		this.paths = 100000;
+		this.antithetic = true;
+		this.controlVariate = true;
+	}
+
+	/**
+	 * Prices a vanilla option
+	 *
+	 * @param o option
+	 * @return price estimate
+	 */
+	public Estimate price(Option o) {
+		return price(o, european(o.k, o.side), 1);
+	}
+
+	/**
+	 * Prices a path payoff on the underlying of the option. Strike, side,
+	 * volatility, rate and maturity are taken from the option.
+	 *
+	 * @param o option
+	 * @param payoff payoff
+	 * @param steps number of equally spaced time steps
+	 * @return price estimate
+	 */
+	public Estimate price(Option o, Payoff payoff, int steps) {
+		final double s = o.s();
+		final double t = o.t;
+		final double sigma = o.sigma;
+		final double r = o.r;
+		final double df = Math.exp(-r * t);
+		final int chunks = chunks();
+		final double[] stats = new double[chunks * Pricing.STATS];
+		final Payoff control = european(o.k, o.side);
+		final double expected;
+		BlackScholes bs;
+
+		if (!(t > 0) || !(sigma > 0) || steps < 1)
+			throw new IllegalArgumentException("Option needs positive time to maturity and volatility");
+		if ((antithetic ? total() / 2 : total()) < 2)
+			throw new IllegalArgumentException("Standard error needs at least two samples");
+
+		bs = new BlackScholes(s, o.k, r, sigma, t);
+		expected = (o.side == OptSide.CALL ? bs.BSCall() : bs.BSPut()) / df;
+
+		pool.invoke(new Pricing(this, payoff, control, s, sigma, r, t, steps, stats, 0, chunks));
+
+		// Chunk statistics are combined in chunk order
+		double n = 0, sy = 0, syy = 0, sx = 0, sxx = 0, sxy = 0;
+		for (int c = 0; c < chunks; c++) {
+			n   += stats[c * Pricing.STATS];
+			sy  += stats[c * Pricing.STATS + 1];
+			syy += stats[c * Pricing.STATS + 2];
+			sx  += stats[c * Pricing.STATS + 3];
+			sxx += stats[c * Pricing.STATS + 4];
+			sxy += stats[c * Pricing.STATS + 5];
+		}
+
+		double my = sy / n;
+		double vy = (syy - n * my * my) / (n - 1);
+		double mean = my;
+		double var = vy;
+
+		if (controlVariate) {
+			double mx = sx / n;
+			double vx = (sxx - n * mx * mx) / (n - 1);
+			double cxy = (sxy - n * mx * my) / (n - 1);
+
+			if (vx > 0) {
+				double b = cxy / vx;
+				mean = my - b * (mx - expected);
+				var = Math.max(vy - cxy * cxy / vx, 0.0);
+			}
+		}
+
+		return new Estimate(df * mean, df * Math.sqrt(var / n), total());
+	}
+
+	/**
+	 * Simulates portfolio P&L over a horizon. All underlyings are driven
+	 * by one factor with given volatility, options are revalued with
+	 * their current implied volatilities.
+	 *
+	 * @param options option portfolio
+	 * @param pos position per option
+	 * @param days horizon in calendar days
+	 * @param vol volatility of the underlying over the horizon
+	 * @return P&L distribution
+	 */
+	public Distribution pnl(List<Option> options, double[] pos, double days, double vol) {
+		final ScenarioEngine.Legs legs = new ScenarioEngine.Legs(new OptionChain(options), pos, new double[] {days});
+		final double h = days / ExpiryCalendar.DAYS_PER_YEAR;
+		final double[] out = new double[total()];
+
+		pool.invoke(new Revaluation(this, legs, vol, h, out, 0, chunks()));
+		Arrays.sort(out);
+		return new Distribution(out);
+	}
+
+	/**
+	 * Number of paths, rounded up to whole antithetic pairs
+	 */
+	private int total() {
+		return antithetic ? paths + (paths & 1) : paths;
+	}
+
+	private int chunks() {
+		return (total() + CHUNK - 1) / CHUNK;
+	}
+
+	/**
+	 * Number of paths in a chunk, even with antithetic variates
+	 */
+	int size(int chunk) {
+		return Math.min(CHUNK, total() - chunk * CHUNK);
+	}
+
+	/**
+	 * Independent stream for a chunk
+	 *
+	 * @param chunk chunk number
+	 * @return standard normal generator
+	 */
+	Normal stream(int chunk) {
+		long z = seed + 0x9E3779B97F4A7C15L * (chunk + 1);
+
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return new Normal(0.0, 1.0, new Engine(z));
+	}
+
+	/**
+	 * Mersenne Twister seeded with all 64 bits of the stream seed, colt's
+	 * MersenneTwister64 only takes an int seed
+	 */
+	private static class Engine extends DoubleRandomEngine {
+		private static final long serialVersionUID = 1L;
+
+		private final MersenneTwister mt;
+
+		Engine(long seed) {
+			mt = new MersenneTwister(seed);
+		}
+
+		@Override
+		public int nextInt() {
+			return mt.nextInt();
+		}
+	}
+
+	/**
+	 * Pricing chunks, every chunk writes its sums into stats
+	 */
+	private static class Pricing extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		// n, sum y, sum y^2, sum x, sum x^2, sum xy
+		static final int STATS = 6;
+
+		private final MonteCarlo mc;
+		private final Payoff payoff;
+		private final Payoff control;
+		private final double s;
+		private final double sigma;
+		private final double r;
+		private final double t;
+		private final int steps;
+		private final double[] stats;
+		private final int from;
+		private final int to;
+
+		Pricing(MonteCarlo mc, Payoff payoff, Payoff control, double s, double sigma, double r, double t, int steps,
+				double[] stats, int from, int to) {
+			this.mc = mc;
+			this.payoff = payoff;
+			this.control = control;
+			this.s = s;
+			this.sigma = sigma;
+			this.r = r;
+			this.t = t;
+			this.steps = steps;
+			this.stats = stats;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Pricing(mc, payoff, control, s, sigma, r, t, steps, stats, from, mid),
+						  new Pricing(mc, payoff, control, s, sigma, r, t, steps, stats, mid, to));
+				return;
+			}
+
+			final double dt = t / steps;
+			final double drift = (r - 0.5 * sigma * sigma) * dt;
+			final double vol = sigma * Math.sqrt(dt);
+			final double[] z = new double[steps];
+			final double[] up = new double[steps];
+			final double[] dn = new double[steps];
+			final Normal normal = mc.stream(from);
+			final int count = mc.antithetic ? mc.size(from) / 2 : mc.size(from);
+			double sy = 0, syy = 0, sx = 0, sxx = 0, sxy = 0;
+
+			for (int p = 0; p < count; p++) {
+				double a = s;
+				double b = s;
+				double y;
+				double x;
+
+				for (int i = 0; i < steps; i++) {
+					z[i] = normal.nextDouble();
+					a *= Math.exp(drift + vol * z[i]);
+					up[i] = a;
+				}
+				y = payoff.apply(up, steps);
+				x = control.apply(up, steps);
+
+				if (mc.antithetic) {
+					for (int i = 0; i < steps; i++) {
+						b *= Math.exp(drift - vol * z[i]);
+						dn[i] = b;
+					}
+					y = 0.5 * (y + payoff.apply(dn, steps));
+					x = 0.5 * (x + control.apply(dn, steps));
+				}
+
+				sy += y;
+				syy += y * y;
+				sx += x;
+				sxx += x * x;
+				sxy += x * y;
+			}
+
+			stats[from * STATS] = count;
+			stats[from * STATS + 1] = sy;
+			stats[from * STATS + 2] = syy;
+			stats[from * STATS + 3] = sx;
+			stats[from * STATS + 4] = sxx;
+			stats[from * STATS + 5] = sxy;
+		}
+	}
+
+	/**
+	 * Revaluation chunks, every chunk writes its P&L samples into out
+	 */
+	private static class Revaluation extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final MonteCarlo mc;
+		private final ScenarioEngine.Legs legs;
+		private final double vol;
+		private final double h;
+		private final double[] out;
+		private final int from;
+		private final int to;
+
+		Revaluation(MonteCarlo mc, ScenarioEngine.Legs legs, double vol, double h, double[] out, int from, int to) {
+			this.mc = mc;
+			this.legs = legs;
+			this.vol = vol;
+			this.h = h;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Revaluation(mc, legs, vol, h, out, from, mid),
+						  new Revaluation(mc, legs, vol, h, out, mid, to));
+				return;
+			}
+
+			final Normal normal = mc.stream(from);
+			final double drift = -0.5 * vol * vol * h;
+			final double sd = vol * Math.sqrt(h);
+			final int base = from * CHUNK;
+			final int size = mc.size(from);
+
+			for (int p = 0; p < size; p++) {
+				double z = normal.nextDouble();
+
+				out[base + p] = value(drift + sd * z);
+				if (mc.antithetic)
+					out[base + ++p] = value(drift - sd * z);
+			}
+		}
+
+		private double value(double lm) {
+			final double m = Math.exp(lm);
+			double sum = 0.0;
+
+			for (int j = 0; j < legs.n; j++)
+				sum += legs.value(j, m, lm, legs.sigma[j], legs.tau[j], legs.sqt[j], legs.kert[j]);
+			return sum - legs.base;
+		}
+	}
+
+	/**
+	 * Monte Carlo estimate with its standard error
+	 */
+	public static class Estimate {
+		private final double value;
+		private final double stdErr;
+		private final long paths;
+
+		Estimate(double value, double stdErr, long paths) {
+			this.value = value;
+			this.stdErr = stdErr;
+			this.paths = paths;
+		}
+
+		public double getValue() {
+			return value;
+		}
+
+		public double getStdErr() {
+			return stdErr;
+		}
+
+		public long getPaths() {
+			return paths;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.6f +/- %.6f (%d paths)", value, stdErr, paths);
+		}
+	}
+
+	/**
+	 * Sorted P&L samples
+	 */
+	public static class Distribution {
+		private final double[] pnl;
+
+		Distribution(double[] pnl) {
+			this.pnl = pnl;
+		}
+
+		public double mean() {
+			double s = 0.0;
+
+			for (double p : pnl)
+				s += p;
+			return s / pnl.length;
+		}
+
+		/**
+		 * Empirical quantile
+		 *
+		 * @param p probability, eg. 0.01
+		 * @return P&L quantile
+		 */
+		public double quantile(double p) {
+			int i = (int) Math.floor(p * (pnl.length - 1));
+			return pnl[Math.max(0, Math.min(pnl.length - 1, i))];
+		}
+
+		/**
+		 * Average P&L at or below the p quantile
+		 *
+		 * @param p probability, eg. 0.01
+		 * @return expected shortfall
+		 */
+		public double expectedShortfall(double p) {
+			int n = Math.max(1, (int) Math.floor(p * pnl.length));
+			double s = 0.0;
+
+			for (int i = 0; i < n; i++)
+				s += pnl[i];
+			return s / n;
+		}
+
+		public int size() {
+			return pnl.length;
+		}
+
+		public double[] getPnl() {
+			return pnl;
+		}
+	}
+
+	public int getPaths() {
+		return paths;
+	}
+
+	/**
+	 * Sets number of paths, antithetic pairs count as two paths
+	 *
+	 * @param paths number of paths
+	 */
+	public void setPaths(int paths) {
+		this.paths = paths;
+	}
+
+	public boolean isAntithetic() {
+		return antithetic;
+	}
+
+	public void setAntithetic(boolean antithetic) {
+		this.antithetic = antithetic;
+	}
+
+	public boolean isControlVariate() {
+		return controlVariate;
+	}
+
+	public void setControlVariate(boolean controlVariate) {
+		this.controlVariate = controlVariate;
+	}
+}
@@ -0,0 +1,90 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class MonteCarloTest {
+
+	private static final double S = 55.0;
+
+	@Test
+	public final void testVanilla() {
+		MonteCarlo mc = new MonteCarlo(42L);
+		mc.setPaths(200000);
+		mc.setControlVariate(false);
+
+		for (OptSide side : OptSide.values()) {
+			Option o = new Option(S, 57.0, 0.5, 0.35, 0.02, 0.0, side);
+			MonteCarlo.Estimate e = mc.price(o);
+
+			assertEquals(200000, e.getPaths());
+			assertEquals(o.getGreeks().getPrice(), e.getValue(), 4 * e.getStdErr());
+		}
+	}
+
+	@Test
+	public final void testControlVariate() {
+		Option o = new Option(S, 55.0, 0.5, 0.35, 0.02, 0.0, OptSide.CALL);
+		MonteCarlo mc = new MonteCarlo(7L);
+		mc.setPaths(50000);
+
+		MonteCarlo.Estimate cv = mc.price(o, MonteCarlo.asian(55.0, OptSide.CALL), 16);
+		mc.setControlVariate(false);
+		MonteCarlo.Estimate plain = mc.price(o, MonteCarlo.asian(55.0, OptSide.CALL), 16);
+
+		// The vanilla control is only partly correlated with an average price payoff
+		assertTrue(cv.getStdErr() < 0.75 * plain.getStdErr());
+		assertEquals(plain.getValue(), cv.getValue(), 4 * plain.getStdErr());
+		assertTrue(cv.getValue() < o.getGreeks().getPrice());
+	}
+
+	@Test
+	public final void testReproducible() {
+		Option o = new Option(S, 50.0, 0.25, 0.3, 0.02, 0.0, OptSide.PUT);
+		MonteCarlo a = new MonteCarlo(new ForkJoinPool(1), 11L);
+		MonteCarlo b = new MonteCarlo(new ForkJoinPool(3), 11L);
+
+		a.setPaths(40001);
+		b.setPaths(40001);
+		assertEquals(a.price(o, MonteCarlo.asian(50.0, OptSide.PUT), 4).getValue(),
+					 b.price(o, MonteCarlo.asian(50.0, OptSide.PUT), 4).getValue(), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testTooFewPaths() {
+		MonteCarlo mc = new MonteCarlo(5L);
+
+		// One antithetic pair is a single sample, no standard error
+		mc.setPaths(2);
+		mc.price(new Option(S, 55.0, 0.5, 0.35, 0.02, 0.0, OptSide.CALL));
+	}
+
+	@Test
+	public final void testPnl() {
+		List<Option> l = new ArrayList<>();
+		double[] pos = {1.0, -2.0, 1.0};
+
+		for (int i = 0; i < pos.length; i++)
+			l.add(new Option(S, 50.0 + 5 * i, 0.2, 0.3, 0.02, 0.0, OptSide.CALL));
+
+		MonteCarlo mc = new MonteCarlo(3L);
+		mc.setPaths(20000);
+		MonteCarlo.Distribution d = mc.pnl(l, pos, 5.0, 0.3);
+
+		assertEquals(20000, d.size());
+		assertTrue(d.quantile(0.01) <= d.quantile(0.5));
+		assertTrue(d.expectedShortfall(0.01) <= d.quantile(0.01));
+
+		// Without underlying moves the P&L is the time decay
+		double decay = new ScenarioEngine().run(l, pos, new double[] {0.0}, new double[] {0.0}, new double[] {5.0}).get(0, 0, 0);
+		d = mc.pnl(l, pos, 5.0, 0.0);
+		assertEquals(decay, d.quantile(0.0), 1e-12);
+		assertEquals(decay, d.quantile(1.0), 1e-12);
+	}
+
+}
@@ -0,0 +1,102 @@
+package sigma.quant;
+
+/**
+ * Tabulated standard normal CDF and PDF with cubic Hermite interpolation.
+ *
+ * Nodes are equally spaced on [-bound, bound]. On every interval the CDF
+ * and the PDF are cubic Hermite interpolants of the exact values and
+ * derivatives at the two end nodes (the CDF derivative is the PDF, the
+ * PDF derivative is -x * pdf(x)). The cubics are stored as Horner
+ * coefficients in the offset within the interval, eight doubles per
+ * interval, so an evaluation reads one cache line. The interpolation
+ * error is at most max|f''''| h^4 / 384, which is about 0.55 h^4 / 384
+ * for the CDF and 1.2 h^4 / 384 for the PDF. Outside the table the CDF
+ * is 0 or 1 and the PDF is 0.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+final class NormalTable {
+
+	private final double lo;
+	private final double hi;
+	private final double invH;
+	private final int last;
+
+	// Per interval: CDF c0..c3, PDF p0..p3
+	private final double[] coef;
+
+	/**
+	 * Builds the table
+	 *
+	 * @param bound table covers [-bound, bound]
+	 * @param nodesPerUnit nodes per unit of x, 1/h
+	 */
+	NormalTable(double bound, int nodesPerUnit) {
+		final int n = (int) Math.ceil(2 * bound * nodesPerUnit);
+		final double h = 1.0 / nodesPerUnit;
+
+		this.invH = nodesPerUnit;
+		this.lo = -bound;
+		this.hi = lo + n * h;
+		this.last = n - 1;
+		this.coef = new double[8 * n];
+
+		for (int i = 0; i < n; i++) {
+			double x0 = lo + i * h;
+			double x1 = x0 + h;
+			double p0 = NormalDistribution.pdf(x0);
+			double p1 = NormalDistribution.pdf(x1);
+
+			hermite(NormalDistribution.cdf(x0), p0 * h, NormalDistribution.cdf(x1), p1 * h, 8 * i);
+			hermite(p0, -x0 * p0 * h, p1, -x1 * p1 * h, 8 * i + 4);
+		}
+	}
+
+	/**
+	 * Stores the Horner coefficients of the cubic on [0, 1] with given
+	 * end values and derivatives
+	 */
+	private void hermite(double y0, double d0, double y1, double d1, int j) {
+		coef[j] = y0;
+		coef[j + 1] = d0;
+		coef[j + 2] = 3 * (y1 - y0) - 2 * d0 - d1;
+		coef[j + 3] = 2 * (y0 - y1) + d0 + d1;
+	}
+
+	double cdf(double x) {
+		if (!(x > lo && x < hi))
+			return x <= lo ? 0.0 : x >= hi ? 1.0 : x;
+
+		// Rounding can put x just below hi onto node n
+		final double v = (x - lo) * invH;
+		final int i = Math.min((int) v, last);
+		final double u = v - i;
+		final int j = 8 * i;
+
+		return coef[j] + u * (coef[j + 1] + u * (coef[j + 2] + u * coef[j + 3]));
+	}
+
+	double pdf(double x) {
+		if (!(x > lo && x < hi))
+			return x <= lo || x >= hi ? 0.0 : x;
+
+		// Rounding can put x just below hi onto node n
+		final double v = (x - lo) * invH;
+		final int i = Math.min((int) v, last);
+		final double u = v - i;
+		final int j = 8 * i + 4;
+
+		return coef[j] + u * (coef[j + 1] + u * (coef[j + 2] + u * coef[j + 3]));
+	}
+
+	/**
+	 * Returns table size in bytes
+	 *
+	 * @return size of the coefficient table
+	 */
+	int bytes() {
+		return 8 * coef.length;
+	}
+}
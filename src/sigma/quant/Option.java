@@ -1,18 +1,8 @@
 package sigma.quant;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
-
 import com.ib.client.Contract;
 import com.ib.client.Types.SecType;
 
-import cern.jet.random.tdouble.Normal;
-import cern.jet.random.tdouble.engine.MersenneTwister64;
-
 /**
  * Option implementation with second order Greeks
  * 
@@ -38,6 +28,12 @@ public class Option extends Instrument {
 	
 	Future ul;
 	
+	// Cached greeks, see getGreeks()
+	transient Greeks greeks;
+	
+	// Last implied volatility solve, see calcVol()
+	transient ImpliedVolCache.Quote quote;
+	
 	String expiry;
 	String optionMonth;
 	
@@ -90,6 +86,8 @@ public class Option extends Instrument {
 	 * @param side Option side
 	 */
 	public Option(Double s, Double k, Double t, Double sigma, Double r, Double d, OptSide side) {
+		this();
+		
 		this.s = s;
 		this.k = k;
 		this.t= t;
@@ -100,38 +98,67 @@ public class Option extends Instrument {
 		this.ul.price = s;
 	}
 	
-	private Double s() {
+	Double s() {
 		return this.ul.price;
 	}
 	
 	/**
-	 * Calculates volatility for the option
+	 * Calculates volatility for the option, time to maturity is taken
+	 * from the shared expiry calendar
 	 */
 	public void calcVol() {
+		calcVol(ExpiryCalendar.getDefault().tauNow(this.expiry));
+	}
+	
+	/**
+	 * Calculates volatility for the option with given time to maturity.
+	 * Sigma is set to zero if the volatility cannot be found. The last
+	 * solve is kept, an unchanged quote is not solved again and a quote
+	 * that moved slightly is warm started from the previous volatility.
+	 * 
+	 * @param tau time to maturity in years
+	 * @return solver status
+	 */
+	public SolverStatus calcVol(double tau) {
+		ImpliedVolCache.Quote q = this.quote;
+		SolverStatus status;
+		double df;
+		double fwd;
+		double p;
+		double vol;
+		
+		this.t = tau;
 		this.sigma = 0.0;
-		BSImplied bs;
-		Calendar cal = Calendar.getInstance();
-		Date t0;
-		Date t1 = new Date();
 		
-		// First we need to find the expiry time
-		t0 = cal.getTime();
+		if (!(t > 0) || !(price > 0) || !(s() > 0))
+			return SolverStatus.UNDEFINED;
 		
-		DateFormat format = new SimpleDateFormat("yyyyMMdd", Locale.ENGLISH);
+		// The price is undiscounted and the spot is turned into
+		// a forward so that Black's formula applies
+		df = Math.exp(-r * t);
+		p = this.price / df;
+		fwd = s() / df;
 		
-		try {
-			t1 = format.parse(this.expiry);
-		} catch (ParseException e) {
-			e.printStackTrace();
+		if (q != null && q.matches(p, fwd, k, t, side)) {
+			this.sigma = q.vol;
+			return q.status;
 		}
-	
-		this.t = (double)(t1.getTime() - t0.getTime()) / (365.0 * 24.0 * 60.0 * 60.0 * 1000.0);
 		
-		// Now calculate IV
-		bs = new BSImplied(this.ul.getPrice(), 
-				           this.k, this.r, this.price, t, (side == OptSide.PUT));
-		bs.findImplied();
-		this.sigma = bs.Value;
+		vol = ImpliedVolCache.solve(p, fwd, k, t, side, q);
+		
+		if (vol == ImplVol.BELOW_INTRINSIC || vol == ImplVol.ABOVE_MAXIMUM)
+			status = SolverStatus.UNDEFINED;
+		else if (!ImplVol.isValid(vol) || Double.isInfinite(vol) || vol < 0)
+			status = SolverStatus.ERROR;
+		else
+			status = SolverStatus.SUCCESS;
+		
+		if (status != SolverStatus.SUCCESS)
+			vol = 0.0;
+		
+		this.quote = new ImpliedVolCache.Quote(p, fwd, k, t, side, vol, status);
+		this.sigma = vol;
+		return status;
 	}
 	
 	/**
@@ -141,32 +168,7 @@ public class Option extends Instrument {
 	 * @return Gauss CDF(x)
 	 */
 	private Double cdf(Double x) {
-		
-		Normal g;
-		
-		g = new Normal(0.0, 1.0, new MersenneTwister64());
-		
-		return(g.cdf(x));
-	}
-	
-	/**
-	 * Helper function for greek calculations
-	 * 
-	 * @param x
-	 * @return phi(x)
-	 */
-	private Double phi(Double x) {
-		return((Math.exp(- x * x / 2)) / (Math.sqrt(2 * Math.PI)));
-	}
-	
-	/**
-	 * Helper function, returns total volatility over period.
-	 * Ie sigma * sqrt(t)
-	 * 
-	 * @return total volatility
-	 */
-	private Double sigmatau() {
-		return(sigma * Math.sqrt(t));
+		return(NormalDistribution.cdf(x));
 	}
 	
 	/**
@@ -175,7 +177,7 @@ public class Option extends Instrument {
 	 * @return Double d1 value
 	 */
 	private Double d1() {
-		return((Math.log(s() / k) + t * (r + 0.5 * sigma * sigma)) / (sigmatau()));
+		return((Math.log(s() / k) + t * (r + 0.5 * sigma * sigma)) / (sigma * Math.sqrt(t)));
 	}
 	
 	/**
@@ -184,7 +186,7 @@ public class Option extends Instrument {
 	 * @return Double d2 value
 	 */
 	private Double d2() {
-		return(d1() - sigmatau());
+		return(d1() - sigma * Math.sqrt(t));
 	}
 	
 	/**
@@ -211,11 +213,7 @@ public class Option extends Instrument {
 	 * @return delta of the option
 	 */
 	public Double delta() {
-		if(side == OptSide.CALL) {
-			 return(Math.exp(-d * t) * cdf(d1()));
-		} else {
-			return(-Math.exp(-d * t) * cdf(-d1()));
-		}
+		return(getGreeks().getDelta());
 	}
 	
 	/**
@@ -224,13 +222,7 @@ public class Option extends Instrument {
 	 * @return gamma of the option
 	 */
 	public Double gamma() {
-		Double val;
-		val = Math.exp(-d * t) * phi(d1()) / (s() * sigmatau());
-		if (Double.isNaN(val)) {
-		  return 0.0;
-		} else {
-		  return(val);
-		}
+		return(getGreeks().getGamma());
 	}
 	
 	/**
@@ -239,7 +231,7 @@ public class Option extends Instrument {
 	 * @return vega of the option
 	 */
 	public Double vega() {
-		return(s() * Math.exp(-d * t) * phi(d1()) * Math.sqrt(t));
+		return(getGreeks().getVega());
 	}
 	
 	/**
@@ -248,19 +240,7 @@ public class Option extends Instrument {
 	 * @return theta of the option
 	 */
 	public Double theta() {
-		Double x;
-		Double y;
-		Double z;
-		
-		x = -Math.exp(-d * t) * (s() * phi(d1()) * sigma) / (2 * Math.sqrt(t));
-		y = r * k * Math.exp(-r * t);
-		z = d * s() * Math.exp(-d * t);
-		
-		if(side == OptSide.CALL) {
-			return(x - y * cdf(d2()) + z * cdf(d1()));
-		} else {
-			return(x + y * cdf(-d2()) - z * cdf(-d1()));
-		}
+		return(getGreeks().getTheta());
 	}
 
 	/**
@@ -269,17 +249,7 @@ public class Option extends Instrument {
 	 * @return charm of the option
 	 */
 	public Double charm() {
-		Double x;
-		Double y;
-		
-		x = d * Math.exp(-d * t);
-		y = Math.exp(-d * t) * phi(d1()) * (2 * (r - d) * t - d2() * sigmatau()) / (2 * t * sigmatau());
-		
-		if(side == OptSide.CALL) {
-			return(x * cdf(d1()) - y);
-		} else {
-			return(-x * cdf(-d1()) - y);
-		}
+		return(getGreeks().getCharm());
 	}
 	
 	/**
@@ -288,21 +258,7 @@ public class Option extends Instrument {
 	 * @return thega of the option
 	 */
 	public Double thega() {
-		Double x;
-		Double y;
-		Double z;
-		Double u;
-		
-		x = -(s() * sigma * phi(d1())) / (4 * t * Math.sqrt(t)) * (1 + (2 * (r - d) * t - d2() * sigmatau()) / sigmatau() * d1());
-		y = r * r * k * Math.exp(-r * t) * cdf(d2());
-		z = d * d * s() * Math.exp(-d * t) * cdf(d1());
-		u = s() * Math.exp(-d * t) * phi(d1()) * (2 * (r - d) * (r - d) * t - d2() * sigmatau()) / (2 * t * sigmatau());
-		
-		if(side == OptSide.CALL) {
-			return(x - y + z + u);
-		} else {
-			return(x + y - z + u);
-		}
+		return(getGreeks().getThega());
 	}
 
 	/**
@@ -311,7 +267,7 @@ public class Option extends Instrument {
 	 * @return color of the option
 	 */
 	public Double color() {
-		return(-Math.exp(-d * t) * phi(d1()) / (2 * s() * t * sigmatau()) * (2 * d * t + 1 + (2 * (r - d) * t - d2() * sigmatau()) / (sigmatau()) * d1()));
+		return(getGreeks().getColor());
 	}
 	
 	/**
@@ -320,7 +276,7 @@ public class Option extends Instrument {
 	 * @return speed of the option
 	 */
 	public Double speed() {
-		return(-gamma() / s() * (d1() / sigmatau() + 1));
+		return(getGreeks().getSpeed());
 	}
 
 	/**
@@ -424,11 +380,27 @@ public class Option extends Instrument {
 	}
 
 	/**
-	 * Calculates greeks for the option
+	 * Calculates greeks for the option and stores the snapshot
 	 */
 	public void calcGreeks() {
+		this.greeks = new Greeks(s(), k, t, sigma, r, d, side);
+	}
+	
+	/**
+	 * Returns greeks snapshot for the option. The snapshot is
+	 * recalculated if any of the valuation inputs (including the
+	 * underlying price) has changed since it was computed.
+	 * 
+	 * @return greeks snapshot
+	 */
+	public Greeks getGreeks() {
+		Greeks g = this.greeks;
 		
-		
+		if (g == null || !g.isFor(s(), k, t, sigma, r, d, side)) {
+			calcGreeks();
+			g = this.greeks;
+		}
+		return(g);
 	}
 
 	public String getOptionMonth() {
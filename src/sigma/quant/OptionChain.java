@@ -0,0 +1,301 @@
+package sigma.quant;
+
+import java.util.List;
+
+/**
+ * Columnar option chain. Valuation inputs are kept in primitive
+ * arrays and the price together with all the greeks supported by
+ * Option are computed for the whole chain in one pass.
+ *
+ * The same kernel as Option.calcGreeks() is used, so the results agree
+ * with the per option methods.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class OptionChain {
+
+	/**
+	 * Side codes for the side column
+	 */
+	public static final byte CALL = 1;
+	public static final byte PUT = -1;
+
+	protected int size;
+
+	// Inputs
+	protected double[] s;     // Spot
+	protected double[] k;     // Strike
+	protected double[] t;     // Time to maturity
+	protected double[] sigma; // Volatility
+	protected double[] r;     // Risk free interest
+	protected double[] d;     // Dividends
+	protected byte[] side;    // Side
+
+	// Outputs
+	protected double[] price;
+	protected double[] delta;
+	protected double[] gamma;
+	protected double[] vega;
+	protected double[] theta;
+	protected double[] charm;
+	protected double[] thega;
+	protected double[] color;
+	protected double[] speed;
+
+	// Normal CDF used by calcGreeks() and the scalar kernel
+	protected CdfAccuracy accuracy = CdfAccuracy.CODY;
+
+	/**
+	 * Constructor for an empty chain
+	 *
+	 * @param capacity initial number of options
+	 */
+	public OptionChain(int capacity) {
+		allocate(capacity);
+		size = 0;
+	}
+
+	/**
+	 * Constructor that loads the inputs from a list of options
+	 *
+	 * @param options option list
+	 */
+	public OptionChain(List<Option> options) {
+		this(options.size());
+		load(options);
+	}
+
+	/**
+	 * Allocates column storage
+	 *
+	 * @param n number of rows
+	 */
+	private void allocate(int n) {
+		s = new double[n];
+		k = new double[n];
+		t = new double[n];
+		sigma = new double[n];
+		r = new double[n];
+		d = new double[n];
+		side = new byte[n];
+
+		price = new double[n];
+		delta = new double[n];
+		gamma = new double[n];
+		vega = new double[n];
+		theta = new double[n];
+		charm = new double[n];
+		thega = new double[n];
+		color = new double[n];
+		speed = new double[n];
+	}
+
+	/**
+	 * Copies valuation inputs from the options into the columns.
+	 * Storage is reused if the chain is large enough.
+	 *
+	 * @param options option list
+	 */
+	public void load(List<Option> options) {
+		if (options.size() > s.length)
+			allocate(options.size());
+
+		size = options.size();
+		for (int i = 0; i < size; i++) {
+			Option o = options.get(i);
+			set(i, o.s(), o.k, o.t, o.sigma, o.r, o.d, o.side);
+		}
+	}
+
+	/**
+	 * Sets valuation inputs for one row
+	 *
+	 * @param i row index
+	 * @param s Spot price
+	 * @param k Strike price
+	 * @param t Time to maturity
+	 * @param sigma Volatility
+	 * @param r Risk free interest rate
+	 * @param d Dividend rate
+	 * @param side Option side
+	 */
+	public void set(int i, double s, double k, double t, double sigma, double r, double d, OptSide side) {
+		if (i >= size)
+			throw new IndexOutOfBoundsException("Row " + i + " outside chain of size " + size);
+
+		this.s[i] = s;
+		this.k[i] = k;
+		this.t[i] = t;
+		this.sigma[i] = sigma;
+		this.r[i] = r;
+		this.d[i] = d;
+		this.side[i] = (side == OptSide.CALL) ? CALL : PUT;
+	}
+
+	/**
+	 * Resizes the chain, existing rows are kept
+	 *
+	 * @param n new number of rows
+	 */
+	public void resize(int n) {
+		if (n > s.length) {
+			OptionChain c = new OptionChain(Math.max(n, 2 * s.length));
+			System.arraycopy(s, 0, c.s, 0, size);
+			System.arraycopy(k, 0, c.k, 0, size);
+			System.arraycopy(t, 0, c.t, 0, size);
+			System.arraycopy(sigma, 0, c.sigma, 0, size);
+			System.arraycopy(r, 0, c.r, 0, size);
+			System.arraycopy(d, 0, c.d, 0, size);
+			System.arraycopy(side, 0, c.side, 0, size);
+
+			s = c.s; k = c.k; t = c.t; sigma = c.sigma; r = c.r; d = c.d; side = c.side;
+			price = c.price; delta = c.delta; gamma = c.gamma; vega = c.vega; theta = c.theta;
+			charm = c.charm; thega = c.thega; color = c.color; speed = c.speed;
+		}
+		size = n;
+	}
+
+	/**
+	 * Calculates price and greeks for every option in the chain.
+	 * Common subexpressions (d1, d2, discount factors, CDF and PDF values)
+	 * are evaluated once per option, see Greeks.evaluate().
+	 */
+	public void calcGreeks() {
+		final double[] out = new double[Greeks.COUNT];
+
+		for (int i = 0; i < size; i++) {
+			Greeks.evaluate(s[i], k[i], t[i], sigma[i], r[i], d[i], side[i] == CALL, accuracy, out);
+
+			price[i] = out[Greeks.PRICE];
+			delta[i] = out[Greeks.DELTA];
+			gamma[i] = out[Greeks.GAMMA];
+			vega[i]  = out[Greeks.VEGA];
+			theta[i] = out[Greeks.THETA];
+			charm[i] = out[Greeks.CHARM];
+			thega[i] = out[Greeks.THEGA];
+			color[i] = out[Greeks.COLOR];
+			speed[i] = out[Greeks.SPEED];
+		}
+	}
+
+	/**
+	 * Calculates price, delta, gamma, vega and theta for every option
+	 * in the chain with the fastest available kernel, see ChainKernels.
+	 * The second order columns are left untouched.
+	 */
+	public void calcFirstOrder() {
+		calcFirstOrder(ChainKernels.get());
+	}
+
+	/**
+	 * Calculates price, delta, gamma, vega and theta with given kernel
+	 *
+	 * @param kernel chain kernel
+	 */
+	public void calcFirstOrder(ChainKernel kernel) {
+		kernel.evaluate(this, 0, size);
+	}
+
+	/**
+	 * Position weighted sum of an output column
+	 *
+	 * @param column output column, eg. getDelta()
+	 * @param pos position per row
+	 * @return sum of column[i] * pos[i]
+	 */
+	public double total(double[] column, double[] pos) {
+		double sum = 0.0;
+
+		for (int i = 0; i < size; i++)
+			sum += column[i] * pos[i];
+		return sum;
+	}
+
+	/**
+	 * Sets the normal CDF accuracy, the table modes trade a bounded
+	 * absolute error in prices and greeks for speed. The vector kernel
+	 * ignores it and evaluates every row with its own CDF, accurate to
+	 * about 1e-14.
+	 *
+	 * @param accuracy CDF accuracy
+	 */
+	public void setAccuracy(CdfAccuracy accuracy) {
+		this.accuracy = accuracy;
+	}
+
+	public CdfAccuracy getAccuracy() {
+		return accuracy;
+	}
+
+	/**
+	 * Returns number of options in the chain
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return size;
+	}
+
+	public double getSpot(int i) {
+		return s[i];
+	}
+
+	public double getStrike(int i) {
+		return k[i];
+	}
+
+	public double getTau(int i) {
+		return t[i];
+	}
+
+	public double getSigma(int i) {
+		return sigma[i];
+	}
+
+	public byte getSide(int i) {
+		return side[i];
+	}
+
+	/*
+	 * Output columns. The arrays are owned by the chain and may be longer
+	 * than size(), they must not be modified by the caller.
+	 */
+
+	public double[] getPrice() {
+		return price;
+	}
+
+	public double[] getDelta() {
+		return delta;
+	}
+
+	public double[] getGamma() {
+		return gamma;
+	}
+
+	public double[] getVega() {
+		return vega;
+	}
+
+	public double[] getTheta() {
+		return theta;
+	}
+
+	public double[] getCharm() {
+		return charm;
+	}
+
+	public double[] getThega() {
+		return thega;
+	}
+
+	public double[] getColor() {
+		return color;
+	}
+
+	public double[] getSpeed() {
+		return speed;
+	}
+}
@@ -2,63 +2,147 @@ package sigma.quant;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 public class OptionTest {
 
+	private static final double S = 55.0;
+	private static final double K = 57.0;
+	private static final double T = 0.25;
+	private static final double SIGMA = 0.35;
+	private static final double R = 0.02;
+	private static final double H = 1e-4;
+
+	private static Option call;
+	private static Option put;
+
 	@BeforeClass
 	public static void setUpBeforeClass() throws Exception {
+		call = option(S, T, SIGMA, OptSide.CALL);
+		put = option(S, T, SIGMA, OptSide.PUT);
+	}
+
+	private static Option option(double s, double t, double sigma, OptSide side) {
+		return new Option(s, K, t, sigma, R, 0.0, side);
+	}
+
+	private static double price(double s, double t, double sigma, OptSide side) {
+		return option(s, t, sigma, side).getGreeks().getPrice();
 	}
 
 	@Test
 	public final void testCall() {
-		fail("Not yet implemented"); // TODO
+		BlackScholes bs = new BlackScholes(S, K, R, SIGMA, T);
+		assertEquals(bs.BSCall(), call.call(), 1e-12);
+		assertEquals(call.call(), call.getGreeks().getPrice(), 1e-12);
 	}
 
 	@Test
 	public final void testPut() {
-		fail("Not yet implemented"); // TODO
+		BlackScholes bs = new BlackScholes(S, K, R, SIGMA, T);
+		assertEquals(bs.BSPut(), put.put(), 1e-12);
+		assertEquals(put.put(), put.getGreeks().getPrice(), 1e-12);
 	}
 
 	@Test
 	public final void testDelta() {
-		fail("Not yet implemented"); // TODO
+		for (OptSide side : OptSide.values()) {
+			double fd = (price(S + H, T, SIGMA, side) - price(S - H, T, SIGMA, side)) / (2 * H);
+			assertEquals(fd, option(S, T, SIGMA, side).delta(), 1e-7);
+		}
 	}
 
 	@Test
 	public final void testGamma() {
-		fail("Not yet implemented"); // TODO
+		for (OptSide side : OptSide.values()) {
+			double fd = (option(S + H, T, SIGMA, side).delta() - option(S - H, T, SIGMA, side).delta()) / (2 * H);
+			assertEquals(fd, option(S, T, SIGMA, side).gamma(), 1e-7);
+		}
 	}
 
 	@Test
 	public final void testVega() {
-		fail("Not yet implemented"); // TODO
+		for (OptSide side : OptSide.values()) {
+			double fd = (price(S, T, SIGMA + H, side) - price(S, T, SIGMA - H, side)) / (2 * H);
+			assertEquals(fd, option(S, T, SIGMA, side).vega(), 1e-6);
+		}
 	}
 
 	@Test
 	public final void testTheta() {
-		fail("Not yet implemented"); // TODO
+		// Theta is the derivative with respect to calendar time, ie. -dV/dt
+		for (OptSide side : OptSide.values()) {
+			double fd = -(price(S, T + H, SIGMA, side) - price(S, T - H, SIGMA, side)) / (2 * H);
+			assertEquals(fd, option(S, T, SIGMA, side).theta(), 1e-6);
+		}
 	}
 
 	@Test
 	public final void testCharm() {
-		fail("Not yet implemented"); // TODO
+		for (OptSide side : OptSide.values()) {
+			double fd = -(option(S, T + H, SIGMA, side).delta() - option(S, T - H, SIGMA, side).delta()) / (2 * H);
+			assertEquals(fd, option(S, T, SIGMA, side).charm(), 1e-6);
+		}
 	}
 
 	@Test
 	public final void testThega() {
-		fail("Not yet implemented"); // TODO
+		for (OptSide side : OptSide.values()) {
+			double fd = -(option(S, T + H, SIGMA, side).theta() - option(S, T - H, SIGMA, side).theta()) / (2 * H);
+			assertEquals(fd, option(S, T, SIGMA, side).thega(), 1e-4);
+		}
 	}
 
 	@Test
 	public final void testColor() {
-		fail("Not yet implemented"); // TODO
+		// Color follows the textbook formula, ie. d gamma / d time to maturity
+		for (OptSide side : OptSide.values()) {
+			double fd = (option(S, T + H, SIGMA, side).gamma() - option(S, T - H, SIGMA, side).gamma()) / (2 * H);
+			assertEquals(fd, option(S, T, SIGMA, side).color(), 1e-6);
+		}
 	}
 
 	@Test
 	public final void testSpeed() {
-		fail("Not yet implemented"); // TODO
+		for (OptSide side : OptSide.values()) {
+			double fd = (option(S + H, T, SIGMA, side).gamma() - option(S - H, T, SIGMA, side).gamma()) / (2 * H);
+			assertEquals(fd, option(S, T, SIGMA, side).speed(), 1e-7);
+		}
+	}
+
+	@Test
+	public final void testGreeksInvalidation() {
+		Option o = option(S, T, SIGMA, OptSide.CALL);
+		Greeks g = o.getGreeks();
+
+		assertSame(g, o.getGreeks());
+
+		o.getUl().setPrice(S + 1.0);
+		assertNotSame(g, o.getGreeks());
+		assertEquals(S + 1.0, o.getGreeks().getSpot(), 0.0);
+
+		g = o.getGreeks();
+		o.setSigma(SIGMA + 0.01);
+		assertNotSame(g, o.getGreeks());
+	}
+
+	@Test
+	public final void testChainMatchesOption() {
+		ArrayList<Option> l = new ArrayList<>();
+		l.add(call);
+		l.add(put);
+
+		OptionChain c = new OptionChain(l);
+		c.calcGreeks();
+		for (int i = 0; i < l.size(); i++) {
+			Greeks g = l.get(i).getGreeks();
+			assertEquals(g.getPrice(), c.getPrice()[i], 0.0);
+			assertEquals(g.getDelta(), c.getDelta()[i], 0.0);
+			assertEquals(g.getThega(), c.getThega()[i], 0.0);
+		}
 	}
 
 }
@@ -0,0 +1,260 @@
+package sigma.quant;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import cern.jet.random.tdouble.Normal;
+import cern.jet.random.tdouble.engine.MersenneTwister64;
+import cern.jet.stat.tdouble.Probability;
+
+/**
+ * Micro benchmarks for the pricing and implied volatility code.
+ *
+ * Every case is run over a sweep of moneyness (K/S) and time to maturity
+ * and reports average time and allocated bytes per operation. Results
+ * are consumed into a sink so the JIT cannot drop the work.
+ *
+ * Run with: java -cp bin:jars/* sigma.quant.PricingBenchmark [filter]
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class PricingBenchmark {
+
+	private static final double S = 55.0;
+	private static final double R = 0.02;
+	private static final double SIGMA = 0.35;
+
+	private static final double[] MONEYNESS = {0.8, 0.9, 1.0, 1.1, 1.2};
+	private static final double[] TAU = {0.02, 0.25, 1.0};
+
+	private static final int WARMUP = 200000;
+	private static final int OPS = 200000;
+	private static final int ROUNDS = 5;
+
+	// Consumes benchmark results
+	private static volatile double sink;
+
+	/**
+	 * Benchmarked operation, i is the invocation counter
+	 */
+	interface Case {
+		double run(int i);
+	}
+
+	/**
+	 * Case factory for one point of the sweep
+	 */
+	interface Sweep {
+		Case create(double k, double t);
+	}
+
+	private final ThreadMXBean threads;
+	private final String filter;
+
+	public PricingBenchmark(String filter) {
+		this.threads = ManagementFactory.getThreadMXBean();
+		this.filter = filter;
+	}
+
+	/**
+	 * Allocated bytes of the current thread, -1 if not supported by the JVM
+	 *
+	 * @return allocated bytes
+	 */
+	private long allocated() {
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	/**
+	 * Runs one case and prints ns/op and bytes/op
+	 *
+	 * @param name case name
+	 * @param k strike
+	 * @param t time to maturity
+	 * @param c operation
+	 */
+	private void measure(String name, double k, double t, Case c) {
+		double acc = 0.0;
+		double best = Double.MAX_VALUE;
+		long bytes = 0;
+
+		for (int i = 0; i < WARMUP; i++)
+			acc += c.run(i);
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long a0 = allocated();
+			long t0 = System.nanoTime();
+			for (int i = 0; i < OPS; i++)
+				acc += c.run(i);
+			long t1 = System.nanoTime();
+			long a1 = allocated();
+
+			best = Math.min(best, (double)(t1 - t0) / OPS);
+			bytes += a1 - a0;
+		}
+		sink = acc;
+
+		System.out.println(String.format("%-28s K/S=%4.2f tau=%5.2f %10.1f ns/op %8.1f B/op",
+				name, k / S, t, best, (double) bytes / (ROUNDS * OPS)));
+	}
+
+	/**
+	 * Runs a case over the moneyness and maturity sweep
+	 *
+	 * @param name case name
+	 * @param sweep case factory
+	 */
+	private void sweep(String name, Sweep sweep) {
+		if (filter != null && !name.contains(filter))
+			return;
+
+		for (double m : MONEYNESS)
+			for (double t : TAU)
+				measure(name, m * S, t, sweep.create(m * S, t));
+	}
+
+	/**
+	 * d1 for the sweep point, used as the CDF argument
+	 */
+	private static double d1(double k, double t) {
+		return (Math.log(S / k) + t * (R + 0.5 * SIGMA * SIGMA)) / (SIGMA * Math.sqrt(t));
+	}
+
+	/**
+	 * Runs all the benchmarks
+	 */
+	public void run() {
+		// Option greeks
+		sweep("Option.calcGreeks", (k, t) -> {
+			Option o = new Option(S, k, t, SIGMA, R, 0.0, OptSide.CALL);
+			return i -> { o.calcGreeks(); return o.getGreeks().getTheta(); };
+		});
+		sweep("Option.delta (cached)", (k, t) -> {
+			Option o = new Option(S, k, t, SIGMA, R, 0.0, OptSide.CALL);
+			return i -> o.delta();
+		});
+		sweep("Option.call", (k, t) -> {
+			Option o = new Option(S, k, t, SIGMA, R, 0.0, OptSide.CALL);
+			return i -> o.call();
+		});
+
+		sweep("TaylorGreeks.delta (tick)", (k, t) -> {
+			Option o = new Option(S, k, t, SIGMA, R, 0.0, OptSide.CALL);
+			TaylorGreeks tg = new TaylorGreeks(o);
+			Double[] ticks = {S, S + 0.01};
+			return i -> { o.getUl().setPrice(ticks[i & 1]); return tg.delta(); };
+		});
+
+		// BlackScholes prices and greeks
+		sweep("BlackScholes.BSCall", (k, t) -> {
+			BlackScholes bs = new BlackScholes(S, k, R, SIGMA, t);
+			return i -> { bs.reset(SIGMA); return bs.BSCall(); };
+		});
+		sweep("BlackScholes.greeks", (k, t) -> {
+			BlackScholes bs = new BlackScholes(S, k, R, SIGMA, t);
+			return i -> { bs.reset(SIGMA); return bs.BSCallDelta() + bs.BSGamma() + bs.BSVega() + bs.BSCallTheta(); };
+		});
+
+		// Implied volatility
+		sweep("BSImplied.findImplied", (k, t) -> {
+			double price = new BlackScholes(S, k, R, SIGMA, t).BSCall();
+			BSImplied bs = new BSImplied(S, k, R, price, t, false);
+			return i -> { bs.findImplied(); return bs.Value; };
+		});
+		sweep("ImplVol.impliedVolatility", (k, t) -> {
+			double df = Math.exp(-R * t);
+			double price = new BlackScholes(S, k, R, SIGMA, t).BSCall() / df;
+			return i -> ImplVol.impliedVolatility(price, S / df, k, t, 1.0);
+		});
+
+		// Option.calcVol with the last solve kept: unchanged quote, small
+		// tick to tick moves (warm start) and no previous solve
+		sweep("Option.calcVol (unchanged)", (k, t) -> {
+			Option o = new Option(S, k, t, SIGMA, R, 0.0, OptSide.CALL);
+			o.setPrice(o.call());
+			return i -> { o.calcVol(t); return o.sigma; };
+		});
+		sweep("Option.calcVol (warm)", (k, t) -> {
+			Option o = new Option(S, k, t, SIGMA, R, 0.0, OptSide.CALL);
+			Double[] spot = {S, S + 0.01};
+			Double[] price = {o.call(), 0.0};
+			o.getUl().setPrice(spot[1]);
+			price[1] = o.call();
+			return i -> {
+				o.getUl().setPrice(spot[i & 1]);
+				o.setPrice(price[i & 1]);
+				o.calcVol(t);
+				return o.sigma;
+			};
+		});
+		sweep("Option.calcVol (cold)", (k, t) -> {
+			Option o = new Option(S, k, t, SIGMA, R, 0.0, OptSide.CALL);
+			o.setPrice(o.call());
+			return i -> { o.quote = null; o.calcVol(t); return o.sigma; };
+		});
+
+		// Volatility surface lookup between expiries, 50 strikes per expiry
+		sweep("VolSurface.vol", (k, t) -> {
+			VolSurface vs = new VolSurface();
+			for (int j = 1; j <= 8; j++)
+				for (int n = 0; n < 50; n++)
+					vs.update("E" + j, 0.125 * j, 0.5 * S + n * 0.02 * S, SIGMA + 0.001 * n);
+			return i -> vs.vol(k, t + 0.01);
+		});
+
+		// Normal CDF implementations, evaluated at d1 of the sweep point
+		sweep("NormalDistribution.cdf", (k, t) -> {
+			double x = d1(k, t);
+			return i -> NormalDistribution.cdf(x + i * 1e-12);
+		});
+		sweep("BlackScholes.NormalCDF_old", (k, t) -> {
+			BlackScholes bs = new BlackScholes();
+			double x = d1(k, t);
+			return i -> bs.NormalCDF_old(x + i * 1e-12);
+		});
+		sweep("colt Normal.cdf (new)", (k, t) -> {
+			double x = d1(k, t);
+			return i -> new Normal(0.0, 1.0, new MersenneTwister64()).cdf(x + i * 1e-12);
+		});
+		sweep("colt Probability.normal", (k, t) -> {
+			double x = d1(k, t);
+			return i -> Probability.normal(x + i * 1e-12);
+		});
+		sweep("ErfCody.erfc_cody", (k, t) -> {
+			double x = -d1(k, t) * NormalDistribution.ONE_OVER_SQRT_TWO;
+			return i -> ErfCody.erfc_cody(x + i * 1e-12);
+		});
+
+		// Table driven CDF and PDF against the exact mode
+		for (CdfAccuracy a : CdfAccuracy.values()) {
+			sweep("CdfAccuracy." + a + ".cdf", (k, t) -> {
+				double x = d1(k, t);
+				return i -> a.cdf(x + i * 1e-12);
+			});
+			sweep("CdfAccuracy." + a + ".pdf", (k, t) -> {
+				double x = d1(k, t);
+				return i -> a.pdf(x + i * 1e-12);
+			});
+			sweep("Greeks.evaluate " + a, (k, t) -> {
+				double[] out = new double[Greeks.COUNT];
+				return i -> {
+					Greeks.evaluate(S + i * 1e-9, k, t, SIGMA, R, 0.0, true, a, out);
+					return out[Greeks.PRICE];
+				};
+			});
+		}
+	}
+
+	/**
+	 * Main entry point
+	 *
+	 * @param args optional substring filter for case names
+	 */
+	public static void main(String[] args) {
+		new PricingBenchmark(args.length > 0 ? args[0] : null).run();
+	}
+}
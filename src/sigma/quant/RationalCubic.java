@@ -1,9 +1,9 @@
 package sigma.quant;
 
 public class RationalCubic {
-	private final static double DBL_EPSILON = 0.00000000001;
+	private final static double DBL_EPSILON = Math.ulp(1.0);
 	private final static double DBL_MAX = Double.MAX_VALUE;
-	private final static double DBL_MIN = Double.MIN_VALUE;
+	private final static double DBL_MIN = Double.MIN_NORMAL;
 	
 	static double minimum_rational_cubic_control_parameter_value = -(1 - Math.sqrt(DBL_EPSILON));
 	static double maximum_rational_cubic_control_parameter_value = 2 / (DBL_EPSILON * DBL_EPSILON);
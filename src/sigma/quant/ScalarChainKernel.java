@@ -0,0 +1,61 @@
+package sigma.quant;
+
+/**
+ * Scalar chain kernel, the fallback when the vector kernel is not
+ * available. Uses the CDF accuracy of the chain.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class ScalarChainKernel implements ChainKernel {
+
+	@Override
+	public void evaluate(OptionChain chain, int from, int to) {
+		final CdfAccuracy acc = chain.accuracy;
+
+		for (int i = from; i < to; i++) {
+			final double s = chain.s[i];
+			final double k = chain.k[i];
+			final double t = chain.t[i];
+			final double sigma = chain.sigma[i];
+			final double r = chain.r[i];
+			final double d = chain.d[i];
+
+			final double sqt = Math.sqrt(t);
+			final double st = sigma * sqt;
+			final double d1 = (Math.log(s / k) + t * (r + 0.5 * sigma * sigma)) / st;
+			final double d2 = d1 - st;
+
+			final double nd1 = acc.cdf(d1);
+			final double nd2 = acc.cdf(d2);
+			final double pd1 = acc.pdf(d1);
+			final double edt = Math.exp(-d * t);
+			final double ert = Math.exp(-r * t);
+
+			final double callPrice = s * nd1 - ert * k * nd2;
+			final double thetaX = -edt * (s * pd1 * sigma) / (2 * sqt);
+			final double thetaY = r * k * ert;
+			final double thetaZ = d * s * edt;
+
+			if (chain.side[i] == OptionChain.CALL) {
+				chain.price[i] = callPrice;
+				chain.delta[i] = edt * nd1;
+				chain.theta[i] = thetaX - thetaY * nd2 + thetaZ * nd1;
+			} else {
+				chain.price[i] = callPrice - s + k * ert;
+				chain.delta[i] = -edt * (1 - nd1);
+				chain.theta[i] = thetaX + thetaY * (1 - nd2) - thetaZ * (1 - nd1);
+			}
+
+			double g = edt * pd1 / (s * st);
+			chain.gamma[i] = Double.isNaN(g) ? 0.0 : g;
+			chain.vega[i] = s * edt * pd1 * sqt;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+}
@@ -0,0 +1,369 @@
+package sigma.quant;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Full revaluation scenario engine.
+ *
+ * The position is revalued on a grid of relative underlying moves,
+ * absolute volatility shifts and calendar days forward and the P&L
+ * against the current market is written into a dense cube. Scenario
+ * rows are evaluated in parallel on a fork-join pool.
+ *
+ * Before the run the position is compacted: options with zero position
+ * are dropped and puts are folded into calls on the same strike and
+ * expiry through put-call parity, so every cell evaluates one Black-Scholes
+ * price per distinct strike and expiry. Logarithms, discount factors and
+ * square roots that do not depend on the cell are precomputed, cells
+ * do not allocate. Prices follow the convention of Greeks.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class ScenarioEngine {
+
+	// Scenario rows (spot and vol pairs) per task
+	private static final int THRESHOLD = 4;
+
+	private final ForkJoinPool pool;
+
+	private CdfAccuracy accuracy = CdfAccuracy.CODY;
+
+	/**
+	 * Engine running on the common fork-join pool
+	 */
+	public ScenarioEngine() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Engine running on given pool
+	 *
+	 * @param pool fork-join pool
+	 */
+	public ScenarioEngine(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Sets the normal CDF accuracy used for the revaluation. With a table
+	 * mode the error of a cell is bounded by the stated CDF error times
+	 * the gross notional of the position.
+	 *
+	 * @param accuracy CDF accuracy
+	 */
+	public void setAccuracy(CdfAccuracy accuracy) {
+		this.accuracy = accuracy;
+	}
+
+	public CdfAccuracy getAccuracy() {
+		return accuracy;
+	}
+
+	/**
+	 * Revalues the portfolio on a scenario grid
+	 *
+	 * @param options option portfolio, sigma and t must be set
+	 * @param pos position per option
+	 * @param spot relative underlying moves, eg. -0.05 for a 5% drop
+	 * @param vol absolute volatility shifts, eg. 0.02 for two vol points up
+	 * @param days calendar days forward
+	 * @return P&L cube
+	 */
+	public Cube run(List<Option> options, double[] pos, double[] spot, double[] vol, double[] days) {
+		Cube cube = new Cube(spot, vol, days);
+		run(new OptionChain(options), pos, cube);
+		return cube;
+	}
+
+	/**
+	 * Revalues the chain on the grid of the cube, the cube is overwritten.
+	 * Reusing the cube between runs avoids allocating the result.
+	 *
+	 * @param chain option chain
+	 * @param pos position per chain row
+	 * @param cube scenario grid and result
+	 */
+	public void run(OptionChain chain, double[] pos, Cube cube) {
+		Legs legs;
+		int rows = cube.spot.length * cube.vol.length;
+		double[] m = new double[cube.spot.length];
+		double[] lm = new double[cube.spot.length];
+
+		if (pos.length < chain.size())
+			throw new IllegalArgumentException("Position vector shorter than the chain");
+
+		legs = new Legs(chain, pos, cube.days, accuracy);
+		for (int i = 0; i < m.length; i++) {
+			m[i] = 1.0 + cube.spot[i];
+			lm[i] = Math.log(m[i]);
+		}
+
+		if (legs.n == 0 || rows == 0) {
+			Arrays.fill(cube.pnl, 0.0);
+			return;
+		}
+		pool.invoke(new Rows(legs, m, lm, cube, 0, rows));
+	}
+
+	/**
+	 * Compacted position, one entry per distinct strike and expiry
+	 */
+	static class Legs {
+		int n;
+		int days;
+
+		double[] s;
+		double[] k;
+		double[] lsk;    // log(s / k)
+		double[] sigma;
+		double[] r;
+		double[] wCall;  // Call equivalent position
+		double[] wLin;   // Put position, linear part of the parity
+
+		// Per leg and day, index leg * days + day
+		double[] tau;
+		double[] sqt;
+		double[] kert;   // Discounted strike
+
+		double base;
+
+		final CdfAccuracy acc;
+
+		Legs(OptionChain chain, double[] pos, double[] fwd) {
+			this(chain, pos, fwd, CdfAccuracy.CODY);
+		}
+
+		Legs(OptionChain chain, double[] pos, double[] fwd, CdfAccuracy acc) {
+			Integer[] idx;
+			int m = 0;
+
+			this.acc = acc;
+
+			for (int i = 0; i < chain.size(); i++)
+				if (pos[i] != 0.0)
+					m++;
+
+			idx = new Integer[m];
+			m = 0;
+			for (int i = 0; i < chain.size(); i++)
+				if (pos[i] != 0.0)
+					idx[m++] = i;
+
+			// Rows that only differ in side end up next to each other
+			Arrays.sort(idx, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					int c = Double.compare(chain.k[a], chain.k[b]);
+					if (c == 0) c = Double.compare(chain.t[a], chain.t[b]);
+					if (c == 0) c = Double.compare(chain.s[a], chain.s[b]);
+					if (c == 0) c = Double.compare(chain.sigma[a], chain.sigma[b]);
+					if (c == 0) c = Double.compare(chain.r[a], chain.r[b]);
+					return c;
+				}
+			});
+
+			s = new double[m];
+			k = new double[m];
+			lsk = new double[m];
+			sigma = new double[m];
+			r = new double[m];
+			wCall = new double[m];
+			wLin = new double[m];
+			double[] t = new double[m];
+
+			for (int j = 0; j < m; j++) {
+				int i = idx[j];
+
+				if (n == 0 || chain.k[i] != k[n - 1] || chain.t[i] != t[n - 1] || chain.s[i] != s[n - 1] ||
+						chain.sigma[i] != sigma[n - 1] || chain.r[i] != r[n - 1]) {
+					s[n] = chain.s[i];
+					k[n] = chain.k[i];
+					t[n] = chain.t[i];
+					lsk[n] = Math.log(s[n] / k[n]);
+					sigma[n] = chain.sigma[i];
+					r[n] = chain.r[i];
+					n++;
+				}
+
+				// put = call - s + k * exp(-r * t)
+				wCall[n - 1] += pos[i];
+				if (chain.side[i] == OptionChain.PUT)
+					wLin[n - 1] += pos[i];
+			}
+
+			days = fwd.length;
+			tau = new double[n * days];
+			sqt = new double[n * days];
+			kert = new double[n * days];
+
+			for (int j = 0; j < n; j++) {
+				for (int l = 0; l < days; l++) {
+					double tt = t[j] - fwd[l] / ExpiryCalendar.DAYS_PER_YEAR;
+
+					tau[j * days + l] = tt;
+					sqt[j * days + l] = tt > 0 ? Math.sqrt(tt) : 0.0;
+					kert[j * days + l] = tt > 0 ? k[j] * Math.exp(-r[j] * tt) : k[j];
+				}
+
+				// Current market value
+				double sq = t[j] > 0 ? Math.sqrt(t[j]) : 0.0;
+				base += value(j, 1.0, 0.0, sigma[j], t[j], sq, t[j] > 0 ? k[j] * Math.exp(-r[j] * t[j]) : k[j]);
+			}
+		}
+
+		/**
+		 * Position value of one leg
+		 *
+		 * @param j leg
+		 * @param m spot multiplier
+		 * @param lm log of the spot multiplier
+		 * @param vol volatility
+		 * @param tt time to maturity
+		 * @param sq square root of time to maturity
+		 * @param ke discounted strike
+		 * @return value
+		 */
+		double value(int j, double m, double lm, double vol, double tt, double sq, double ke) {
+			final double sp = s[j] * m;
+			double c;
+
+			if (tt <= 0)
+				c = Math.max(sp - k[j], 0.0);
+			else if (vol <= 0)
+				c = Math.max(sp - ke, 0.0);
+			else {
+				final double st = vol * sq;
+				final double d1 = (lsk[j] + lm + tt * (r[j] + 0.5 * vol * vol)) / st;
+				c = sp * acc.cdf(d1) - ke * acc.cdf(d1 - st);
+			}
+			return wCall[j] * c + wLin[j] * (ke - sp);
+		}
+	}
+
+	/**
+	 * Range of scenario rows, a row is a spot and vol pair over all days
+	 */
+	private static class Rows extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Legs legs;
+		private final double[] m;
+		private final double[] lm;
+		private final Cube cube;
+		private final int from;
+		private final int to;
+
+		Rows(Legs legs, double[] m, double[] lm, Cube cube, int from, int to) {
+			this.legs = legs;
+			this.m = m;
+			this.lm = lm;
+			this.cube = cube;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Rows(legs, m, lm, cube, from, mid),
+						  new Rows(legs, m, lm, cube, mid, to));
+				return;
+			}
+
+			final int nv = cube.vol.length;
+			final int nd = legs.days;
+
+			for (int row = from; row < to; row++) {
+				final int is = row / nv;
+				final int iv = row % nv;
+
+				for (int l = 0; l < nd; l++) {
+					double sum = 0.0;
+
+					for (int j = 0; j < legs.n; j++) {
+						final int p = j * nd + l;
+						sum += legs.value(j, m[is], lm[is], legs.sigma[j] + cube.vol[iv], legs.tau[p], legs.sqt[p], legs.kert[p]);
+					}
+					cube.pnl[row * nd + l] = sum - legs.base;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scenario grid and the P&L per scenario, stored densely with the
+	 * days index running fastest
+	 */
+	public static class Cube {
+		private final double[] spot;
+		private final double[] vol;
+		private final double[] days;
+		private final double[] pnl;
+
+		/**
+		 * Cube for given grid
+		 *
+		 * @param spot relative underlying moves
+		 * @param vol absolute volatility shifts
+		 * @param days calendar days forward
+		 */
+		public Cube(double[] spot, double[] vol, double[] days) {
+			this.spot = spot.clone();
+			this.vol = vol.clone();
+			this.days = days.clone();
+			this.pnl = new double[spot.length * vol.length * days.length];
+		}
+
+		/**
+		 * P&L of one scenario
+		 *
+		 * @param i spot move index
+		 * @param j vol shift index
+		 * @param l days forward index
+		 * @return P&L against the current market
+		 */
+		public double get(int i, int j, int l) {
+			return pnl[index(i, j, l)];
+		}
+
+		public int index(int i, int j, int l) {
+			return (i * vol.length + j) * days.length + l;
+		}
+
+		/**
+		 * Worst P&L over the grid
+		 *
+		 * @return minimum P&L
+		 */
+		public double min() {
+			double v = Double.POSITIVE_INFINITY;
+
+			for (double p : pnl)
+				v = Math.min(v, p);
+			return v;
+		}
+
+		public double[] getPnl() {
+			return pnl;
+		}
+
+		public double[] getSpot() {
+			return spot;
+		}
+
+		public double[] getVol() {
+			return vol;
+		}
+
+		public double[] getDays() {
+			return days;
+		}
+	}
+}
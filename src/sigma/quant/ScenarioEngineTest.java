@@ -0,0 +1,67 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class ScenarioEngineTest {
+
+	private static final double[] SPOT = {-0.1, -0.02, 0.0, 0.03, 0.1};
+	private static final double[] VOL = {-0.05, 0.0, 0.04};
+	private static final double[] DAYS = {0.0, 1.0, 10.0, 40.0};
+
+	private static List<Option> portfolio(double[] pos) {
+		List<Option> l = new ArrayList<>();
+
+		for (int i = 0; i < pos.length; i++) {
+			Option o = new Option(55.0, 50.0 + (i / 2), i < 10 ? 0.08 : 0.3, 0.3 + 0.01 * i, 0.02, 0.0,
+					i % 2 == 0 ? OptSide.CALL : OptSide.PUT);
+			l.add(o);
+		}
+		return l;
+	}
+
+	private static double value(List<Option> l, double[] pos, double ds, double dv, double days) {
+		double v = 0.0;
+
+		for (int i = 0; i < l.size(); i++) {
+			Option o = l.get(i);
+			double t = o.t - days / 365.0;
+
+			if (t <= 0)
+				v += pos[i] * Math.max(o.side == OptSide.CALL ? o.s() * (1 + ds) - o.k : o.k - o.s() * (1 + ds), 0.0);
+			else
+				v += pos[i] * new Greeks(o.s() * (1 + ds), o.k, t, o.sigma + dv, o.r, o.d, o.side).getPrice();
+		}
+		return v;
+	}
+
+	@Test
+	public final void testFullRevaluation() {
+		double[] pos = {1, -2, 0, 3, -1, 1, 2, 0, 0, -4, 1, 1, -1, 2, 5, -3};
+		List<Option> l = portfolio(pos);
+		ScenarioEngine.Cube c = new ScenarioEngine().run(l, pos, SPOT, VOL, DAYS);
+		double base = value(l, pos, 0.0, 0.0, 0.0);
+
+		assertEquals(0.0, c.get(2, 1, 0), 0.0);
+		for (int i = 0; i < SPOT.length; i++)
+			for (int j = 0; j < VOL.length; j++)
+				for (int d = 0; d < DAYS.length; d++)
+					assertEquals(value(l, pos, SPOT[i], VOL[j], DAYS[d]) - base, c.get(i, j, d), 1e-10);
+	}
+
+	@Test
+	public final void testThreadIndependence() {
+		double[] pos = {1, -2, 0, 3, -1, 1, 2, 0, 0, -4, 1, 1, -1, 2, 5, -3};
+		List<Option> l = portfolio(pos);
+		ScenarioEngine.Cube a = new ScenarioEngine(new ForkJoinPool(1)).run(l, pos, SPOT, VOL, DAYS);
+		ScenarioEngine.Cube b = new ScenarioEngine(new ForkJoinPool(4)).run(l, pos, SPOT, VOL, DAYS);
+
+		assertArrayEquals(a.getPnl(), b.getPnl(), 0.0);
+	}
+
+}
@@ -0,0 +1,24 @@
+package sigma.quant;
+
+/**
+ * Outcome of an implied volatility solve
+ * 
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public enum SolverStatus {
+	SUCCESS, UNDEFINED, ERROR;
+	
+	@Override
+	public String toString() {
+		switch(this) {
+		case SUCCESS:
+			return("success");
+		case UNDEFINED:
+			return("undefined");
+		default:
+			return("error");
+		}
+	}
+}
@@ -0,0 +1,343 @@
+package sigma.quant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Implied volatility surface calibration.
+ *
+ * The chain is partitioned by expiry, time to maturity is taken once
+ * per expiry from a single expiry calendar refresh and the implied volatilities are
+ * solved on a fork-join pool. Every option is solved independently from
+ * the same inputs, so the results do not depend on the number of threads.
+ *
+ * Options keep their last solve (see Option.calcVol()), so on a refresh
+ * quotes that did not move are not solved again and small moves are
+ * warm started from the previous volatility.
+ *
+ * In OTM mode only the out of the money leg of every strike that has both
+ * a call and a put is solved. The in the money leg gets the same volatility
+ * (put-call parity on the forward holds for Black prices with equal
+ * volatility). If it has no quote its parity price is kept in
+ * getDerivedPrices(), the price of the option stays reserved for market
+ * quotes. The difference between the quoted in the money price and the
+ * parity price is kept as a diagnostic, see getParity().
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class SurfaceCalibrator {
+
+	// Options per task before an expiry is split further
+	private static final int THRESHOLD = 32;
+
+	/**
+	 * Which options are solved
+	 */
+	public enum Mode {
+		ALL, // Every option independently
+		OTM  // Out of the money leg per strike, in the money leg by parity
+	}
+
+	private final ForkJoinPool pool;
+	private final ExpiryCalendar calendar;
+
+	private volatile Mode mode = Mode.ALL;
+	private volatile double[] parity = new double[0];
+	private volatile double[] derived = new double[0];
+
+	/**
+	 * Calibrator running on the common fork-join pool
+	 */
+	public SurfaceCalibrator() {
+		this(ForkJoinPool.commonPool(), new ExpiryCalendar());
+	}
+
+	/**
+	 * Calibrator running on given pool
+	 *
+	 * @param pool fork-join pool
+	 * @param calendar expiry calendar
+	 */
+	public SurfaceCalibrator(ForkJoinPool pool, ExpiryCalendar calendar) {
+		this.pool = pool;
+		this.calendar = calendar;
+	}
+
+	/**
+	 * Returns the expiry calendar
+	 *
+	 * @return expiry calendar
+	 */
+	public ExpiryCalendar getCalendar() {
+		return calendar;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Parity diagnostic of the last calibration in OTM mode: quoted price
+	 * of the in the money leg minus the price implied by put-call parity
+	 * from the out of the money leg. NaN for options that were solved
+	 * directly or where either leg has no quote.
+	 *
+	 * @return parity violation per option, in the order of the list
+	 */
+	public double[] getParity() {
+		return parity;
+	}
+
+	/**
+	 * Parity prices of the unquoted in the money legs of the last
+	 * calibration in OTM mode, NaN for all other options
+	 *
+	 * @return derived price per option, in the order of the list
+	 */
+	public double[] getDerivedPrices() {
+		return derived;
+	}
+
+	/**
+	 * Largest absolute parity violation of the last calibration
+	 *
+	 * @return maximum violation, zero if there were no pairs
+	 */
+	public double maxParityViolation() {
+		double v = 0.0;
+
+		for (double p : parity)
+			if (Math.abs(p) > v)
+				v = Math.abs(p);
+		return v;
+	}
+
+	/**
+	 * Solves implied volatilities for all the options. Sigma and t
+	 * are updated in place.
+	 *
+	 * @param options option chain
+	 * @return solver status per option, in the order of the list
+	 */
+	public SolverStatus[] calibrate(List<Option> options) {
+		SolverStatus[] status = new SolverStatus[options.size()];
+		Map<String, List<Integer>> expiries = partition(options);
+		List<Slice> tasks = new ArrayList<>();
+		List<int[]> pairs = new ArrayList<>();
+		List<Double> pairTau = new ArrayList<>();
+		double[] diag = new double[options.size()];
+		double[] prices = new double[options.size()];
+
+		calendar.refresh();
+		Arrays.fill(diag, Double.NaN);
+		Arrays.fill(prices, Double.NaN);
+
+		for (Map.Entry<String, List<Integer>> e : expiries.entrySet()) {
+			double tau = calendar.tau(e.getKey());
+			int[] idx;
+
+			if (mode == Mode.OTM) {
+				int n = pairs.size();
+				idx = otmLegs(options, e.getValue(), tau, pairs);
+				for (int i = n; i < pairs.size(); i++)
+					pairTau.add(tau);
+			} else {
+				idx = new int[e.getValue().size()];
+				for (int i = 0; i < idx.length; i++)
+					idx[i] = e.getValue().get(i);
+			}
+
+			tasks.add(new Slice(options, idx, 0, idx.length, tau, status));
+		}
+
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+
+		for (int i = 0; i < pairs.size(); i++)
+			parity(options, pairs.get(i)[0], pairs.get(i)[1], pairTau.get(i), status, diag, prices);
+
+		parity = diag;
+		derived = prices;
+		return status;
+	}
+
+	/**
+	 * Picks the legs to solve in OTM mode. Strikes with both a call and
+	 * a put contribute the out of the money leg and an (itm, otm) pair,
+	 * other options are solved directly.
+	 *
+	 * @param options option chain
+	 * @param group option indices of one expiry
+	 * @param tau time to maturity of the expiry
+	 * @param pairs output, (itm, otm) index pairs
+	 * @return option indices to solve
+	 */
+	static int[] otmLegs(List<Option> options, List<Integer> group, double tau, List<int[]> pairs) {
+		Map<Double, int[]> strikes = new LinkedHashMap<>();
+		int[] idx = new int[group.size()];
+		int n = 0;
+
+		for (int i : group) {
+			Option o = options.get(i);
+			int[] legs = strikes.get(o.k);
+
+			if (legs == null) {
+				legs = new int[] {-1, -1};
+				strikes.put(o.k, legs);
+			}
+			legs[o.side == OptSide.CALL ? 0 : 1] = i;
+		}
+
+		for (int i : group) {
+			Option o = options.get(i);
+			int[] legs = strikes.get(o.k);
+
+			if (legs[0] < 0 || legs[1] < 0 || legs[0] != i && legs[1] != i) {
+				// Single leg, or a duplicate of the same side
+				idx[n++] = i;
+				continue;
+			}
+			if (legs[0] != i)
+				continue;
+
+			// Forward of the Black formula as in Option.calcVol()
+			Option call = options.get(legs[0]);
+			double fwd = call.s() / Math.exp(-call.r * tau);
+			int otm = call.k >= fwd ? legs[0] : legs[1];
+			int itm = otm == legs[0] ? legs[1] : legs[0];
+
+			idx[n++] = otm;
+			pairs.add(new int[] {itm, otm});
+		}
+		return Arrays.copyOf(idx, n);
+	}
+
+	/**
+	 * Derives the in the money leg of a pair from the solved out of the
+	 * money leg and records the parity diagnostic against a quoted in the
+	 * money price, or the parity price of an unquoted one. If the out of
+	 * the money leg could not be solved the in the money leg is solved
+	 * directly.
+	 */
+	private static void parity(List<Option> options, int itm, int otm, double tau, SolverStatus[] status, double[] diag,
+							   double[] prices) {
+		Option i = options.get(itm);
+		Option o = options.get(otm);
+		double q = i.side == OptSide.CALL ? 1.0 : -1.0;
+		double implied = Double.NaN;
+
+		// call - put = s - k * exp(-r * t)
+		if (o.price > 0 && tau > 0) {
+			implied = o.price + q * (i.s() - i.k * Math.exp(-i.r * tau));
+			if (i.price > 0)
+				diag[itm] = i.price - implied;
+		}
+
+		if (status[otm] != SolverStatus.SUCCESS) {
+			status[itm] = solve(i, tau);
+			return;
+		}
+
+		i.t = tau;
+		i.sigma = o.sigma;
+		if (!(i.price > 0) && implied > 0)
+			prices[itm] = implied;
+		status[itm] = SolverStatus.SUCCESS;
+	}
+
+	/**
+	 * Solves one option, sigma is set to zero on failure
+	 *
+	 * @param o option
+	 * @param tau time to maturity
+	 * @return solver status
+	 */
+	private static SolverStatus solve(Option o, double tau) {
+		if (Double.isNaN(tau)) {
+			o.sigma = 0.0;
+			return SolverStatus.ERROR;
+		}
+
+		try {
+			return o.calcVol(tau);
+		} catch (RuntimeException e) {
+			o.sigma = 0.0;
+			return SolverStatus.ERROR;
+		}
+	}
+
+	/**
+	 * Groups option indices by expiry, keeping the order of first appearance
+	 *
+	 * @param options option chain
+	 * @return expiry to option indices map
+	 */
+	static Map<String, List<Integer>> partition(List<Option> options) {
+		Map<String, List<Integer>> groups = new LinkedHashMap<>();
+
+		for (int i = 0; i < options.size(); i++) {
+			String exp = options.get(i).getExpiry();
+			List<Integer> g = groups.get(exp);
+
+			if (g == null) {
+				g = new ArrayList<>();
+				groups.put(exp, g);
+			}
+			g.add(i);
+		}
+		return groups;
+	}
+
+	/**
+	 * Slice of one expiry
+	 */
+	private static class Slice extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Option> options;
+		private final int[] idx;
+		private final int from;
+		private final int to;
+		private final double tau;
+		private final SolverStatus[] status;
+
+		Slice(List<Option> options, int[] idx, int from, int to, double tau, SolverStatus[] status) {
+			this.options = options;
+			this.idx = idx;
+			this.from = from;
+			this.to = to;
+			this.tau = tau;
+			this.status = status;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Slice(options, idx, from, mid, tau, status),
+						  new Slice(options, idx, mid, to, tau, status));
+				return;
+			}
+
+			for (int i = from; i < to; i++)
+				status[idx[i]] = solve(options.get(idx[i]), tau);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import java.time.Clock;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class SurfaceCalibratorTest {
+
+	private static final ZoneId ZONE = ZoneId.of("America/New_York");
+	private static final ZonedDateTime NOW = ZonedDateTime.of(2017, 3, 15, 0, 0, 0, 0, ZONE);
+	private static final String EXPIRY = "20170614";
+
+	private static SurfaceCalibrator calibrator() {
+		return new SurfaceCalibrator(ForkJoinPool.commonPool(),
+				new ExpiryCalendar(Clock.fixed(NOW.toInstant(), ZONE), ExpiryCalendar.Convention.CALENDAR));
+	}
+
+	private static double vol(double k) {
+		return 0.3 + 0.002 * Math.abs(k - 55.0);
+	}
+
+	// Calls and puts on 45..65 priced with the same smile
+	private static List<Option> chain(double tau) {
+		List<Option> options = new ArrayList<>();
+
+		for (double k = 45.0; k <= 65.0; k += 1.0)
+			for (OptSide side : OptSide.values()) {
+				Option o = new Option(55.0, k, tau, vol(k), 0.02, 0.0, side);
+				o.setPrice(side == OptSide.CALL ? o.call() : o.put());
+				o.setExpiry(EXPIRY);
+				o.sigma = 0.0;
+				options.add(o);
+			}
+		return options;
+	}
+
+	@Test
+	public void testOtmMatchesFullSolve() {
+		SurfaceCalibrator all = calibrator();
+		SurfaceCalibrator otm = calibrator();
+		double tau = all.getCalendar().tau(EXPIRY);
+		List<Option> a = chain(tau);
+		List<Option> b = chain(tau);
+
+		otm.setMode(SurfaceCalibrator.Mode.OTM);
+		SolverStatus[] sa = all.calibrate(a);
+		SolverStatus[] sb = otm.calibrate(b);
+
+		for (int i = 0; i < a.size(); i++) {
+			assertEquals(SolverStatus.SUCCESS, sa[i]);
+			assertEquals(SolverStatus.SUCCESS, sb[i]);
+			assertEquals(vol(a.get(i).k), b.get(i).sigma, 1e-9);
+			assertEquals(a.get(i).sigma, b.get(i).sigma, 1e-9);
+		}
+
+		// One leg per strike is solved, the other is a parity pair
+		int pairs = 0;
+		for (double p : otm.getParity())
+			if (!Double.isNaN(p)) {
+				assertEquals(0.0, p, 1e-10);
+				pairs++;
+			}
+		assertEquals(a.size() / 2, pairs);
+		assertEquals(0.0, all.maxParityViolation(), 0.0);
+	}
+
+	@Test
+	public void testItmLegByParity() {
+		SurfaceCalibrator otm = calibrator();
+		double tau = otm.getCalendar().tau(EXPIRY);
+		List<Option> options = chain(tau);
+
+		otm.setMode(SurfaceCalibrator.Mode.OTM);
+
+		// Deep in the money call with a stale quote and an unquoted put
+		Option call = options.get(0);
+		Option put = options.get(options.size() - 1);
+		double fair = call.getPrice();
+		double putFair = put.getPrice();
+		call.setPrice(fair + 0.05);
+		put.setPrice(-1.0);
+
+		SolverStatus[] status = otm.calibrate(options);
+
+		assertEquals(SolverStatus.SUCCESS, status[0]);
+		assertEquals(vol(45.0), call.sigma, 1e-9);
+		assertEquals(0.05, otm.getParity()[0], 1e-10);
+		assertEquals(0.05, otm.maxParityViolation(), 1e-10);
+
+		assertEquals(SolverStatus.SUCCESS, status[options.size() - 1]);
+		assertEquals(vol(65.0), put.sigma, 1e-9);
+		assertEquals(putFair, otm.getDerivedPrices()[options.size() - 1], 1e-10);
+		assertTrue(Double.isNaN(otm.getParity()[options.size() - 1]));
+
+		// The quote of the put stays empty, its derived price follows the call
+		Option otmCall = options.get(options.size() - 2);
+		assertEquals(65.0, otmCall.getStrike(), 0.0);
+		otmCall.setPrice(otmCall.getPrice() + 0.2);
+		call.setPrice(fair);
+		otm.calibrate(options);
+
+		assertEquals(-1.0, put.getPrice(), 0.0);
+		assertEquals(putFair + 0.2, otm.getDerivedPrices()[options.size() - 1], 1e-10);
+		assertTrue(Double.isNaN(otm.getParity()[options.size() - 1]));
+		assertEquals(0.0, otm.maxParityViolation(), 1e-10);
+		assertTrue(Double.isNaN(otm.getDerivedPrices()[0]));
+	}
+}
@@ -0,0 +1,386 @@
+package sigma.quant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Raw SVI smile calibration per expiry.
+ *
+ * The implied volatilities of the options (see Option.calcVol() and
+ * SurfaceCalibrator) are turned into total variance against log-moneyness
+ * and a raw SVI smile is fitted to every expiry by Levenberg-Marquardt on
+ * the total variance residuals. Expiries are fitted in parallel on a
+ * fork-join pool. The last fit of every expiry is kept and used as the
+ * starting point of the next one, so an intraday refit takes only a few
+ * iterations. A warm fit that ends well above the error of the previous
+ * fit, eg. after the smile changed shape, is repeated from a cold start
+ * and the better of the two is kept.
+ *
+ * Parameters are projected back to b >= 0, |rho| < 1, sigma > 0 and a
+ * non-negative minimum variance after every step.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class SviCalibrator {
+
+	public static final int MAX_ITERATIONS = 200;
+
+	// Relative decrease of the squared error or relative parameter step
+	// treated as converged
+	static final double TOLERANCE = 1e-10;
+
+	// Root mean square total variance error treated as converged, well
+	// below the noise of quoted volatilities
+	static final double RMS_TOLERANCE = 1e-9;
+
+	// Initial damping for cold and warm starts, relative to the largest
+	// diagonal element of J'J
+	static final double COLD_LAMBDA = 1e-6;
+	static final double WARM_LAMBDA = 1e-8;
+
+	// A warm fit worse than this many times the previous error, and worse
+	// than FALLBACK_RMS, is repeated from a cold start
+	static final double FALLBACK_FACTOR = 10.0;
+	static final double FALLBACK_RMS = 1e-6;
+
+	// Minimum number of quotes per expiry
+	static final int MIN_QUOTES = 5;
+
+	private static final double MAX_RHO = 0.999;
+	private static final double MIN_SIGMA = 1e-4;
+
+	private final ForkJoinPool pool;
+	private final Map<String, SviSmile> last = new ConcurrentHashMap<>();
+
+	/**
+	 * Calibrator running on the common fork-join pool
+	 */
+	public SviCalibrator() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Calibrator running on given pool
+	 *
+	 * @param pool fork-join pool
+	 */
+	public SviCalibrator(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Fits a smile to every expiry with enough solved options. Options
+	 * without a volatility or time to maturity are skipped.
+	 *
+	 * @param options options with sigma and t set
+	 * @return smile per expiry, in the order of first appearance
+	 */
+	public Map<String, SviSmile> calibrate(List<Option> options) {
+		Map<String, SviSmile> out = new LinkedHashMap<>();
+		List<Fit> tasks = new ArrayList<>();
+
+		for (Map.Entry<String, List<Integer>> e : SurfaceCalibrator.partition(options).entrySet()) {
+			List<Option> quotes = new ArrayList<>();
+
+			for (int i : e.getValue()) {
+				Option o = options.get(i);
+				if (o.sigma > 0 && o.t > 0)
+					quotes.add(o);
+			}
+			if (quotes.size() >= MIN_QUOTES)
+				tasks.add(new Fit(e.getKey(), quotes, last.get(e.getKey())));
+		}
+
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+
+		for (Fit f : tasks) {
+			last.put(f.expiry, f.result);
+			out.put(f.expiry, f.result);
+		}
+		return out;
+	}
+
+	/**
+	 * Returns the last fit of an expiry
+	 *
+	 * @param expiry expiry
+	 * @return smile, null if the expiry has not been fitted
+	 */
+	public SviSmile get(String expiry) {
+		return last.get(expiry);
+	}
+
+	/**
+	 * Forgets the previous fits, the next calibration starts cold
+	 */
+	public void reset() {
+		last.clear();
+	}
+
+	/**
+	 * Fit of one expiry
+	 */
+	private static class Fit extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final String expiry;
+		private final List<Option> quotes;
+		private final SviSmile previous;
+		private SviSmile result;
+
+		Fit(String expiry, List<Option> quotes, SviSmile previous) {
+			this.expiry = expiry;
+			this.quotes = quotes;
+			this.previous = previous;
+		}
+
+		@Override
+		protected void compute() {
+			int n = quotes.size();
+			double[] k = new double[n];
+			double[] w = new double[n];
+			double t = quotes.get(0).t;
+			double fwd = 0.0;
+			double[] p;
+			int iter;
+
+			for (Option o : quotes)
+				fwd += o.s() / Math.exp(-o.r * o.t);
+			fwd /= n;
+
+			for (int i = 0; i < n; i++) {
+				Option o = quotes.get(i);
+				k[i] = Math.log(o.k / fwd);
+				w[i] = o.sigma * o.sigma * o.t;
+			}
+
+			p = guess(k, w);
+			if (previous != null) {
+				double[] cold = p;
+				double limit = Math.max(FALLBACK_FACTOR * previous.getRms(), FALLBACK_RMS);
+
+				p = previous.getParams();
+				iter = fit(k, w, p, WARM_LAMBDA, MAX_ITERATIONS);
+				if (sse(k, w, p) > n * limit * limit || sse(k, w, p) > sse(k, w, cold)) {
+					iter += fit(k, w, cold, COLD_LAMBDA, MAX_ITERATIONS);
+					if (sse(k, w, cold) < sse(k, w, p))
+						p = cold;
+				}
+			} else {
+				iter = fit(k, w, p, COLD_LAMBDA, MAX_ITERATIONS);
+			}
+			result = new SviSmile(p, t, fwd, Math.sqrt(sse(k, w, p) / n), iter);
+		}
+	}
+
+	/**
+	 * Cold start: flat smile centered at the lowest variance quote
+	 *
+	 * @param k log-moneyness
+	 * @param w total variance
+	 * @return parameters
+	 */
+	static double[] guess(double[] k, double[] w) {
+		int lo = 0;
+
+		for (int i = 1; i < k.length; i++)
+			if (w[i] < w[lo])
+				lo = i;
+
+		double[] p = new double[SviSmile.COUNT];
+		p[SviSmile.B] = 0.1;
+		p[SviSmile.RHO] = 0.0;
+		p[SviSmile.M] = k[lo];
+		p[SviSmile.SIGMA] = 0.1;
+		p[SviSmile.A] = w[lo] - p[SviSmile.B] * p[SviSmile.SIGMA];
+		project(p);
+		return p;
+	}
+
+	/**
+	 * Levenberg-Marquardt fit of raw SVI to total variances
+	 *
+	 * @param k log-moneyness
+	 * @param w total variance
+	 * @param p starting parameters, overwritten with the fit
+	 * @param lambda initial damping, small when starting close to the solution
+	 * @param maxIter maximum number of iterations
+	 * @return number of iterations taken
+	 */
+	static int fit(double[] k, double[] w, double[] p, double lambda, int maxIter) {
+		final int np = SviSmile.COUNT;
+		final double[] jac = new double[np];
+		final double[] jtj = new double[np * np];
+		final double[] jtr = new double[np];
+		final double[] a = new double[np * np];
+		final double[] step = new double[np];
+		final double[] trial = new double[np];
+		double err = sse(k, w, p);
+		double floor = k.length * RMS_TOLERANCE * RMS_TOLERANCE;
+		int iter;
+
+		if (err <= floor)
+			return 0;
+
+		for (iter = 0; iter < maxIter; iter++) {
+			Arrays.fill(jtj, 0.0);
+			Arrays.fill(jtr, 0.0);
+
+			for (int i = 0; i < k.length; i++) {
+				final double x = k[i] - p[SviSmile.M];
+				final double r = Math.sqrt(x * x + p[SviSmile.SIGMA] * p[SviSmile.SIGMA]);
+				final double res = p[SviSmile.A] + p[SviSmile.B] * (p[SviSmile.RHO] * x + r) - w[i];
+
+				jac[SviSmile.A] = 1.0;
+				jac[SviSmile.B] = p[SviSmile.RHO] * x + r;
+				jac[SviSmile.RHO] = p[SviSmile.B] * x;
+				jac[SviSmile.M] = -p[SviSmile.B] * (p[SviSmile.RHO] + x / r);
+				jac[SviSmile.SIGMA] = p[SviSmile.B] * p[SviSmile.SIGMA] / r;
+
+				for (int u = 0; u < np; u++) {
+					jtr[u] += jac[u] * res;
+					for (int v = 0; v <= u; v++)
+						jtj[u * np + v] += jac[u] * jac[v];
+				}
+			}
+
+			// Damping is added in proportion to the largest curvature, so
+			// that it also regularises directions whose Jacobian column
+			// vanishes, eg. rho, m and sigma when b is near zero
+			double scale = 0.0;
+			for (int u = 0; u < np; u++)
+				scale = Math.max(scale, jtj[u * np + u]);
+
+			boolean improved = false;
+
+			while (lambda < 1e12) {
+				for (int u = 0; u < np; u++) {
+					for (int v = 0; v <= u; v++)
+						a[u * np + v] = a[v * np + u] = jtj[u * np + v];
+					a[u * np + u] += lambda * scale;
+					step[u] = -jtr[u];
+				}
+
+				if (solve(a, step, np)) {
+					for (int u = 0; u < np; u++)
+						trial[u] = p[u] + step[u];
+					project(trial);
+
+					double e = sse(k, w, trial);
+					if (e < err) {
+						boolean done = e <= floor || err - e <= TOLERANCE * err;
+
+						if (!done) {
+							done = true;
+							for (int u = 0; u < np; u++)
+								if (Math.abs(trial[u] - p[u]) > TOLERANCE * (1 + Math.abs(p[u])))
+									done = false;
+						}
+
+						System.arraycopy(trial, 0, p, 0, np);
+						err = e;
+						lambda = Math.max(lambda / 10, 1e-12);
+						improved = true;
+						if (done)
+							return iter + 1;
+						break;
+					}
+				}
+				lambda *= 10;
+			}
+
+			if (!improved)
+				break;
+		}
+		return iter;
+	}
+
+	/**
+	 * Sum of squared total variance residuals
+	 */
+	static double sse(double[] k, double[] w, double[] p) {
+		double s = 0.0;
+
+		for (int i = 0; i < k.length; i++) {
+			double r = SviSmile.w(p, k[i]) - w[i];
+			s += r * r;
+		}
+		return s;
+	}
+
+	/**
+	 * Projects the parameters to the admissible region
+	 */
+	static void project(double[] p) {
+		p[SviSmile.B] = Math.max(p[SviSmile.B], 0.0);
+		p[SviSmile.RHO] = Math.max(-MAX_RHO, Math.min(MAX_RHO, p[SviSmile.RHO]));
+		p[SviSmile.SIGMA] = Math.max(p[SviSmile.SIGMA], MIN_SIGMA);
+
+		// Minimum of w is a + b sigma sqrt(1 - rho^2)
+		double min = p[SviSmile.A] + p[SviSmile.B] * p[SviSmile.SIGMA] * Math.sqrt(1 - p[SviSmile.RHO] * p[SviSmile.RHO]);
+		if (min < 0)
+			p[SviSmile.A] -= min;
+	}
+
+	/**
+	 * Solves a small dense system in place by Gaussian elimination with
+	 * partial pivoting
+	 *
+	 * @param a matrix, row major, destroyed
+	 * @param x right hand side, overwritten with the solution
+	 * @param n dimension
+	 * @return false if the matrix is singular
+	 */
+	static boolean solve(double[] a, double[] x, int n) {
+		for (int c = 0; c < n; c++) {
+			int piv = c;
+
+			for (int r = c + 1; r < n; r++)
+				if (Math.abs(a[r * n + c]) > Math.abs(a[piv * n + c]))
+					piv = r;
+			if (!(Math.abs(a[piv * n + c]) > 0))
+				return false;
+
+			if (piv != c) {
+				for (int j = 0; j < n; j++) {
+					double tmp = a[c * n + j];
+					a[c * n + j] = a[piv * n + j];
+					a[piv * n + j] = tmp;
+				}
+				double tmp = x[c];
+				x[c] = x[piv];
+				x[piv] = tmp;
+			}
+
+			for (int r = c + 1; r < n; r++) {
+				double f = a[r * n + c] / a[c * n + c];
+				for (int j = c; j < n; j++)
+					a[r * n + j] -= f * a[c * n + j];
+				x[r] -= f * x[c];
+			}
+		}
+
+		for (int c = n - 1; c >= 0; c--) {
+			double s = x[c];
+			for (int j = c + 1; j < n; j++)
+				s -= a[c * n + j] * x[j];
+			x[c] = s / a[c * n + c];
+		}
+		return true;
+	}
+}
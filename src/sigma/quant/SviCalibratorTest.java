@@ -0,0 +1,108 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SviCalibratorTest {
+
+	private static final double S = 55.0;
+	private static final double R = 0.02;
+
+	// Generating smiles per expiry
+	private static final double[][] SVI = {
+		{0.005, 0.05, -0.5, 0.02, 0.10},
+		{0.020, 0.08, -0.4, 0.00, 0.15},
+		{0.060, 0.10, -0.3, -0.02, 0.20}};
+	private static final double[] TAU = {0.1, 0.35, 1.0};
+	private static final String[] EXPIRY = {"20170415", "20170715", "20180315"};
+
+	private static List<Option> chain(double shift) {
+		List<Option> options = new ArrayList<>();
+
+		for (int e = 0; e < TAU.length; e++) {
+			double fwd = S / Math.exp(-R * TAU[e]);
+
+			for (double k = 40.0; k <= 70.0; k += 1.0) {
+				double w = SviSmile.w(SVI[e], Math.log(k / fwd)) + shift * TAU[e];
+				Option o = new Option(S, k, TAU[e], Math.sqrt(w / TAU[e]), R, 0.0, OptSide.CALL);
+				o.setExpiry(EXPIRY[e]);
+				options.add(o);
+			}
+		}
+		return options;
+	}
+
+	@Test
+	public void testRecoversSmile() {
+		SviCalibrator cal = new SviCalibrator();
+		Map<String, SviSmile> fit = cal.calibrate(chain(0.0));
+
+		assertEquals(3, fit.size());
+		for (int e = 0; e < TAU.length; e++) {
+			SviSmile s = fit.get(EXPIRY[e]);
+			double fwd = S / Math.exp(-R * TAU[e]);
+
+			assertTrue(s.toString(), s.getRms() < 1e-8);
+			for (double k = 40.0; k <= 70.0; k += 0.5)
+				assertEquals(Math.sqrt(SviSmile.w(SVI[e], Math.log(k / fwd)) / TAU[e]), s.vol(k), 1e-6);
+		}
+	}
+
+	@Test
+	public void testWarmStart() {
+		SviCalibrator cal = new SviCalibrator();
+		SviCalibrator cold = new SviCalibrator();
+
+		cal.calibrate(chain(0.0));
+
+		// Parallel shift of one vol point squared
+		Map<String, SviSmile> warm = cal.calibrate(chain(0.0004));
+		Map<String, SviSmile> fresh = cold.calibrate(chain(0.0004));
+
+		for (String e : EXPIRY) {
+			assertTrue(warm.get(e).getRms() < 1e-8);
+			assertTrue(warm.get(e).getIterations() < fresh.get(e).getIterations());
+			assertTrue(warm.get(e).getIterations() <= 10);
+			assertSame(warm.get(e), cal.get(e));
+		}
+	}
+
+	@Test
+	public void testWarmStartFromFlatSmile() {
+		SviCalibrator cal = new SviCalibrator();
+		List<Option> flat = chain(0.0);
+
+		// A flat smile fits with b = 0, where rho, m and sigma have no gradient
+		for (Option o : flat)
+			o.sigma = 0.25;
+		cal.calibrate(flat);
+
+		Map<String, SviSmile> fit = cal.calibrate(chain(0.0));
+		for (int e = 0; e < TAU.length; e++) {
+			SviSmile s = fit.get(EXPIRY[e]);
+			double fwd = S / Math.exp(-R * TAU[e]);
+
+			assertTrue(s.toString(), s.getRms() < 1e-8);
+			assertEquals(Math.sqrt(SviSmile.w(SVI[e], Math.log(60.0 / fwd)) / TAU[e]), s.vol(60.0), 1e-6);
+			assertSame(s, cal.get(EXPIRY[e]));
+		}
+	}
+
+	@Test
+	public void testSkipsUnsolvedExpiries() {
+		List<Option> options = chain(0.0);
+
+		for (Option o : options)
+			if (o.getExpiry().equals(EXPIRY[0]))
+				o.sigma = 0.0;
+
+		Map<String, SviSmile> fit = new SviCalibrator().calibrate(options);
+		assertNull(fit.get(EXPIRY[0]));
+		assertEquals(2, fit.size());
+	}
+}
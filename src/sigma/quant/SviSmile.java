@@ -0,0 +1,123 @@
+package sigma.quant;
+
+/**
+ * Raw SVI volatility smile of one expiry.
+ *
+ * Total implied variance as a function of log-moneyness k = ln(K / F):
+ *
+ *   w(k) = a + b (rho (k - m) + sqrt((k - m)^2 + sigma^2))
+ *
+ * and the implied volatility is sqrt(w / t). Evaluation is constant time
+ * per strike. Instances are immutable.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public final class SviSmile {
+
+	public static final int A = 0;
+	public static final int B = 1;
+	public static final int RHO = 2;
+	public static final int M = 3;
+	public static final int SIGMA = 4;
+	public static final int COUNT = 5;
+
+	private final double a;
+	private final double b;
+	private final double rho;
+	private final double m;
+	private final double sigma;
+
+	private final double t;
+	private final double forward;
+
+	// Fit diagnostics
+	private final double rms;
+	private final int iterations;
+
+	/**
+	 * Smile from parameters
+	 *
+	 * @param p parameters a, b, rho, m, sigma
+	 * @param t time to maturity
+	 * @param forward forward the moneyness is taken against
+	 * @param rms root mean square total variance error of the fit
+	 * @param iterations iterations of the fit
+	 */
+	public SviSmile(double[] p, double t, double forward, double rms, int iterations) {
+		this.a = p[A];
+		this.b = p[B];
+		this.rho = p[RHO];
+		this.m = p[M];
+		this.sigma = p[SIGMA];
+		this.t = t;
+		this.forward = forward;
+		this.rms = rms;
+		this.iterations = iterations;
+	}
+
+	/**
+	 * Raw SVI total variance
+	 *
+	 * @param p parameters a, b, rho, m, sigma
+	 * @param k log-moneyness
+	 * @return total variance
+	 */
+	static double w(double[] p, double k) {
+		final double x = k - p[M];
+		return p[A] + p[B] * (p[RHO] * x + Math.sqrt(x * x + p[SIGMA] * p[SIGMA]));
+	}
+
+	/**
+	 * Total implied variance
+	 *
+	 * @param k log-moneyness ln(K / F)
+	 * @return total variance
+	 */
+	public double totalVariance(double k) {
+		final double x = k - m;
+		return a + b * (rho * x + Math.sqrt(x * x + sigma * sigma));
+	}
+
+	/**
+	 * Implied volatility at a strike
+	 *
+	 * @param strike strike
+	 * @return implied volatility
+	 */
+	public double vol(double strike) {
+		return Math.sqrt(Math.max(totalVariance(Math.log(strike / forward)), 0.0) / t);
+	}
+
+	/**
+	 * Returns parameters a, b, rho, m, sigma
+	 *
+	 * @return new parameter vector
+	 */
+	public double[] getParams() {
+		return new double[] {a, b, rho, m, sigma};
+	}
+
+	public double getTau() {
+		return t;
+	}
+
+	public double getForward() {
+		return forward;
+	}
+
+	public double getRms() {
+		return rms;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	@Override
+	public String toString() {
+		return "SviSmile [a=" + a + ", b=" + b + ", rho=" + rho + ", m=" + m + ", sigma=" + sigma +
+			   ", t=" + t + ", rms=" + rms + ", iterations=" + iterations + "]";
+	}
+}
@@ -0,0 +1,201 @@
+package sigma.quant;
+
+import java.util.Arrays;
+
+/**
+ * Reverse mode automatic differentiation tape.
+ *
+ * Every operation appends a node holding its value, at most two parent
+ * nodes and the local partial derivatives with respect to them, all in
+ * primitive arrays. After the forward pass backward() propagates the
+ * adjoints from the output to every node in one sweep, so the gradient
+ * of a scalar output with respect to any number of inputs costs a small
+ * constant multiple of the forward pass.
+ *
+ * Nodes are referred to by int handles. The tape is reused with reset(),
+ * in steady state recording does not allocate. Not thread safe.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public final class Tape {
+
+	private static final int NONE = -1;
+
+	private int n;
+
+	private int[] a;       // First parent
+	private int[] b;       // Second parent
+	private double[] da;   // d node / d first parent
+	private double[] db;   // d node / d second parent
+	private double[] value;
+	private double[] adj;
+
+	/**
+	 * Tape with default initial capacity
+	 */
+	public Tape() {
+		this(1024);
+	}
+
+	/**
+	 * Tape with given initial capacity, the tape grows as needed
+	 *
+	 * @param capacity number of nodes
+	 */
+	public Tape(int capacity) {
+		capacity = Math.max(capacity, 16);
+		a = new int[capacity];
+		b = new int[capacity];
+		da = new double[capacity];
+		db = new double[capacity];
+		value = new double[capacity];
+		adj = new double[capacity];
+	}
+
+	/**
+	 * Clears the tape, storage is kept
+	 */
+	public void reset() {
+		n = 0;
+	}
+
+	/**
+	 * Returns number of nodes on the tape
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return n;
+	}
+
+	private int push(double v, int pa, double pda, int pb, double pdb) {
+		if (n == value.length) {
+			int m = 2 * n;
+			a = Arrays.copyOf(a, m);
+			b = Arrays.copyOf(b, m);
+			da = Arrays.copyOf(da, m);
+			db = Arrays.copyOf(db, m);
+			value = Arrays.copyOf(value, m);
+			adj = Arrays.copyOf(adj, m);
+		}
+		a[n] = pa;
+		b[n] = pb;
+		da[n] = pda;
+		db[n] = pdb;
+		value[n] = v;
+		return n++;
+	}
+
+	/**
+	 * Records an input
+	 *
+	 * @param x value
+	 * @return node
+	 */
+	public int input(double x) {
+		return push(x, NONE, 0.0, NONE, 0.0);
+	}
+
+	public int add(int x, int y) {
+		return push(value[x] + value[y], x, 1.0, y, 1.0);
+	}
+
+	public int sub(int x, int y) {
+		return push(value[x] - value[y], x, 1.0, y, -1.0);
+	}
+
+	public int mul(int x, int y) {
+		return push(value[x] * value[y], x, value[y], y, value[x]);
+	}
+
+	public int div(int x, int y) {
+		final double q = value[x] / value[y];
+		return push(q, x, 1.0 / value[y], y, -q / value[y]);
+	}
+
+	/**
+	 * x * c for a constant c
+	 */
+	public int scale(int x, double c) {
+		return push(value[x] * c, x, c, NONE, 0.0);
+	}
+
+	/**
+	 * x + c for a constant c
+	 */
+	public int shift(int x, double c) {
+		return push(value[x] + c, x, 1.0, NONE, 0.0);
+	}
+
+	public int exp(int x) {
+		final double e = Math.exp(value[x]);
+		return push(e, x, e, NONE, 0.0);
+	}
+
+	public int log(int x) {
+		return push(Math.log(value[x]), x, 1.0 / value[x], NONE, 0.0);
+	}
+
+	public int sqrt(int x) {
+		final double s = Math.sqrt(value[x]);
+		return push(s, x, 0.5 / s, NONE, 0.0);
+	}
+
+	/**
+	 * Standard normal CDF
+	 */
+	public int cdf(int x) {
+		return push(NormalDistribution.cdf(value[x]), x, NormalDistribution.pdf(value[x]), NONE, 0.0);
+	}
+
+	/**
+	 * max(x, 0), the derivative at zero is taken as zero
+	 */
+	public int positive(int x) {
+		return value[x] > 0 ? push(value[x], x, 1.0, NONE, 0.0) : push(0.0, NONE, 0.0, NONE, 0.0);
+	}
+
+	/**
+	 * Returns forward value of a node
+	 *
+	 * @param x node
+	 * @return value
+	 */
+	public double value(int x) {
+		return value[x];
+	}
+
+	/**
+	 * Returns adjoint of a node after backward(), that is the derivative
+	 * of the output with respect to the node
+	 *
+	 * @param x node
+	 * @return adjoint
+	 */
+	public double adjoint(int x) {
+		return adj[x];
+	}
+
+	/**
+	 * Reverse sweep from an output node
+	 *
+	 * @param out output node
+	 */
+	public void backward(int out) {
+		Arrays.fill(adj, 0, n, 0.0);
+		adj[out] = 1.0;
+
+		for (int i = out; i >= 0; i--) {
+			final double w = adj[i];
+
+			if (w == 0.0)
+				continue;
+			if (a[i] != NONE)
+				adj[a[i]] += da[i] * w;
+			if (b[i] != NONE)
+				adj[b[i]] += db[i] * w;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package sigma.quant;
+
+/**
+ * Fast path greeks for small spot and time moves.
+ *
+ * A full Black-Scholes evaluation of the option is kept as an anchor and
+ * price, delta, gamma and theta are extrapolated from it with a Taylor
+ * expansion using speed, charm, color and thega. With dS the spot move and
+ * dt the elapsed calendar time:
+ *
+ *   price = V + delta dS + theta dt + gamma dS^2 / 2 + charm dS dt + thega dt^2 / 2
+ *           + speed dS^3 / 6 - color dS^2 dt / 2
+ *   delta = delta + gamma dS + charm dt + speed dS^2 / 2 - color dS dt
+ *   gamma = gamma + speed dS - color dt
+ *   theta = theta + charm dS + thega dt
+ *
+ * Charm, thega and theta are calendar time derivatives while color is the
+ * derivative with respect to time to maturity, hence the sign of the color
+ * terms. The option is repriced and re-anchored when the spot move exceeds
+ * maxMove standard deviations (sigma * sqrt(t) of the anchor) or the
+ * elapsed time exceeds maxDecay of the anchor time to maturity, or when
+ * any other input changes.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class TaylorGreeks {
+
+	public static final double DEFAULT_MAX_MOVE = 0.05;
+	public static final double DEFAULT_MAX_DECAY = 0.01;
+
+	private final Option option;
+	private final double maxMove;
+	private final double maxDecay;
+
+	private Greeks anchor;
+	private int anchors;
+
+	// Inputs and values of the last evaluation
+	private double s;
+	private double t;
+	private double price;
+	private double delta;
+	private double gamma;
+	private double theta;
+
+	/**
+	 * Fast path with default error bounds
+	 *
+	 * @param option option
+	 */
+	public TaylorGreeks(Option option) {
+		this(option, DEFAULT_MAX_MOVE, DEFAULT_MAX_DECAY);
+	}
+
+	/**
+	 * Fast path with given error bounds
+	 *
+	 * @param option option
+	 * @param maxMove maximum spot move in standard deviations of the anchor
+	 * @param maxDecay maximum elapsed time as a fraction of the anchor time to maturity
+	 */
+	public TaylorGreeks(Option option, double maxMove, double maxDecay) {
+		this.option = option;
+		this.maxMove = maxMove;
+		this.maxDecay = maxDecay;
+		this.s = Double.NaN;
+	}
+
+	/**
+	 * Brings the values up to date with the option inputs
+	 *
+	 * @return true if the values were extrapolated, false if the option was repriced
+	 */
+	public boolean update() {
+		final double spot = option.s();
+		final double tau = option.t;
+		Greeks g = anchor;
+		double ds;
+		double dt;
+
+		if (Double.compare(spot, s) == 0 && Double.compare(tau, t) == 0 && g != null &&
+				g.isForTerms(option.k, option.sigma, option.r, option.d, option.side))
+			return true;
+
+		s = spot;
+		t = tau;
+
+		if (g == null || !g.isForTerms(option.k, option.sigma, option.r, option.d, option.side) ||
+				Math.abs(Math.log(spot / g.getSpot())) > maxMove * g.getSigma() * Math.sqrt(g.getTau()) ||
+				Math.abs(g.getTau() - tau) > maxDecay * g.getTau()) {
+			reanchor();
+			return false;
+		}
+
+		ds = spot - g.getSpot();
+		dt = g.getTau() - tau;
+
+		price = g.getPrice() + g.getDelta() * ds + g.getTheta() * dt + 0.5 * g.getGamma() * ds * ds + g.getCharm() * ds * dt +
+				0.5 * g.getThega() * dt * dt + g.getSpeed() * ds * ds * ds / 6 - 0.5 * g.getColor() * ds * ds * dt;
+		delta = g.getDelta() + g.getGamma() * ds + g.getCharm() * dt + 0.5 * g.getSpeed() * ds * ds - g.getColor() * ds * dt;
+		gamma = g.getGamma() + g.getSpeed() * ds - g.getColor() * dt;
+		theta = g.getTheta() + g.getCharm() * ds + g.getThega() * dt;
+		return true;
+	}
+
+	/**
+	 * Reprices the option and makes it the new anchor
+	 */
+	public void reanchor() {
+		Greeks g = option.getGreeks();
+
+		anchor = g;
+		anchors++;
+		s = g.getSpot();
+		t = g.getTau();
+		price = g.getPrice();
+		delta = g.getDelta();
+		gamma = g.getGamma();
+		theta = g.getTheta();
+	}
+
+	public double price() {
+		update();
+		return price;
+	}
+
+	public double delta() {
+		update();
+		return delta;
+	}
+
+	public double gamma() {
+		update();
+		return gamma;
+	}
+
+	public double theta() {
+		update();
+		return theta;
+	}
+
+	/**
+	 * Returns the current anchor
+	 *
+	 * @return full evaluation the values are extrapolated from
+	 */
+	public Greeks getAnchor() {
+		return anchor;
+	}
+
+	/**
+	 * Returns number of full reprices so far
+	 *
+	 * @return number of anchors
+	 */
+	public int getAnchors() {
+		return anchors;
+	}
+
+	public Option getOption() {
+		return option;
+	}
+}
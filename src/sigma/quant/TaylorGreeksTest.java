@@ -0,0 +1,60 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TaylorGreeksTest {
+
+	private static final double S = 55.0;
+	private static final double SIGMA = 0.35;
+
+	@Test
+	public final void testErrorBound() {
+		for (double m : new double[] {0.9, 1.0, 1.1})
+			for (double t : new double[] {0.02, 0.25, 1.0})
+				for (double z = -0.049; z <= 0.049; z += 0.007) {
+					Option o = new Option(S, m * S, t, SIGMA, 0.02, 0.0, OptSide.PUT);
+					TaylorGreeks tg = new TaylorGreeks(o);
+					double s = S * Math.exp(z * SIGMA * Math.sqrt(t));
+
+					assertFalse(tg.update());
+					o.getUl().setPrice(s);
+					o.t = 0.995 * t;
+					assertTrue(tg.update());
+
+					Greeks g = new Greeks(s, m * S, 0.995 * t, SIGMA, 0.02, 0.0, OptSide.PUT);
+					assertEquals(g.getPrice(), tg.price(), 1e-5);
+					assertEquals(g.getDelta(), tg.delta(), 2e-5);
+					assertEquals(g.getGamma(), tg.gamma(), 1e-2 * g.getGamma());
+					assertEquals(g.getTheta(), tg.theta(), 1e-2 * Math.abs(g.getTheta()));
+					assertEquals(1, tg.getAnchors());
+				}
+	}
+
+	@Test
+	public final void testReanchor() {
+		Option o = new Option(S, S, 0.25, SIGMA, 0.02, 0.0, OptSide.CALL);
+		TaylorGreeks tg = new TaylorGreeks(o, 0.05, 0.01);
+
+		tg.update();
+		o.getUl().setPrice(S + 0.01);
+		assertTrue(tg.update());
+
+		// Beyond the spot bound
+		o.getUl().setPrice(S * 1.01);
+		assertFalse(tg.update());
+		assertEquals(o.delta(), tg.delta(), 0.0);
+
+		// Beyond the time bound
+		o.t = 0.24;
+		assertFalse(tg.update());
+
+		// Any other input
+		o.setSigma(0.3);
+		assertFalse(tg.update());
+		assertEquals(o.gamma(), tg.gamma(), 0.0);
+		assertEquals(4, tg.getAnchors());
+	}
+
+}
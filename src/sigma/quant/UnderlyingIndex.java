@@ -0,0 +1,188 @@
+package sigma.quant;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Index from underlying ticker id to the options written on it.
+ *
+ * An underlying tick updates only the options on that underlying and
+ * marks them dirty, reprice() then recomputes greeks for the dirty
+ * options only. Lookups are binary searches over the sorted ticker ids
+ * and do not allocate.
+ *
+ * The index is meant to be used from the market data thread, it is not
+ * thread safe.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class UnderlyingIndex {
+
+	private final List<Option> options;
+	private final BitSet dirty;
+
+	private int[] ids;
+	private int[][] members;
+
+	/**
+	 * Index over options, underlying ticker ids must already be set
+	 *
+	 * @param options option portfolio
+	 */
+	public UnderlyingIndex(List<Option> options) {
+		this.options = options;
+		this.dirty = new BitSet(options.size());
+		rebuild();
+	}
+
+	/**
+	 * Rebuilds the index after options or underlying ids have changed
+	 */
+	public void rebuild() {
+		int n = options.size();
+		int[] ul = new int[n];
+		int[] sorted;
+		int[] count;
+		int u = 0;
+
+		for (int i = 0; i < n; i++)
+			ul[i] = options.get(i).getUl().getId();
+
+		// Distinct ids
+		sorted = ul.clone();
+		Arrays.sort(sorted);
+		for (int i = 0; i < n; i++)
+			if (i == 0 || sorted[i] != sorted[i - 1])
+				sorted[u++] = sorted[i];
+		ids = Arrays.copyOf(sorted, u);
+
+		// Option indices per id, in portfolio order
+		count = new int[u];
+		for (int i = 0; i < n; i++)
+			count[Arrays.binarySearch(ids, ul[i])]++;
+
+		members = new int[u][];
+		for (int j = 0; j < u; j++)
+			members[j] = new int[count[j]];
+
+		Arrays.fill(count, 0);
+		for (int i = 0; i < n; i++) {
+			int j = Arrays.binarySearch(ids, ul[i]);
+			members[j][count[j]++] = i;
+		}
+		dirty.clear();
+	}
+
+	/**
+	 * Returns portfolio indices of the options on an underlying
+	 *
+	 * @param ulId underlying ticker id
+	 * @return option indices, empty if the underlying is not known
+	 */
+	public int[] get(int ulId) {
+		int j = Arrays.binarySearch(ids, ulId);
+		return j < 0 ? new int[0] : members[j].clone();
+	}
+
+	/**
+	 * Sets underlying price on the options and marks them dirty
+	 *
+	 * @param ulId underlying ticker id
+	 * @param price underlying price
+	 * @return number of options updated
+	 */
+	public int setPrice(int ulId, double price) {
+		int j = Arrays.binarySearch(ids, ulId);
+		Double p = price;
+
+		if (j < 0)
+			return 0;
+
+		for (int i : members[j]) {
+			options.get(i).getUl().setPrice(p);
+			dirty.set(i);
+		}
+		return members[j].length;
+	}
+
+	/**
+	 * Sets underlying bid on the options, greeks are not affected
+	 *
+	 * @param ulId underlying ticker id
+	 * @param bid underlying bid
+	 * @return number of options updated
+	 */
+	public int setBid(int ulId, double bid) {
+		int j = Arrays.binarySearch(ids, ulId);
+		Double p = bid;
+
+		if (j < 0)
+			return 0;
+
+		for (int i : members[j])
+			options.get(i).getUl().setBid(p);
+		return members[j].length;
+	}
+
+	/**
+	 * Sets underlying ask on the options, greeks are not affected
+	 *
+	 * @param ulId underlying ticker id
+	 * @param ask underlying ask
+	 * @return number of options updated
+	 */
+	public int setAsk(int ulId, double ask) {
+		int j = Arrays.binarySearch(ids, ulId);
+		Double p = ask;
+
+		if (j < 0)
+			return 0;
+
+		for (int i : members[j])
+			options.get(i).getUl().setAsk(p);
+		return members[j].length;
+	}
+
+	/**
+	 * Recomputes greeks of the dirty options and clears the dirty flags.
+	 * Options without a volatility are only cleared.
+	 *
+	 * @return number of options repriced
+	 */
+	public int reprice() {
+		int n = 0;
+
+		for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+			Option o = options.get(i);
+
+			if (o.sigma > 0 && o.t > 0) {
+				o.calcGreeks();
+				n++;
+			}
+		}
+		dirty.clear();
+		return n;
+	}
+
+	/**
+	 * Checks if the option needs repricing
+	 *
+	 * @param i portfolio index
+	 * @return true if the underlying has ticked since the last reprice
+	 */
+	public boolean isDirty(int i) {
+		return dirty.get(i);
+	}
+
+	/**
+	 * Returns number of distinct underlyings
+	 *
+	 * @return number of underlyings
+	 */
+	public int size() {
+		return ids.length;
+	}
+}
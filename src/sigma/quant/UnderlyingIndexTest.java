@@ -0,0 +1,44 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class UnderlyingIndexTest {
+
+	private static List<Option> portfolio() {
+		List<Option> l = new ArrayList<>();
+
+		for (int i = 0; i < 9; i++) {
+			Option o = new Option(55.0, 50.0 + i, 0.25, 0.3, 0.02, 0.0, OptSide.CALL);
+			o.getUl().setId(2000 + i % 3);
+			l.add(o);
+		}
+		return l;
+	}
+
+	@Test
+	public final void testFanOut() {
+		List<Option> l = portfolio();
+		UnderlyingIndex idx = new UnderlyingIndex(l);
+
+		assertEquals(3, idx.size());
+		assertArrayEquals(new int[] {1, 4, 7}, idx.get(2001));
+		assertEquals(0, idx.get(1999).length);
+
+		assertEquals(3, idx.setPrice(2001, 56.0));
+		for (int i = 0; i < l.size(); i++) {
+			assertEquals(i % 3 == 1, idx.isDirty(i));
+			assertEquals(i % 3 == 1 ? 56.0 : 55.0, l.get(i).getUl().getPrice(), 0.0);
+		}
+
+		assertEquals(3, idx.reprice());
+		assertFalse(idx.isDirty(1));
+		assertEquals(56.0, l.get(4).getGreeks().getSpot(), 0.0);
+		assertEquals(0, idx.setPrice(3000, 56.0));
+	}
+
+}
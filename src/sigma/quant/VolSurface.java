@@ -0,0 +1,449 @@
+package sigma.quant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Implied volatility surface built from calibrated option volatilities.
+ *
+ * Along strikes every expiry is a smile interpolated with shape preserving
+ * rational cubic splines, flat outside the quoted strikes. Across expiries
+ * the total variance sigma^2 * t is interpolated linearly at fixed strike,
+ * flat volatility outside the quoted expiries. Lookups are binary searches,
+ * expiries are found through a hash index, neither allocates.
+ *
+ * The surface is not thread safe, updates must not run concurrently with
+ * lookups.
+ *
+ * @author Peeter Meos
+ * @version 0.1
+ *
+ */
+public class VolSurface {
+
+	private String[] expiries;
+	private double[] tau;
+	private Smile[] smiles;
+	private final Map<String, Integer> index = new HashMap<>();
+
+	/**
+	 * Empty surface
+	 */
+	public VolSurface() {
+		this.expiries = new String[0];
+		this.tau = new double[0];
+		this.smiles = new Smile[0];
+	}
+
+	/**
+	 * Surface from calibrated options
+	 *
+	 * @param options calibrated options
+	 */
+	public VolSurface(List<Option> options) {
+		this();
+		load(options);
+	}
+
+	/**
+	 * Rebuilds the surface from calibrated options. Options without a
+	 * solved volatility are skipped. The volatility of a strike is the
+	 * mean of its call and put legs, each leg the mean of its options.
+	 *
+	 * @param options calibrated options
+	 */
+	public void load(List<Option> options) {
+		Map<String, List<Integer>> groups = SurfaceCalibrator.partition(options);
+		List<String> exp = new ArrayList<>();
+		List<Double> t = new ArrayList<>();
+		List<Smile> s = new ArrayList<>();
+
+		for (Map.Entry<String, List<Integer>> e : groups.entrySet()) {
+			// Per strike: call sum, call count, put sum, put count
+			TreeMap<Double, double[]> points = new TreeMap<>();
+			double tt = Double.NaN;
+
+			for (int i : e.getValue()) {
+				Option o = options.get(i);
+
+				if (!valid(o.t, o.sigma))
+					continue;
+				tt = o.t;
+
+				double[] p = points.get(o.k);
+				if (p == null) {
+					p = new double[4];
+					points.put(o.k, p);
+				}
+				int j = o.side == OptSide.CALL ? 0 : 2;
+				p[j] += o.sigma;
+				p[j + 1] += 1.0;
+			}
+
+			if (points.isEmpty())
+				continue;
+
+			Smile smile = new Smile(points.size());
+			for (Map.Entry<Double, double[]> p : points.entrySet()) {
+				double[] q = p.getValue();
+				int j = smile.n;
+
+				smile.k[j] = p.getKey();
+				smile.call[j] = q[1] > 0 ? q[0] / q[1] : Double.NaN;
+				smile.put[j] = q[3] > 0 ? q[2] / q[3] : Double.NaN;
+				smile.v[j] = Smile.mean(smile.call[j], smile.put[j]);
+				smile.n++;
+			}
+			smile.fit(0, smile.n - 1);
+
+			// Keep expiries sorted by time to maturity
+			int pos = 0;
+			while (pos < t.size() && t.get(pos) < tt)
+				pos++;
+			exp.add(pos, e.getKey());
+			t.add(pos, tt);
+			s.add(pos, smile);
+		}
+
+		this.expiries = exp.toArray(new String[exp.size()]);
+		this.smiles = s.toArray(new Smile[s.size()]);
+		this.tau = new double[t.size()];
+		for (int i = 0; i < tau.length; i++)
+			tau[i] = t.get(i);
+		reindex();
+	}
+
+	private static boolean valid(Double t, Double sigma) {
+		return t != null && sigma != null && t > 0 && sigma > 0 && !Double.isInfinite(sigma);
+	}
+
+	/**
+	 * Interpolated volatility
+	 *
+	 * @param k strike
+	 * @param t time to maturity in years
+	 * @return volatility, NaN if the surface is empty
+	 */
+	public double vol(double k, double t) {
+		int n = tau.length;
+		int i;
+		double w0;
+		double w1;
+		double w;
+
+		if (n == 0)
+			return Double.NaN;
+		if (t <= tau[0])
+			return smiles[0].vol(k);
+		if (t >= tau[n - 1])
+			return smiles[n - 1].vol(k);
+
+		i = Arrays.binarySearch(tau, t);
+		if (i >= 0)
+			return smiles[i].vol(k);
+		i = -i - 2;
+
+		// Linear in total variance
+		w0 = smiles[i].vol(k);
+		w0 = w0 * w0 * tau[i];
+		w1 = smiles[i + 1].vol(k);
+		w1 = w1 * w1 * tau[i + 1];
+		w = w0 + (w1 - w0) * (t - tau[i]) / (tau[i + 1] - tau[i]);
+
+		return Math.sqrt(w / t);
+	}
+
+	/**
+	 * Interpolated volatility on a quoted expiry
+	 *
+	 * @param expiry expiry in yyyyMMdd format
+	 * @param k strike
+	 * @return volatility, NaN if the expiry is not on the surface
+	 */
+	public double vol(String expiry, double k) {
+		int i = indexOf(expiry);
+		return i < 0 ? Double.NaN : smiles[i].vol(k);
+	}
+
+	/**
+	 * Updates one point from a recalibrated option
+	 *
+	 * @param o option
+	 * @return true if the surface was updated
+	 */
+	public boolean update(Option o) {
+		return update(o.getExpiry(), o.t, o.k, o.side, o.sigma);
+	}
+
+	/**
+	 * Updates or inserts one strike with a volatility for both legs
+	 *
+	 * @param expiry expiry in yyyyMMdd format
+	 * @param t time to maturity in years
+	 * @param k strike
+	 * @param vol volatility
+	 * @return true if the surface was updated, false if the volatility is not valid
+	 */
+	public boolean update(String expiry, double t, double k, double vol) {
+		return update(expiry, t, k, null, vol);
+	}
+
+	/**
+	 * Updates or inserts one leg of a strike, the strike gets the mean of
+	 * its legs as in load(). Only the neighbouring spline segments are
+	 * refitted, an unknown expiry is added to the surface and the time to
+	 * maturity of a known one is refreshed.
+	 *
+	 * @param expiry expiry in yyyyMMdd format
+	 * @param t time to maturity in years
+	 * @param k strike
+	 * @param side leg, null for both legs
+	 * @param vol volatility
+	 * @return true if the surface was updated, false if the volatility is not valid
+	 */
+	public boolean update(String expiry, double t, double k, OptSide side, double vol) {
+		int i = indexOf(expiry);
+
+		if (!valid(t, vol))
+			return false;
+
+		if (i < 0)
+			i = insert(expiry, t);
+		else if (tau[i] != t)
+			i = retime(i, t);
+
+		smiles[i].set(k, side, vol);
+		return true;
+	}
+
+	/**
+	 * Sets time to maturity of an expiry and moves it to keep the
+	 * expiries sorted
+	 *
+	 * @return new position of the expiry
+	 */
+	private int retime(int i, double t) {
+		tau[i] = t;
+		while (i > 0 && tau[i - 1] > t)
+			swap(i, --i);
+		while (i < tau.length - 1 && tau[i + 1] < t)
+			swap(i, ++i);
+		reindex();
+		return i;
+	}
+
+	private void swap(int i, int j) {
+		String e = expiries[i];
+		double t = tau[i];
+		Smile s = smiles[i];
+
+		expiries[i] = expiries[j];
+		tau[i] = tau[j];
+		smiles[i] = smiles[j];
+		expiries[j] = e;
+		tau[j] = t;
+		smiles[j] = s;
+	}
+
+	/**
+	 * Adds an empty expiry, keeping the expiries sorted
+	 */
+	private int insert(String expiry, double t) {
+		int n = tau.length;
+		int pos = 0;
+
+		while (pos < n && tau[pos] < t)
+			pos++;
+
+		String[] e = new String[n + 1];
+		double[] tt = new double[n + 1];
+		Smile[] s = new Smile[n + 1];
+
+		System.arraycopy(expiries, 0, e, 0, pos);
+		System.arraycopy(tau, 0, tt, 0, pos);
+		System.arraycopy(smiles, 0, s, 0, pos);
+		System.arraycopy(expiries, pos, e, pos + 1, n - pos);
+		System.arraycopy(tau, pos, tt, pos + 1, n - pos);
+		System.arraycopy(smiles, pos, s, pos + 1, n - pos);
+		e[pos] = expiry;
+		tt[pos] = t;
+		s[pos] = new Smile(4);
+
+		this.expiries = e;
+		this.tau = tt;
+		this.smiles = s;
+		reindex();
+		return pos;
+	}
+
+	/**
+	 * Rebuilds the expiry index after expiries have been added or moved
+	 */
+	private void reindex() {
+		index.clear();
+		for (int i = 0; i < expiries.length; i++)
+			index.put(expiries[i], i);
+	}
+
+	private int indexOf(String expiry) {
+		Integer i = index.get(expiry);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * Returns number of expiries
+	 *
+	 * @return number of expiries
+	 */
+	public int size() {
+		return tau.length;
+	}
+
+	/**
+	 * Returns expiries sorted by time to maturity
+	 *
+	 * @return expiries
+	 */
+	public String[] getExpiries() {
+		return expiries.clone();
+	}
+
+	/**
+	 * Returns quoted strikes of an expiry
+	 *
+	 * @param expiry expiry in yyyyMMdd format
+	 * @return strikes, empty if the expiry is not on the surface
+	 */
+	public double[] getStrikes(String expiry) {
+		int i = indexOf(expiry);
+		return i < 0 ? new double[0] : Arrays.copyOf(smiles[i].k, smiles[i].n);
+	}
+
+	/**
+	 * Smile of one expiry. Node slopes are three point estimates and
+	 * the rational cubic control parameters are the minimum that keep
+	 * monotonicity and convexity of the data. Every node keeps its call
+	 * and put volatility, the node volatility is their mean.
+	 */
+	static class Smile {
+		int n;
+		double[] k;
+		double[] v;
+		double[] d;
+		double[] r;
+
+		// Leg volatilities, NaN if the leg is not quoted
+		double[] call;
+		double[] put;
+
+		Smile(int capacity) {
+			capacity = Math.max(capacity, 1);
+			this.k = new double[capacity];
+			this.v = new double[capacity];
+			this.d = new double[capacity];
+			this.r = new double[capacity];
+			this.call = new double[capacity];
+			this.put = new double[capacity];
+		}
+
+		/**
+		 * Mean of the quoted legs
+		 */
+		static double mean(double c, double p) {
+			if (Double.isNaN(c))
+				return p;
+			if (Double.isNaN(p))
+				return c;
+			return 0.5 * (c + p);
+		}
+
+		double vol(double x) {
+			int i;
+
+			if (n == 0)
+				return Double.NaN;
+			if (x <= k[0])
+				return v[0];
+			if (x >= k[n - 1])
+				return v[n - 1];
+
+			i = Arrays.binarySearch(k, 0, n, x);
+			if (i >= 0)
+				return v[i];
+			i = -i - 2;
+
+			return RationalCubic.rational_cubic_interpolation(x, k[i], k[i + 1], v[i], v[i + 1], d[i], d[i + 1], r[i]);
+		}
+
+		/**
+		 * Sets one leg of a node, null side sets both legs
+		 */
+		void set(double x, OptSide side, double vol) {
+			int i = Arrays.binarySearch(k, 0, n, x);
+
+			if (i < 0) {
+				i = -i - 1;
+				if (n == k.length) {
+					k = Arrays.copyOf(k, 2 * n);
+					v = Arrays.copyOf(v, 2 * n);
+					d = Arrays.copyOf(d, 2 * n);
+					r = Arrays.copyOf(r, 2 * n);
+					call = Arrays.copyOf(call, 2 * n);
+					put = Arrays.copyOf(put, 2 * n);
+				}
+				System.arraycopy(k, i, k, i + 1, n - i);
+				System.arraycopy(v, i, v, i + 1, n - i);
+				System.arraycopy(d, i, d, i + 1, n - i);
+				System.arraycopy(r, i, r, i + 1, n - i);
+				System.arraycopy(call, i, call, i + 1, n - i);
+				System.arraycopy(put, i, put, i + 1, n - i);
+				k[i] = x;
+				call[i] = put[i] = Double.NaN;
+				n++;
+			}
+			if (side != OptSide.PUT)
+				call[i] = vol;
+			if (side != OptSide.CALL)
+				put[i] = vol;
+			v[i] = mean(call[i], put[i]);
+			fit(i, i);
+		}
+
+		/**
+		 * Refits slopes and control parameters affected by changes
+		 * of the nodes lo..hi
+		 */
+		void fit(int lo, int hi) {
+			int j;
+
+			if (n < 2) {
+				if (n == 1)
+					d[0] = 0.0;
+				return;
+			}
+
+			for (j = Math.max(0, lo - 1); j <= Math.min(n - 1, hi + 1); j++) {
+				if (j == 0)
+					d[j] = secant(0);
+				else if (j == n - 1)
+					d[j] = secant(n - 2);
+				else {
+					double hl = k[j] - k[j - 1];
+					double hr = k[j + 1] - k[j];
+					d[j] = (hr * secant(j - 1) + hl * secant(j)) / (hl + hr);
+				}
+			}
+
+			for (j = Math.max(0, lo - 2); j <= Math.min(n - 2, hi + 1); j++)
+				r[j] = RationalCubic.minimum_rational_cubic_control_parameter(d[j], d[j + 1], secant(j), true);
+		}
+
+		private double secant(int j) {
+			return (v[j + 1] - v[j]) / (k[j + 1] - k[j]);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package sigma.quant;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class VolSurfaceTest {
+
+	private static final double[] K = {40.0, 45.0, 50.0, 55.0, 60.0, 65.0, 70.0};
+
+	private static double smile(double k, double t) {
+		double x = Math.log(k / 55.0);
+		return 0.3 + 0.1 * x * x / Math.sqrt(t) - 0.05 * x;
+	}
+
+	private static List<Option> chain() {
+		List<Option> l = new ArrayList<>();
+		String[] exp = {"20170616", "20170317", "20170915"};
+		double[] tau = {0.25, 0.05, 0.5};
+
+		for (int j = 0; j < exp.length; j++)
+			for (double k : K) {
+				Option o = new Option(55.0, k, tau[j], smile(k, tau[j]), 0.02, 0.0, OptSide.CALL);
+				o.setExpiry(exp[j]);
+				l.add(o);
+			}
+		return l;
+	}
+
+	@Test
+	public final void testNodes() {
+		VolSurface s = new VolSurface(chain());
+
+		assertEquals(3, s.size());
+		assertArrayEquals(new String[] {"20170317", "20170616", "20170915"}, s.getExpiries());
+		for (double k : K) {
+			assertEquals(smile(k, 0.25), s.vol(k, 0.25), 1e-15);
+			assertEquals(smile(k, 0.25), s.vol("20170616", k), 1e-15);
+		}
+	}
+
+	@Test
+	public final void testInterpolation() {
+		VolSurface s = new VolSurface(chain());
+
+		// Between the strikes the smile stays close to the generating function
+		for (double k = 40.0; k <= 70.0; k += 0.5)
+			assertEquals(smile(k, 0.25), s.vol(k, 0.25), 2e-3);
+
+		// Total variance is linear in time at fixed strike
+		double w0 = s.vol(52.0, 0.25);
+		double w1 = s.vol(52.0, 0.5);
+		double t = 0.4;
+		double w = w0 * w0 * 0.25 + (w1 * w1 * 0.5 - w0 * w0 * 0.25) * (t - 0.25) / 0.25;
+		double v = s.vol(52.0, t);
+		assertEquals(w, v * v * t, 1e-14);
+
+		// Flat outside the quotes
+		assertEquals(s.vol(40.0, 0.05), s.vol(30.0, 0.01), 0.0);
+		assertEquals(s.vol(70.0, 0.5), s.vol(80.0, 2.0), 0.0);
+	}
+
+	@Test
+	public final void testUpdateMatchesRebuild() {
+		List<Option> l = chain();
+		VolSurface s = new VolSurface(l);
+
+		Option o = l.get(3);
+		o.setSigma(0.33);
+		assertTrue(s.update(o));
+
+		Option n = new Option(55.0, 57.5, 0.25, 0.31, 0.02, 0.0, OptSide.PUT);
+		n.setExpiry("20170616");
+		l.add(n);
+		assertTrue(s.update(n));
+		assertFalse(s.update("20170616", 0.25, 52.5, Double.NaN));
+
+		VolSurface ref = new VolSurface(l);
+		for (double k = 35.0; k <= 75.0; k += 0.25)
+			for (double t : new double[] {0.05, 0.1, 0.25, 0.3, 0.5})
+				assertEquals(ref.vol(k, t), s.vol(k, t), 0.0);
+	}
+
+	@Test
+	public final void testUpdateOneLegMatchesRebuild() {
+		List<Option> l = chain();
+		Option p = new Option(55.0, 50.0, 0.25, 0.29, 0.02, 0.0, OptSide.PUT);
+		p.setExpiry("20170616");
+		l.add(p);
+		VolSurface s = new VolSurface(l);
+
+		// Both legs quoted at 50, moving the call keeps the put
+		Option c = l.get(2);
+		assertEquals(50.0, c.k, 0.0);
+		c.setSigma(0.35);
+		assertTrue(s.update(c));
+		assertEquals(0.5 * (0.35 + 0.29), s.vol("20170616", 50.0), 1e-15);
+
+		VolSurface ref = new VolSurface(l);
+		for (double k = 35.0; k <= 75.0; k += 0.25)
+			for (double t : new double[] {0.05, 0.1, 0.25, 0.3, 0.5})
+				assertEquals(ref.vol(k, t), s.vol(k, t), 0.0);
+	}
+
+	@Test
+	public final void testUpdateRefreshesTime() {
+		VolSurface s = new VolSurface(chain());
+
+		// Later time to maturity moves the expiry behind the next one
+		assertTrue(s.update("20170317", 0.75, 55.0, 0.3));
+		assertArrayEquals(new String[] {"20170616", "20170915", "20170317"}, s.getExpiries());
+		assertEquals(s.vol("20170317", 55.0), s.vol(55.0, 0.75), 0.0);
+		assertEquals(smile(55.0, 0.5), s.vol("20170915", 55.0), 1e-15);
+	}
+
+	@Test
+	public final void testExpiryLookupAfterInsert() {
+		VolSurface s = new VolSurface(chain());
+
+		// New expiry between two quoted ones shifts the later expiry
+		assertTrue(s.update("20170421", 0.15, 55.0, 0.3));
+		assertArrayEquals(new String[] {"20170317", "20170421", "20170616", "20170915"}, s.getExpiries());
+		assertEquals(0.3, s.vol("20170421", 55.0), 0.0);
+		assertEquals(smile(55.0, 0.5), s.vol("20170915", 55.0), 1e-15);
+		assertTrue(Double.isNaN(s.vol("20171215", 55.0)));
+	}
+
+}